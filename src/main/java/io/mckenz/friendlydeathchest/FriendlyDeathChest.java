@@ -2,12 +2,18 @@ package io.mckenz.friendlydeathchest;
 
 import io.mckenz.friendlydeathchest.commands.FDCCommand;
 import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.listeners.BlockChangeListener;
 import io.mckenz.friendlydeathchest.listeners.BlockListener;
+import io.mckenz.friendlydeathchest.listeners.ChunkListener;
 import io.mckenz.friendlydeathchest.listeners.InventoryListener;
 import io.mckenz.friendlydeathchest.listeners.PlayerDeathListener;
+import io.mckenz.friendlydeathchest.listeners.PluginListener;
+import io.mckenz.friendlydeathchest.listeners.VirtualChestListener;
 import io.mckenz.friendlydeathchest.service.ChestManager;
+import io.mckenz.friendlydeathchest.service.DeathChestPipeline;
 import io.mckenz.friendlydeathchest.service.HologramManager;
 import io.mckenz.friendlydeathchest.service.LocationFinder;
+import io.mckenz.friendlydeathchest.service.VirtualChestManager;
 import io.mckenz.friendlydeathchest.utils.UpdateChecker;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -22,6 +28,8 @@ public class FriendlyDeathChest extends JavaPlugin {
     private LocationFinder locationFinder;
     private ChestManager chestManager;
     private HologramManager hologramManager;
+    private VirtualChestManager virtualChestManager;
+    private DeathChestPipeline deathChestPipeline;
     private UpdateChecker updateChecker;
 
     @Override
@@ -43,6 +51,12 @@ public class FriendlyDeathChest extends JavaPlugin {
         // Update LocationFinder with ChestManager reference
         ((LocationFinder)locationFinder).setChestManager(chestManager);
         
+        // Virtual chests are always loaded, so switching chest-mode back to BLOCK keeps stored items
+        virtualChestManager = new VirtualChestManager(this, configManager, chestManager);
+        if (configManager.isVirtualChestMode()) {
+            getLogger().info("Virtual death chests enabled.");
+        }
+        
         // Initialize hologram manager if enabled
         if (configManager.isHologramEnabled()) {
             hologramManager = new HologramManager(this, configManager, chestManager);
@@ -79,10 +93,18 @@ public class FriendlyDeathChest extends JavaPlugin {
     @Override
     public void onDisable() {
         // Clean up resources
+        // Create the chests still waiting in the pipeline first, so their items reach storage
+        if (deathChestPipeline != null) {
+            deathChestPipeline.drain();
+        }
+        
+        if (virtualChestManager != null) {
+            virtualChestManager.shutdown();
+        }
+        
         if (chestManager != null) {
-            chestManager.saveChests();
+            chestManager.closeStorage();
             chestManager.cancelExpirationTask();
-            chestManager.cancelExpiryWarningTask();
         }
         
         if (hologramManager != null) {
@@ -101,7 +123,11 @@ public class FriendlyDeathChest extends JavaPlugin {
         
         // Register death listener if chest creation is enabled
         if (configManager.shouldCreateChest()) {
-            PlayerDeathListener deathListener = new PlayerDeathListener(this, configManager, locationFinder, chestManager, hologramManager);
+            deathChestPipeline = new DeathChestPipeline(this, configManager, locationFinder);
+            PlayerDeathListener deathListener = new PlayerDeathListener(this, configManager, locationFinder, chestManager, 
+                hologramManager, virtualChestManager, deathChestPipeline);
+            deathChestPipeline.setBuilder(deathListener);
+            deathChestPipeline.resume();
             pm.registerEvents(deathListener, this);
             getLogger().info("Death chest creation enabled.");
         }
@@ -110,6 +136,26 @@ public class FriendlyDeathChest extends JavaPlugin {
         InventoryListener inventoryListener = new InventoryListener(this, configManager, chestManager);
         pm.registerEvents(inventoryListener, this);
         
+        // Register virtual chest listener for opening and emptying virtual chests
+        VirtualChestListener virtualChestListener = new VirtualChestListener(configManager, chestManager, virtualChestManager);
+        pm.registerEvents(virtualChestListener, this);
+        
+        // Register chunk listener for work deferred until a chunk loads
+        ChunkListener chunkListener = new ChunkListener(chestManager);
+        pm.registerEvents(chunkListener, this);
+        
+        // Register block change listener to discard cached location search results
+        if (configManager.getSearchCacheTtl() > 0) {
+            BlockChangeListener blockChangeListener = new BlockChangeListener(locationFinder);
+            pm.registerEvents(blockChangeListener, this);
+        }
+        
+        // Register plugin listener to hook into protection plugins enabled or disabled later
+        if (configManager.shouldRespectProtectionPlugins()) {
+            PluginListener pluginListener = new PluginListener(chestManager.getProtectionManager());
+            pm.registerEvents(pluginListener, this);
+        }
+        
         // Register block listener if chest protection is enabled
         if (configManager.shouldProtectChest()) {
             BlockListener blockListener = new BlockListener(configManager, chestManager);
@@ -147,6 +193,15 @@ public class FriendlyDeathChest extends JavaPlugin {
         return hologramManager;
     }
     
+    /**
+     * Gets the virtual chest manager
+     * 
+     * @return The virtual chest manager
+     */
+    public VirtualChestManager getVirtualChestManager() {
+        return virtualChestManager;
+    }
+    
     /**
      * Gets the update checker
      * 
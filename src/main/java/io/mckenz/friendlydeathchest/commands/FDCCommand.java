@@ -21,6 +21,9 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
     private final FriendlyDeathChest plugin;
     private final ConfigManager configManager;
     private final UpdateCommand updateCommand;
+    private final ListCommand listCommand;
+    private final RestoreSnapshotCommand restoreSnapshotCommand;
+    private final OpenCommand openCommand;
 
     /**
      * Create a new FDC command
@@ -32,6 +35,9 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
         this.plugin = plugin;
         this.configManager = configManager;
         this.updateCommand = new UpdateCommand(plugin);
+        this.listCommand = new ListCommand(plugin);
+        this.restoreSnapshotCommand = new RestoreSnapshotCommand(plugin);
+        this.openCommand = new OpenCommand(plugin, configManager);
     }
 
     @Override
@@ -66,11 +72,18 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
                 }
                 
                 configManager.reloadConfig();
+                plugin.getChestManager().getProtectionManager().reload(configManager);
                 sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
                     "&7[&cFriendlyDeathChest&7] &aConfiguration reloaded."));
                 break;
             case "update":
                 return updateCommand.onCommand(sender, command, label, subArgs);
+            case "list":
+                return listCommand.onCommand(sender, command, label, subArgs);
+            case "restore-snapshot":
+                return restoreSnapshotCommand.onCommand(sender, command, label, subArgs);
+            case "open":
+                return openCommand.onCommand(sender, command, label, subArgs);
             default:
                 sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
                     "&7[&cFriendlyDeathChest&7] &cUnknown command. Use &e/fdc help &cfor a list of commands."));
@@ -102,6 +115,12 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
             "&e/fdc reload &7- &fReload the configuration"));
         sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
             "&e/fdc update check &7- &fCheck for updates"));
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
+            "&e/fdc list [player] &7- &fList a player's death chests"));
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
+            "&e/fdc restore-snapshot [time] &7- &fList snapshots, or restore chests from one"));
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&', 
+            "&e/fdc open &7- &fOpen your nearest virtual death chest"));
     }
 
     @Override
@@ -113,7 +132,7 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
         }
         
         if (args.length == 1) {
-            List<String> subCommands = Arrays.asList("help", "reload", "update");
+            List<String> subCommands = Arrays.asList("help", "reload", "update", "list", "restore-snapshot", "open");
             String arg = args[0].toLowerCase();
             
             completions = subCommands.stream()
@@ -121,6 +140,10 @@ public class FDCCommand implements CommandExecutor, TabCompleter {
                 .collect(Collectors.toList());
         } else if (args.length == 2 && args[0].equalsIgnoreCase("update")) {
             return updateCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("list")) {
+            return listCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("restore-snapshot")) {
+            return restoreSnapshotCommand.onTabComplete(sender, command, alias, Arrays.copyOfRange(args, 1, args.length));
         }
         
         return completions;
@@ -0,0 +1,151 @@
+package io.mckenz.friendlydeathchest.commands;
+
+import io.mckenz.friendlydeathchest.FriendlyDeathChest;
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Command to list the death chests of a player
+ */
+public class ListCommand implements CommandExecutor, TabCompleter {
+
+    private final FriendlyDeathChest plugin;
+
+    /**
+     * Create a new list command
+     *
+     * @param plugin The plugin instance
+     */
+    public ListCommand(FriendlyDeathChest plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        UUID ownerUUID;
+        String ownerName;
+
+        if (args.length == 0) {
+            if (!(sender instanceof Player)) {
+                sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    "&7[&cFriendlyDeathChest&7] &eUsage: &f/fdc list <player>"));
+                return true;
+            }
+            ownerUUID = ((Player) sender).getUniqueId();
+            ownerName = sender.getName();
+        } else {
+            if (!args[0].equalsIgnoreCase(sender.getName()) && !sender.hasPermission("friendlydeathchest.admin")) {
+                sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    "&7[&cFriendlyDeathChest&7] &cYou don't have permission to use this command."));
+                return true;
+            }
+
+            ownerUUID = findOwner(args[0]);
+            ownerName = args[0];
+            if (ownerUUID == null) {
+                sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    "&7[&cFriendlyDeathChest&7] &fNo death chests found for &e" + ownerName + "&f."));
+                return true;
+            }
+        }
+
+        ChestRegistry registry = plugin.getChestManager().getRegistry();
+        // A double chest is listed once, at its first half
+        long[] keys = Arrays.stream(registry.getChestsOf(ownerUUID))
+            .filter(key -> !registry.isSecondHalf(key))
+            .toArray();
+        if (keys.length == 0) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &fNo death chests found for &e" + ownerName + "&f."));
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+            "&7[&cFriendlyDeathChest&7] &e" + ownerName + " &fhas &e" + keys.length + " &fdeath chest(s):"));
+
+        long currentTime = System.currentTimeMillis();
+        for (long key : keys) {
+            ChestData chestData = registry.get(key);
+            String expiry = chestData.getExpiryTime() > 0
+                ? "expires in " + Math.max(0, (chestData.getExpiryTime() - currentTime) / 60000) + " min"
+                : "no expiry";
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&e- &f" + formatLocation(registry.getWorldName(key), ChestRegistry.blockX(key),
+                    ChestRegistry.blockY(key), ChestRegistry.blockZ(key)) + " &7(" + expiry + ")"));
+        }
+
+        // Point players at the closest chest in their current world
+        if (sender instanceof Player player) {
+            Location nearest = plugin.getChestManager().findNearestChest(ownerUUID, player.getLocation());
+            if (nearest != null) {
+                sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    "&7[&cFriendlyDeathChest&7] &fNearest: &e" + formatLocation(nearest.getWorld().getName(),
+                        nearest.getBlockX(), nearest.getBlockY(), nearest.getBlockZ())));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Resolves a player name to a UUID without a remote profile lookup, checking online
+     * players first and then only the players that currently own death chests
+     *
+     * @param name The player name
+     * @return The player's UUID, or null if no such player owns a death chest
+     */
+    private UUID findOwner(String name) {
+        Player online = plugin.getServer().getPlayerExact(name);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+
+        for (UUID owner : plugin.getChestManager().getRegistry().getOwners()) {
+            OfflinePlayer offlinePlayer = plugin.getServer().getOfflinePlayer(owner);
+            if (name.equalsIgnoreCase(offlinePlayer.getName())) {
+                return owner;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Formats a block position into a readable string
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return A formatted string representing the position
+     */
+    private String formatLocation(String worldName, int x, int y, int z) {
+        return String.format("x:%d, y:%d, z:%d in %s", x, y, z, worldName);
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 1 && sender.hasPermission("friendlydeathchest.admin")) {
+            String arg = args[0].toLowerCase();
+            return plugin.getServer().getOnlinePlayers().stream()
+                .map(Player::getName)
+                .filter(name -> name.toLowerCase().startsWith(arg))
+                .collect(Collectors.toList());
+        }
+
+        return List.of();
+    }
+}
@@ -0,0 +1,53 @@
+package io.mckenz.friendlydeathchest.commands;
+
+import io.mckenz.friendlydeathchest.FriendlyDeathChest;
+import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.model.VirtualChest;
+import io.mckenz.friendlydeathchest.service.VirtualChestManager;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Command to open the nearest virtual death chest of the player
+ */
+public class OpenCommand implements CommandExecutor {
+
+    private final FriendlyDeathChest plugin;
+    private final ConfigManager configManager;
+
+    /**
+     * Create a new open command
+     *
+     * @param plugin The plugin instance
+     * @param configManager The config manager
+     */
+    public OpenCommand(FriendlyDeathChest plugin, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &cOnly players can open death chests."));
+            return true;
+        }
+
+        VirtualChestManager virtualChests = plugin.getVirtualChestManager();
+        int range = configManager.getVirtualOpenRange();
+        VirtualChest chest = virtualChests.findNearest(player, range);
+        if (chest == null) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&', range > 0
+                ? "&7[&cFriendlyDeathChest&7] &fYou have no virtual death chest within &e" + range + " &fblocks."
+                : "&7[&cFriendlyDeathChest&7] &fYou have no virtual death chest in this world."));
+            return true;
+        }
+
+        virtualChests.open(player, chest);
+        return true;
+    }
+}
@@ -0,0 +1,134 @@
+package io.mckenz.friendlydeathchest.commands;
+
+import io.mckenz.friendlydeathchest.FriendlyDeathChest;
+import io.mckenz.friendlydeathchest.service.ChestManager;
+import io.mckenz.friendlydeathchest.storage.ChestSnapshotArchive;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Command to list registry snapshots and restore chests from one of them
+ */
+public class RestoreSnapshotCommand implements CommandExecutor, TabCompleter {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int LISTED_SNAPSHOTS = 10;
+
+    private final FriendlyDeathChest plugin;
+
+    /**
+     * Create a new restore-snapshot command
+     *
+     * @param plugin The plugin instance
+     */
+    public RestoreSnapshotCommand(FriendlyDeathChest plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!sender.hasPermission("friendlydeathchest.admin")) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &cYou don't have permission to use this command."));
+            return true;
+        }
+
+        ChestManager chestManager = plugin.getChestManager();
+        if (!chestManager.isSnapshotsEnabled()) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &cSnapshots are disabled. Set &esnapshot-interval &cin the config."));
+            return true;
+        }
+
+        if (args.length == 0) {
+            chestManager.listSnapshots(entries -> listSnapshots(sender, entries));
+            return true;
+        }
+
+        long time = parseTime(String.join(" ", args));
+        if (time < 0) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &eUsage: &f/fdc restore-snapshot <yyyy-MM-dd HH:mm>"));
+            return true;
+        }
+
+        chestManager.restoreSnapshot(time, (entry, restored) -> {
+            if (entry == null) {
+                sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                    "&7[&cFriendlyDeathChest&7] &cNo readable snapshot found from before &e" + formatTime(time) + "&c."));
+                return;
+            }
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &aRestored &e" + restored + " &adeath chest(s) from the snapshot taken at &e"
+                    + formatTime(entry.getTakenAt()) + "&a."));
+        });
+        return true;
+    }
+
+    /**
+     * Shows the newest snapshots
+     *
+     * @param sender The command sender
+     * @param entries The snapshots, oldest first
+     */
+    private void listSnapshots(CommandSender sender, List<ChestSnapshotArchive.Entry> entries) {
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&7[&cFriendlyDeathChest&7] &fNo snapshots have been written yet."));
+            return;
+        }
+
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+            "&7[&cFriendlyDeathChest&7] &fSnapshots &7(newest first)&f:"));
+        for (int i = entries.size() - 1; i >= Math.max(0, entries.size() - LISTED_SNAPSHOTS); i--) {
+            ChestSnapshotArchive.Entry entry = entries.get(i);
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+                "&e- &f" + formatTime(entry.getTakenAt()) + " &7(" + entry.getChestCount() + " chests)"));
+        }
+        sender.sendMessage(ChatColor.translateAlternateColorCodes('&',
+            "&7[&cFriendlyDeathChest&7] &fUse &e/fdc restore-snapshot <yyyy-MM-dd HH:mm> &fto restore one."));
+    }
+
+    /**
+     * Parses a time in the server's time zone, or as milliseconds since the epoch.
+     * A minute includes snapshots taken during it.
+     *
+     * @param text The time
+     * @return The time in milliseconds, or -1 if it could not be parsed
+     */
+    private long parseTime(String text) {
+        try {
+            return LocalDateTime.parse(text.replace('T', ' '), TIME_FORMAT)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + 59_999;
+        } catch (DateTimeParseException e) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private String formatTime(long time) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 1 && sender.hasPermission("friendlydeathchest.admin")) {
+            return List.of(TIME_FORMAT.format(LocalDateTime.now()).split(" ")[0]);
+        }
+
+        return List.of();
+    }
+}
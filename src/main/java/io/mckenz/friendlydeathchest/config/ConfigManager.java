@@ -3,14 +3,20 @@ package io.mckenz.friendlydeathchest.config;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.Material;
+import io.mckenz.friendlydeathchest.utils.MaterialTable;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Manages configuration for the FriendlyDeathChest plugin
  */
 public class ConfigManager {
+    private static final List<String> DEFAULT_REPLACEABLE_BLOCKS = List.of(
+        "AIR", "CAVE_AIR", "VOID_AIR", "WATER", "GRASS_BLOCK",
+        "TALL_GRASS", "SEAGRASS", "SNOW", "VINE", "DEAD_BUSH");
+
     private final JavaPlugin plugin;
     
     // General settings
@@ -21,9 +27,16 @@ public class ConfigManager {
     private int chestLifetime;
     private String invalidLocationBehavior;
     private int maxSearchRadius;
+    private boolean asyncLocationSearch;
+    private int chestCreationBudget;
+    private int verticalSearchBudget;
+    private int searchCacheTtl;
+    private MaterialTable materialTable;
     private int searchRadius;
     private boolean protectChest;
     private boolean namedChest;
+    private String chestMode;
+    private int virtualOpenRange;
     
     // Hologram settings
     private boolean enableHologram;
@@ -54,7 +67,13 @@ public class ConfigManager {
     
     // Advanced settings
     private boolean persistentStorage;
+    private String storageType;
+    private int journalCompactSize;
+    private int snapshotInterval;
+    private int snapshotRetention;
     private boolean respectProtectionPlugins;
+    private int protectionCacheTtl;
+    private int protectionCacheSize;
     private boolean debug;
     
     // Update checker settings
@@ -99,8 +118,18 @@ public class ConfigManager {
         chestLifetime = config.getInt("chest-lifetime", 15);
         invalidLocationBehavior = config.getString("invalid-location-behavior", "CLOSEST_VALID");
         maxSearchRadius = config.getInt("max-search-radius", 10);
+        asyncLocationSearch = config.getBoolean("async-location-search", false);
+        chestCreationBudget = config.getInt("chest-creation-budget", 2);
+        verticalSearchBudget = config.getInt("vertical-search-budget", 256);
+        searchCacheTtl = config.getInt("search-cache-ttl", 10);
+        List<String> replaceableBlocks = config.contains("replaceable-blocks")
+            ? config.getStringList("replaceable-blocks") : DEFAULT_REPLACEABLE_BLOCKS;
+        materialTable = new MaterialTable(replaceableBlocks,
+            config.getStringList("forbidden-ground-blocks"), plugin.getLogger());
         protectChest = config.getBoolean("protect-chest", true);
         namedChest = config.getBoolean("named-chest", true);
+        chestMode = config.getString("chest-mode", "BLOCK");
+        virtualOpenRange = config.getInt("virtual-open-range", 16);
         
         // Load hologram settings
         enableHologram = config.getBoolean("enable-hologram", true);
@@ -149,7 +178,13 @@ public class ConfigManager {
         
         // Load advanced settings
         persistentStorage = config.getBoolean("persistent-storage", true);
+        storageType = config.getString("storage-type", "YAML");
+        journalCompactSize = config.getInt("journal-compact-size", 256);
+        snapshotInterval = config.getInt("snapshot-interval", 30);
+        snapshotRetention = config.getInt("snapshot-retention", 48);
         respectProtectionPlugins = config.getBoolean("respect-protection-plugins", true);
+        protectionCacheTtl = config.getInt("protection-cache-ttl", 30);
+        protectionCacheSize = config.getInt("protection-cache-size", 4096);
         debug = config.getBoolean("debug", false);
         
         // Load update checker settings
@@ -187,6 +222,51 @@ public class ConfigManager {
         return maxSearchRadius;
     }
     
+    /**
+     * Gets whether the chest location is searched off the main thread
+     * 
+     * @return true if the location search runs on chunk snapshots off the main thread
+     */
+    public boolean isAsyncLocationSearch() {
+        return asyncLocationSearch;
+    }
+    
+    /**
+     * Gets how much time each tick may spend creating death chests for recent deaths
+     * 
+     * @return The time budget in milliseconds; at least one chest is created per tick regardless
+     */
+    public int getChestCreationBudget() {
+        return chestCreationBudget;
+    }
+    
+    /**
+     * Gets how many blocks the vertical search may probe when nothing is found near the death height
+     * 
+     * @return The probe budget, or 0 to disable the vertical search
+     */
+    public int getVerticalSearchBudget() {
+        return verticalSearchBudget;
+    }
+    
+    /**
+     * Gets how long the result of a location search is reused for deaths at the same spot
+     * 
+     * @return The cache time in seconds, 0 to search for every death
+     */
+    public int getSearchCacheTtl() {
+        return searchCacheTtl;
+    }
+    
+    /**
+     * Gets the block classes built from the replaceable and forbidden ground settings
+     * 
+     * @return The material table
+     */
+    public MaterialTable getMaterialTable() {
+        return materialTable;
+    }
+    
     public int getSearchRadius() {
         return searchRadius;
     }
@@ -199,6 +279,24 @@ public class ConfigManager {
         return namedChest;
     }
     
+    /**
+     * Gets whether death chests are kept by the plugin instead of being placed as blocks
+     * 
+     * @return true if the chest mode is VIRTUAL
+     */
+    public boolean isVirtualChestMode() {
+        return "VIRTUAL".equalsIgnoreCase(chestMode);
+    }
+    
+    /**
+     * Gets how close a player must be to open a virtual chest by command
+     * 
+     * @return The range in blocks, or 0 for anywhere in the same world
+     */
+    public int getVirtualOpenRange() {
+        return virtualOpenRange;
+    }
+    
     public boolean isHologramEnabled() {
         return enableHologram;
     }
@@ -280,10 +378,64 @@ public class ConfigManager {
         return persistentStorage;
     }
     
+    /**
+     * Gets the storage backend used when persistent storage is enabled
+     * 
+     * @return The storage type (YAML, SQLITE, BINARY or REGION)
+     */
+    public String getStorageType() {
+        return storageType;
+    }
+    
+    /**
+     * Gets the size the storage journal may reach before it is folded into a full save
+     * 
+     * @return The journal size limit in kilobytes
+     */
+    public int getJournalCompactSize() {
+        return journalCompactSize;
+    }
+    
+    /**
+     * Gets how often a compressed snapshot of all chests is written
+     * 
+     * @return The snapshot interval in minutes, or 0 if snapshots are disabled
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+    
+    /**
+     * Gets how many snapshots are kept before the oldest is deleted
+     * 
+     * @return The number of snapshots to keep
+     */
+    public int getSnapshotRetention() {
+        return snapshotRetention;
+    }
+    
     public boolean shouldRespectProtectionPlugins() {
         return respectProtectionPlugins;
     }
     
+    /**
+     * Gets how long a protection plugin decision is cached for a player
+     * 
+     * @return The cache time in seconds, 0 to disable the cache
+     */
+    public int getProtectionCacheTtl() {
+        return protectionCacheTtl;
+    }
+    
+    /**
+     * Gets the maximum number of cached protection plugin decisions
+     * 
+     * @return The maximum number of decisions
+     */
+    public int getProtectionCacheSize() {
+        return protectionCacheSize;
+    }
+    
     public boolean isDebugEnabled() {
         return debug;
     }
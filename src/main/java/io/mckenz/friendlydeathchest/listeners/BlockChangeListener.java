@@ -0,0 +1,109 @@
+package io.mckenz.friendlydeathchest.listeners;
+
+import io.mckenz.friendlydeathchest.service.LocationFinder;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.player.PlayerBucketFillEvent;
+
+import java.util.List;
+
+/**
+ * Listener for block changes, used to discard cached location search results
+ * that the change could make wrong
+ */
+public class BlockChangeListener implements Listener {
+    private final LocationFinder locationFinder;
+
+    /**
+     * Creates a new BlockChangeListener
+     *
+     * @param locationFinder The location finder service
+     */
+    public BlockChangeListener(LocationFinder locationFinder) {
+        this.locationFinder = locationFinder;
+    }
+
+    /**
+     * Handles block place events
+     *
+     * @param event The block place event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        locationFinder.invalidateHints(event.getBlock());
+    }
+
+    /**
+     * Handles block break events
+     *
+     * @param event The block break event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        locationFinder.invalidateHints(event.getBlock());
+    }
+
+    /**
+     * Handles block burn events
+     *
+     * @param event The block burn event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        locationFinder.invalidateHints(event.getBlock());
+    }
+
+    /**
+     * Handles bucket empty events, which place water or lava
+     *
+     * @param event The bucket empty event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBucketEmpty(PlayerBucketEmptyEvent event) {
+        locationFinder.invalidateHints(event.getBlock());
+    }
+
+    /**
+     * Handles bucket fill events, which remove water or lava
+     *
+     * @param event The bucket fill event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBucketFill(PlayerBucketFillEvent event) {
+        locationFinder.invalidateHints(event.getBlock());
+    }
+
+    /**
+     * Handles explosions caused by entities
+     *
+     * @param event The entity explode event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidateAll(event.blockList());
+    }
+
+    /**
+     * Handles explosions caused by blocks
+     *
+     * @param event The block explode event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidateAll(event.blockList());
+    }
+
+    private void invalidateAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            locationFinder.invalidateHints(block);
+        }
+    }
+}
@@ -44,10 +44,16 @@ public class BlockListener implements Listener {
     public void onBlockBreak(BlockBreakEvent event) {
         Block block = event.getBlock();
         
+        // Skip quickly unless a death chest is registered in this or an adjacent chunk
+        // (wall signs can sit across a chunk border from their chest)
+        if (!chestManager.hasChestsNear(block, 1)) {
+            return;
+        }
+        
         // Handle chest break
         if (block.getType() == Material.CHEST) {
             // Check if this is a death chest
-            ChestData chestData = chestManager.getChestData(block.getLocation());
+            ChestData chestData = chestManager.getChestData(block);
             if (chestData != null && config.shouldProtectChest()) {
                 // Check if player has permission to break this chest
                 Player player = event.getPlayer();
@@ -90,7 +96,7 @@ public class BlockListener implements Listener {
             
             if (chestBlock.getType() == Material.CHEST) {
                 // Check if this is a death chest
-                ChestData chestData = chestManager.getChestData(chestBlock.getLocation());
+                ChestData chestData = chestManager.getChestData(chestBlock);
                 if (chestData != null) {
                     Chest chest = (Chest) chestBlock.getState();
                     if (!chest.getInventory().isEmpty()) {
@@ -112,16 +118,6 @@ public class BlockListener implements Listener {
      * @return true if the block is a wall sign
      */
     private boolean isWallSign(Block block) {
-        return block.getType() == Material.OAK_WALL_SIGN ||
-               block.getType() == Material.SPRUCE_WALL_SIGN ||
-               block.getType() == Material.BIRCH_WALL_SIGN ||
-               block.getType() == Material.JUNGLE_WALL_SIGN ||
-               block.getType() == Material.ACACIA_WALL_SIGN ||
-               block.getType() == Material.DARK_OAK_WALL_SIGN ||
-               block.getType() == Material.CRIMSON_WALL_SIGN ||
-               block.getType() == Material.WARPED_WALL_SIGN ||
-               block.getType() == Material.MANGROVE_WALL_SIGN ||
-               block.getType() == Material.CHERRY_WALL_SIGN ||
-               block.getType() == Material.BAMBOO_WALL_SIGN;
+        return config.getMaterialTable().isWallSign(block.getType());
     }
 } 
\ No newline at end of file
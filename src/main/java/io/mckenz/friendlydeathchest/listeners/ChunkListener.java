@@ -0,0 +1,45 @@
+package io.mckenz.friendlydeathchest.listeners;
+
+import io.mckenz.friendlydeathchest.service.ChestManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+/**
+ * Listener for chunk loads and unloads, used to catch up on death chest work deferred while a
+ * chunk was unloaded and to load and unload chests with their region
+ */
+public class ChunkListener implements Listener {
+    private final ChestManager chestManager;
+
+    /**
+     * Creates a new ChunkListener
+     *
+     * @param chestManager The chest manager service
+     */
+    public ChunkListener(ChestManager chestManager) {
+        this.chestManager = chestManager;
+    }
+
+    /**
+     * Handles chunk load events
+     *
+     * @param event The chunk load event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        chestManager.handleChunkLoad(event.getChunk(), event.isNewChunk());
+    }
+
+    /**
+     * Handles chunk unload events
+     *
+     * @param event The chunk unload event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        chestManager.handleChunkUnload(event.getChunk());
+    }
+}
@@ -8,15 +8,20 @@ import org.bukkit.Particle;
 import org.bukkit.Sound;
 import org.bukkit.block.Block;
 import org.bukkit.block.Chest;
+import org.bukkit.block.DoubleChest;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryOpenEvent;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Listener for inventory interactions with death chests
  */
@@ -45,30 +50,30 @@ public class InventoryListener implements Listener {
      */
     @EventHandler
     public void onInventoryOpen(InventoryOpenEvent event) {
-        if (!(event.getInventory().getHolder() instanceof Chest)) {
+        // Skip inventories away from death chests before taking a block state snapshot
+        if (!isNearDeathChest(event.getInventory())) {
             return;
         }
-
-        Chest chest = (Chest) event.getInventory().getHolder();
-        Block chestBlock = chest.getBlock();
         
-        // Check if this is a death chest
-        ChestData chestData = chestManager.getChestData(chestBlock.getLocation());
-        if (chestData == null) {
-            return;
-        }
-        
-        // Check for stored experience
-        if (event.getPlayer() instanceof Player) {
-            Player player = (Player) event.getPlayer();
+        // Either half of a double chest may hold the stored experience
+        Chest deathChest = null;
+        for (Chest chest : getChests(event.getInventory().getHolder())) {
+            ChestData chestData = chestManager.getChestData(chest.getBlock());
+            if (chestData == null) {
+                continue;
+            }
+            deathChest = chest;
             
             // Only give XP to the chest owner
-            if (player.getUniqueId().equals(chestData.getOwnerUUID())) {
+            if (event.getPlayer() instanceof Player player && player.getUniqueId().equals(chestData.getOwnerUUID())) {
                 chestManager.restoreExperience(chest, player);
             }
         }
+        if (deathChest == null) {
+            return;
+        }
 
-        Location chestLoc = chest.getLocation().add(0.5, 0.5, 0.5);
+        Location chestLoc = deathChest.getLocation().add(0.5, 0.5, 0.5);
 
         // Play discovery effects
         chestLoc.getWorld().spawnParticle(Particle.END_ROD, chestLoc, 20, 0.2, 0.2, 0.2, 0.05);
@@ -85,15 +90,18 @@ public class InventoryListener implements Listener {
     public void onInventoryClose(InventoryCloseEvent event) {
         Inventory inventory = event.getInventory();
         
-        if (!(inventory.getHolder() instanceof Chest)) {
+        if (!isNearDeathChest(inventory)) {
             return;
         }
         
-        Chest chest = (Chest) inventory.getHolder();
-        Block chestBlock = chest.getBlock();
-        
-        // Check if this is a death chest
-        if (!chestManager.isDeathChest(chestBlock.getLocation())) {
+        // Check if this is a death chest, with both halves for a double chest
+        List<Block> chestBlocks = new ArrayList<>(2);
+        for (Chest chest : getChests(inventory.getHolder())) {
+            if (chestManager.isDeathChest(chest.getBlock())) {
+                chestBlocks.add(chest.getBlock());
+            }
+        }
+        if (chestBlocks.isEmpty()) {
             return;
         }
         
@@ -105,8 +113,10 @@ public class InventoryListener implements Listener {
                     // Get the player who closed the inventory
                     Player player = event.getPlayer() instanceof Player ? (Player) event.getPlayer() : null;
                     
-                    // Remove the chest, sign, and hologram
-                    chestManager.removeChest(chestBlock, player);
+                    // Remove the chest, sign, and hologram; a half already removed with its partner is skipped
+                    for (Block chestBlock : chestBlocks) {
+                        chestManager.removeChest(chestBlock, player);
+                    }
                     
                     // Play additional effects to make it more noticeable
                     if (player != null) {
@@ -115,10 +125,43 @@ public class InventoryListener implements Listener {
                     }
                     
                     if (config.isDebugEnabled()) {
-                        plugin.getLogger().info("Death chest removed after being emptied at " + chestBlock.getLocation());
+                        plugin.getLogger().info("Death chest removed after being emptied at " + chestBlocks.get(0).getLocation());
                     }
                 }
             }.runTask(plugin);
         }
     }
+    
+    /**
+     * Gets the chest blocks behind an inventory holder
+     * 
+     * @param holder The inventory holder
+     * @return Both halves for a double chest, the chest for a single chest, otherwise nothing
+     */
+    private List<Chest> getChests(InventoryHolder holder) {
+        List<Chest> chests = new ArrayList<>(2);
+        if (holder instanceof Chest chest) {
+            chests.add(chest);
+        } else if (holder instanceof DoubleChest doubleChest) {
+            if (doubleChest.getLeftSide() instanceof Chest left) {
+                chests.add(left);
+            }
+            if (doubleChest.getRightSide() instanceof Chest right) {
+                chests.add(right);
+            }
+        }
+        return chests;
+    }
+    
+    /**
+     * Checks if an inventory belongs to a block near a death chest, using the chunk index.
+     * Double chest inventories report the point between both halves, hence the radius.
+     * 
+     * @param inventory The inventory to check
+     * @return true if a death chest may hold this inventory
+     */
+    private boolean isNearDeathChest(Inventory inventory) {
+        Location location = inventory.getLocation();
+        return location != null && chestManager.hasChestsNear(location, 1);
+    }
 } 
\ No newline at end of file
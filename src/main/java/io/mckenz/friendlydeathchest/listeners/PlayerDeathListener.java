@@ -2,23 +2,26 @@ package io.mckenz.friendlydeathchest.listeners;
 
 import io.mckenz.friendlydeathchest.config.ConfigManager;
 import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.model.ChestPlacement;
+import io.mckenz.friendlydeathchest.model.DeathChestJob;
 import io.mckenz.friendlydeathchest.service.ChestManager;
+import io.mckenz.friendlydeathchest.service.DeathChestPipeline;
 import io.mckenz.friendlydeathchest.service.HologramManager;
 import io.mckenz.friendlydeathchest.service.LocationFinder;
+import io.mckenz.friendlydeathchest.service.VirtualChestManager;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
-import org.bukkit.block.Chest;
 import org.bukkit.block.Sign;
+import org.bukkit.entity.ExperienceOrb;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -26,16 +29,19 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 /**
- * Handles player death events
+ * Handles player death events, and creates the death chests once the pipeline gets to them
  */
-public class PlayerDeathListener implements Listener {
+public class PlayerDeathListener implements Listener, DeathChestPipeline.Builder {
     private final JavaPlugin plugin;
     private final ConfigManager config;
     private final LocationFinder locationFinder;
     private final ChestManager chestManager;
     private final HologramManager hologramManager;
+    private final VirtualChestManager virtualChestManager;
+    private final DeathChestPipeline pipeline;
 
     /**
      * Creates a new PlayerDeathListener
@@ -45,14 +51,19 @@ public class PlayerDeathListener implements Listener {
      * @param locationFinder The location finder service
      * @param chestManager The chest manager service
      * @param hologramManager The hologram manager service (can be null if disabled)
+     * @param virtualChestManager The virtual chest manager service
+     * @param pipeline The pipeline that creates the death chests after the death event
      */
     public PlayerDeathListener(JavaPlugin plugin, ConfigManager config, LocationFinder locationFinder, 
-                               ChestManager chestManager, HologramManager hologramManager) {
+                               ChestManager chestManager, HologramManager hologramManager,
+                               VirtualChestManager virtualChestManager, DeathChestPipeline pipeline) {
         this.plugin = plugin;
         this.config = config;
         this.locationFinder = locationFinder;
         this.chestManager = chestManager;
         this.hologramManager = hologramManager;
+        this.virtualChestManager = virtualChestManager;
+        this.pipeline = pipeline;
     }
 
     /**
@@ -76,23 +87,84 @@ public class PlayerDeathListener implements Listener {
         
         // Find a suitable location for the chest
         Location deathLoc = player.getLocation();
-        Location chestLoc = locationFinder.findChestLocation(deathLoc);
         
-        if (chestLoc == null) {
-            // No valid location found
-            if (config.sendInvalidLocationMessage()) {
-                player.sendMessage(ChatColor.translateAlternateColorCodes('&', config.getInvalidLocationMessage()));
-            }
+        // Virtual chests need no free block, only a free spot at the death location
+        if (config.isVirtualChestMode() && createVirtualChest(event, player, deathLoc)) {
             return;
         }
         
-        // Create the chest and store items
-        createDeathChest(player, chestLoc, event.getDrops(), event.getDroppedExp());
+        // Find room for the whole chest, which needs two blocks if the items overflow a single chest
+        int stackCount = 0;
+        for (ItemStack item : event.getDrops()) {
+            if (item != null && item.getType() != Material.AIR) {
+                stackCount++;
+            }
+        }
+        int footprint = locationFinder.getFootprint(stackCount);
         
-        // Clear the drops
+        // Take the drops now; the chest is created over the next ticks, spread out when many players die at once
+        List<ItemStack> drops = new ArrayList<>(event.getDrops());
+        int experience = event.getDroppedExp();
         event.getDrops().clear();
         event.setDroppedExp(0);
         
+        pipeline.submit(new DeathChestJob(UUID.randomUUID(), player.getUniqueId(), player.getName(), deathLoc, drops, 
+            experience, footprint));
+    }
+    
+    /**
+     * Creates the death chest for a job, or drops its items where the player died if there
+     * is no placement
+     * 
+     * @param job The job
+     * @param placement The blocks to create the chest at, or null if none were found
+     */
+    @Override
+    public void build(DeathChestJob job, ChestPlacement placement) {
+        // Jobs replayed after a crash, or completed after a quick logout, have no online player to message
+        Player player = plugin.getServer().getPlayer(job.getOwner());
+        Location deathLoc = job.getDeathLocation();
+        List<ItemStack> leftovers = job.getDrops();
+        if (placement == null) {
+            if (player != null) {
+                sendInvalidLocationMessage(player);
+            }
+            if (job.getExperience() > 0) {
+                deathLoc.getWorld().spawn(deathLoc, ExperienceOrb.class, orb -> orb.setExperience(job.getExperience()));
+            }
+        } else {
+            leftovers = createDeathChest(job.getOwner(), job.getOwnerName(), placement, job.getDrops(), job.getExperience());
+            if (player != null) {
+                sendCreationMessage(player, placement.getChestBlock().getLocation());
+            }
+        }
+        
+        // Items that did not fit drop where the player died, as they would have
+        for (ItemStack item : leftovers) {
+            if (item != null && item.getType() != Material.AIR) {
+                deathLoc.getWorld().dropItemNaturally(deathLoc, item);
+            }
+        }
+    }
+    
+    /**
+     * Tells a player that no chest could be created, if enabled
+     *
+     * @param player The player who died
+     */
+    private void sendInvalidLocationMessage(Player player) {
+        if (config.sendInvalidLocationMessage()) {
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', config.getInvalidLocationMessage()));
+        }
+    }
+    
+    /**
+     * Tells a player where their death chest is, if enabled
+     *
+     * @param player The player who died
+     * @param chestLoc The chest location
+     */
+    private void sendCreationMessage(Player player, Location chestLoc) {
         // Send creation message
         if (config.sendCreationMessage()) {
             String message = config.getCreationMessage()
@@ -105,33 +177,54 @@ public class PlayerDeathListener implements Listener {
     }
     
     /**
-     * Creates a death chest at the specified location
+     * Stores the drops in a virtual chest at the death location
      *
+     * @param event The player death event
      * @param player The player who died
-     * @param location The location to create the chest
-     * @param items The items to store in the chest
-     * @param experience The experience to store in the chest
+     * @param deathLoc The death location
+     * @return true if a virtual chest was created, false if there was no free spot
      */
-    private void createDeathChest(Player player, Location location, List<ItemStack> items, int experience) {
-        // Set the chest block
-        Block block = location.getBlock();
-        block.setType(Material.CHEST);
-        
-        // Get the chest inventory
-        Chest chest = (Chest) block.getState();
-        Inventory inventory = chest.getInventory();
+    private boolean createVirtualChest(PlayerDeathEvent event, Player player, Location deathLoc) {
+        List<ItemStack> leftovers = virtualChestManager.createVirtualChest(player, deathLoc, event.getDrops(), event.getDroppedExp());
+        if (leftovers == null) {
+            return false;
+        }
         
-        // Create a copy of the items to prevent modification of the original list
-        List<ItemStack> itemCopy = new ArrayList<>(items);
+        // Items that did not fit drop normally
+        event.getDrops().clear();
+        event.getDrops().addAll(leftovers);
+        if (config.shouldStoreExperience()) {
+            event.setDroppedExp(0);
+        }
         
-        // Fill the chest with the items
-        for (ItemStack item : itemCopy) {
+        if (config.sendCreationMessage()) {
+            String message = config.getCreationMessage()
+                    .replace("{location}", formatLocation(deathLoc))
+                    .replace("{x}", String.valueOf(deathLoc.getBlockX()))
+                    .replace("{y}", String.valueOf(deathLoc.getBlockY()))
+                    .replace("{z}", String.valueOf(deathLoc.getBlockZ()));
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
+        }
+        player.sendMessage(ChatColor.translateAlternateColorCodes('&', 
+            "&7[&cFriendlyDeathChest&7] &fRight-click the spot or use &e/fdc open &fto open it."));
+        return true;
+    }
+    
+    /**
+     * Creates a death chest at the specified placement
+     *
+     * @param owner The UUID of the player who died
+     * @param ownerName The name of the player who died
+     * @param placement The blocks to create the chest at
+     * @param items The items to store in the chest
+     * @param experience The experience to store in the chest
+     * @return The items that did not fit in the chest
+     */
+    private List<ItemStack> createDeathChest(UUID owner, String ownerName, ChestPlacement placement, List<ItemStack> items, int experience) {
+        List<ItemStack> storedItems = new ArrayList<>(items.size());
+        for (ItemStack item : items) {
             if (item != null && item.getType() != Material.AIR) {
-                // Try to add the item to the chest
-                if (inventory.addItem(item).isEmpty()) {
-                    // Item was added successfully, remove it from the original list
-                    items.remove(item);
-                }
+                storedItems.add(item);
             }
         }
         
@@ -141,19 +234,31 @@ public class PlayerDeathListener implements Listener {
             expiryTime = System.currentTimeMillis() + (config.getChestLifetime() * 60000L);
         }
         
+        // Place the chest without physics and fill it through a single block state snapshot
+        Location location = placement.getChestBlock().getLocation();
+        List<ItemStack> leftovers = chestManager.placeChest(placement.getChestBlock(), placement.getSecondChestBlock(), 
+            owner, null, expiryTime, experience, storedItems);
+        
         // Register the chest with the chest manager
-        ChestData chestData = new ChestData(player.getUniqueId(), experience, expiryTime);
+        ChestData chestData = new ChestData(owner, experience, expiryTime);
         chestManager.registerChest(location, chestData);
+        if (placement.isDoubleChest()) {
+            // The halves expire together and are listed once, see ChestRegistry.getPartner
+            chestManager.registerChest(placement.getSecondChestBlock().getLocation(), 
+                new ChestData(owner, 0, expiryTime));
+        }
         
         // Add a sign if enabled
         if (config.isSignEnabled()) {
-            createSign(location, player.getName());
+            createSign(location, ownerName);
         }
         
         // Create hologram if enabled
         if (hologramManager != null && config.isHologramEnabled()) {
-            hologramManager.createHologram(location, player.getName(), expiryTime);
+            hologramManager.createHologram(location, ownerName, expiryTime);
         }
+        
+        return leftovers;
     }
     
     /**
@@ -194,18 +299,15 @@ public class PlayerDeathListener implements Listener {
             return;
         }
         
-        // Set the wall sign block with correct orientation
-        Material signMaterial = getWallSignMaterial();
-        signBlock.setType(signMaterial);
-        
-        // Set the sign direction
+        // Compute the final wall sign data up front and place it once without physics,
+        // instead of placing a default sign and turning it with a second update
         org.bukkit.block.data.type.WallSign signData = 
-            (org.bukkit.block.data.type.WallSign) signBlock.getBlockData();
+            (org.bukkit.block.data.type.WallSign) getWallSignMaterial().createBlockData();
         
         // The sign should be attached to the chest and face outward
         // So the sign's facing direction should be the same as the chest's facing
         signData.setFacing(chestFacing);
-        signBlock.setBlockData(signData);
+        signBlock.setBlockData(signData, false);
         
         // Log debug information if enabled
         if (config.isDebugEnabled()) {
@@ -213,9 +315,8 @@ public class PlayerDeathListener implements Listener {
                 " facing " + chestFacing + " in front of chest at " + chestLocation);
         }
         
-        // Update the sign text
-        if (signBlock.getState() instanceof Sign) {
-            Sign sign = (Sign) signBlock.getState();
+        // Update the sign text through a single block state snapshot
+        if (signBlock.getState() instanceof Sign sign) {
             
             // Get current date for the date placeholder
             SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
@@ -231,7 +332,7 @@ public class PlayerDeathListener implements Listener {
                 sign.setLine(i, line);
             }
             
-            sign.update();
+            sign.update(true, false);
         }
     }
     
@@ -0,0 +1,57 @@
+package io.mckenz.friendlydeathchest.listeners;
+
+import io.mckenz.friendlydeathchest.service.ProtectionManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+
+/**
+ * Listener for other plugins being enabled and disabled, used to hook into protection
+ * plugins that load after this one or are reloaded, and for players leaving, whose
+ * cached protection decisions are no longer needed
+ */
+public class PluginListener implements Listener {
+    private final ProtectionManager protection;
+
+    /**
+     * Creates a new PluginListener
+     *
+     * @param protection The protection manager service
+     */
+    public PluginListener(ProtectionManager protection) {
+        this.protection = protection;
+    }
+
+    /**
+     * Handles plugin enable events
+     *
+     * @param event The plugin enable event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        protection.handlePluginEnable(event.getPlugin());
+    }
+
+    /**
+     * Handles plugin disable events
+     *
+     * @param event The plugin disable event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        protection.handlePluginDisable(event.getPlugin());
+    }
+
+    /**
+     * Handles player quit events
+     *
+     * @param event The player quit event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        protection.invalidate(event.getPlayer());
+    }
+}
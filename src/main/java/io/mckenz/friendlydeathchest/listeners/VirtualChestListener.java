@@ -0,0 +1,84 @@
+package io.mckenz.friendlydeathchest.listeners;
+
+import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.model.VirtualChest;
+import io.mckenz.friendlydeathchest.service.ChestManager;
+import io.mckenz.friendlydeathchest.service.VirtualChestManager;
+import org.bukkit.ChatColor;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
+
+/**
+ * Listener that opens virtual death chests when their spot is right-clicked and
+ * removes them once they are emptied
+ */
+public class VirtualChestListener implements Listener {
+    private final ConfigManager config;
+    private final ChestManager chestManager;
+    private final VirtualChestManager virtualChests;
+
+    /**
+     * Creates a new VirtualChestListener
+     *
+     * @param config The configuration manager
+     * @param chestManager The chest manager service
+     * @param virtualChests The virtual chest manager service
+     */
+    public VirtualChestListener(ConfigManager config, ChestManager chestManager, VirtualChestManager virtualChests) {
+        this.config = config;
+        this.chestManager = chestManager;
+        this.virtualChests = virtualChests;
+    }
+
+    /**
+     * Opens a virtual chest when a player right-clicks its spot or the block below it
+     *
+     * @param event The player interact event
+     */
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onPlayerInteract(PlayerInteractEvent event) {
+        if (event.getAction() != Action.RIGHT_CLICK_BLOCK || event.getHand() != EquipmentSlot.HAND
+                || virtualChests.isEmpty()) {
+            return;
+        }
+
+        // Virtual chests usually float over the ground, so the clicked block is often the one below
+        Block clicked = event.getClickedBlock();
+        VirtualChest chest = virtualChests.get(chestManager.getRegistry().key(clicked.getRelative(BlockFace.UP)));
+        if (chest == null) {
+            chest = virtualChests.get(chestManager.getRegistry().key(clicked));
+        }
+        if (chest == null) {
+            return;
+        }
+
+        Player player = event.getPlayer();
+        event.setCancelled(true);
+        if (config.shouldProtectChest() && !chestManager.canAccessChest(player, chest.getChestData())) {
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', config.getMessageNoPermission()));
+            return;
+        }
+
+        virtualChests.open(player, chest);
+    }
+
+    /**
+     * Handles inventory close events for virtual chests
+     *
+     * @param event The inventory close event
+     */
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) {
+        if (event.getInventory().getHolder() instanceof VirtualChest chest && event.getPlayer() instanceof Player player) {
+            virtualChests.handleClose(chest, player);
+        }
+    }
+}
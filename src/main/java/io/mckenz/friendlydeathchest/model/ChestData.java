@@ -11,6 +11,8 @@ public class ChestData {
     private final int experience;
     private long expiryTime;
     private boolean warningShown;
+    private boolean verified;
+    private boolean virtual;
     
     /**
      * Creates new chest data
@@ -25,6 +27,7 @@ public class ChestData {
         this.expiryTime = expiryTime;
         this.creationTime = System.currentTimeMillis();
         this.warningShown = false;
+        this.verified = true;
     }
     
     /**
@@ -89,4 +92,41 @@ public class ChestData {
     public void setWarningShown(boolean warningShown) {
         this.warningShown = warningShown;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Checks if the chest block has been confirmed to exist in the world.
+     * Chests loaded from storage start unverified until their chunk is loaded.
+     * 
+     * @return true if the chest block has been verified
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+    
+    /**
+     * Sets whether the chest block has been confirmed to exist in the world
+     * 
+     * @param verified true if the chest block has been verified
+     */
+    public void setVerified(boolean verified) {
+        this.verified = verified;
+    }
+    
+    /**
+     * Checks if the chest is virtual, with its items held by the plugin instead of a chest block
+     * 
+     * @return true if the chest is virtual
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+    
+    /**
+     * Sets whether the chest is virtual
+     * 
+     * @param virtual true if the chest is virtual
+     */
+    public void setVirtual(boolean virtual) {
+        this.virtual = virtual;
+    }
+}
\ No newline at end of file
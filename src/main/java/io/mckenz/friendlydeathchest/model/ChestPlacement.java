@@ -0,0 +1,49 @@
+package io.mckenz.friendlydeathchest.model;
+
+import org.bukkit.block.Block;
+
+/**
+ * The blocks a death chest will be placed at: one for a single chest, two for a double chest
+ */
+public class ChestPlacement {
+    private final Block chestBlock;
+    private final Block secondChestBlock;
+
+    /**
+     * Creates a new chest placement
+     *
+     * @param chestBlock The block for the chest
+     * @param secondChestBlock The block for the second half of a double chest, or null for a single chest
+     */
+    public ChestPlacement(Block chestBlock, Block secondChestBlock) {
+        this.chestBlock = chestBlock;
+        this.secondChestBlock = secondChestBlock;
+    }
+
+    /**
+     * Gets the block for the chest
+     *
+     * @return The chest block
+     */
+    public Block getChestBlock() {
+        return chestBlock;
+    }
+
+    /**
+     * Gets the block for the second half of a double chest
+     *
+     * @return The second chest block, or null for a single chest
+     */
+    public Block getSecondChestBlock() {
+        return secondChestBlock;
+    }
+
+    /**
+     * Checks if the placement holds a double chest
+     *
+     * @return true if there is a second half
+     */
+    public boolean isDoubleChest() {
+        return secondChestBlock != null;
+    }
+}
@@ -0,0 +1,123 @@
+package io.mckenz.friendlydeathchest.model;
+
+import org.bukkit.Location;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The items and experience of a death, taken from the death event and waiting for
+ * their death chest to be created
+ */
+public class DeathChestJob {
+    private final UUID id;
+    private final UUID owner;
+    private final String ownerName;
+    private final Location deathLocation;
+    private final List<ItemStack> drops;
+    private final int experience;
+    private final int footprint;
+    private boolean done;
+
+    /**
+     * Creates a new death chest job
+     *
+     * @param id The job's unique id, which names its pending-deaths file
+     * @param owner The UUID of the player who died
+     * @param ownerName The name of the player who died
+     * @param deathLocation The location where the player died
+     * @param drops The items the player dropped
+     * @param experience The experience the player dropped
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     */
+    public DeathChestJob(UUID id, UUID owner, String ownerName, Location deathLocation, List<ItemStack> drops,
+                         int experience, int footprint) {
+        this.id = id;
+        this.owner = owner;
+        this.ownerName = ownerName;
+        this.deathLocation = deathLocation;
+        this.drops = drops;
+        this.experience = experience;
+        this.footprint = footprint;
+    }
+
+    /**
+     * Gets the job's unique id
+     *
+     * @return The id
+     */
+    public UUID getId() {
+        return id;
+    }
+
+    /**
+     * Gets the UUID of the player who died
+     *
+     * @return The owner's UUID
+     */
+    public UUID getOwner() {
+        return owner;
+    }
+
+    /**
+     * Gets the name of the player who died
+     *
+     * @return The owner's name
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    /**
+     * Gets the location where the player died
+     *
+     * @return The death location
+     */
+    public Location getDeathLocation() {
+        return deathLocation;
+    }
+
+    /**
+     * Gets the items the player dropped
+     *
+     * @return The dropped items
+     */
+    public List<ItemStack> getDrops() {
+        return drops;
+    }
+
+    /**
+     * Gets the experience the player dropped
+     *
+     * @return The dropped experience
+     */
+    public int getExperience() {
+        return experience;
+    }
+
+    /**
+     * Gets the number of blocks the chest needs
+     *
+     * @return 1 for a single chest, 2 for a double chest
+     */
+    public int getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Checks if the job was completed, so its items are in a chest or on the ground
+     *
+     * @return true if the job is done
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Marks the job as completed
+     */
+    public void markDone() {
+        this.done = true;
+    }
+}
@@ -0,0 +1,141 @@
+package io.mckenz.friendlydeathchest.model;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+
+/**
+ * A death chest without a block, whose items are held by the plugin
+ */
+public class VirtualChest implements InventoryHolder {
+    private final long key;
+    private ChestData chestData;
+    private final String ownerName;
+    private final Inventory inventory;
+    private int experience;
+    private ItemStack[] savedContents;
+    private boolean changed = true;
+
+    /**
+     * Creates a new VirtualChest with an empty inventory
+     *
+     * @param key The registry key of the chest position
+     * @param chestData The chest data
+     * @param ownerName The name of the owner when the chest was created
+     * @param size The inventory size, a multiple of 9 up to 54
+     * @param title The inventory title
+     * @param experience The stored experience
+     */
+    public VirtualChest(long key, ChestData chestData, String ownerName, int size, String title, int experience) {
+        this.key = key;
+        this.chestData = chestData;
+        this.ownerName = ownerName;
+        this.inventory = Bukkit.createInventory(this, size, title);
+        this.experience = experience;
+    }
+
+    /**
+     * Gets the registry key of the chest position
+     *
+     * @return The registry key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the chest data
+     *
+     * @return The chest data
+     */
+    public ChestData getChestData() {
+        return chestData;
+    }
+
+    /**
+     * Sets the chest data, when the chest storage registers the chest again
+     *
+     * @param chestData The chest data
+     */
+    public void setChestData(ChestData chestData) {
+        this.chestData = chestData;
+    }
+
+    /**
+     * Gets the name of the owner when the chest was created
+     *
+     * @return The owner name
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Gets the stored experience that has not been given back yet
+     *
+     * @return The stored experience
+     */
+    public int getExperience() {
+        return experience;
+    }
+
+    /**
+     * Sets the stored experience
+     *
+     * @param experience The stored experience
+     */
+    public void setExperience(int experience) {
+        this.experience = experience;
+    }
+
+    /**
+     * Marks the chest as changed, so it is saved again
+     */
+    public void markChanged() {
+        changed = true;
+    }
+
+    /**
+     * Marks the chest as changed if its items differ from the ones last saved
+     */
+    public void checkContents() {
+        if (!changed && !Arrays.equals(savedContents, inventory.getContents())) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Checks if the chest changed since it was last saved
+     *
+     * @return true if the chest needs to be saved
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Copies the items for saving and marks the chest as saved. The copies are not
+     * changed afterwards, so they can be written from another thread.
+     *
+     * @return Copies of the inventory contents, with null for empty slots
+     */
+    public ItemStack[] saveContents() {
+        ItemStack[] contents = inventory.getContents();
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (contents[slot] != null) {
+                contents[slot] = contents[slot].clone();
+            }
+        }
+        savedContents = contents;
+        changed = false;
+        return contents;
+    }
+}
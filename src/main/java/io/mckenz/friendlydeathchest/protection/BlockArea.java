@@ -0,0 +1,52 @@
+package io.mckenz.friendlydeathchest.protection;
+
+/**
+ * A box of blocks in one world, with inclusive bounds
+ *
+ * @param minX The lowest x coordinate
+ * @param minY The lowest y coordinate
+ * @param minZ The lowest z coordinate
+ * @param maxX The highest x coordinate
+ * @param maxY The highest y coordinate
+ * @param maxZ The highest z coordinate
+ */
+public record BlockArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+    /**
+     * Gets the area of a chunk, over the full height of its world
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @param minY The lowest y coordinate of the world
+     * @param maxY The highest y coordinate of the world
+     * @return The chunk area
+     */
+    public static BlockArea ofChunk(int chunkX, int chunkZ, int minY, int maxY) {
+        return new BlockArea(chunkX << 4, minY, chunkZ << 4, (chunkX << 4) + 15, maxY, (chunkZ << 4) + 15);
+    }
+
+    /**
+     * Checks if a block is inside the area
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return true if the block is inside
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * Gets the blocks inside both this and another area
+     *
+     * @param other The other area
+     * @return The overlap, or null if the areas do not overlap
+     */
+    public BlockArea intersect(BlockArea other) {
+        BlockArea overlap = new BlockArea(Math.max(minX, other.minX), Math.max(minY, other.minY), Math.max(minZ, other.minZ),
+            Math.min(maxX, other.maxX), Math.min(maxY, other.maxY), Math.min(maxZ, other.maxZ));
+        return overlap.minX <= overlap.maxX && overlap.minY <= overlap.maxY && overlap.minZ <= overlap.maxZ
+            ? overlap : null;
+    }
+}
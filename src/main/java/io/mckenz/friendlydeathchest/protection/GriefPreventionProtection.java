@@ -0,0 +1,97 @@
+package io.mckenz.friendlydeathchest.protection;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Build permission check through GriefPrevention claims
+ */
+public class GriefPreventionProtection implements ProtectionProvider {
+    private MethodHandle allowBuild;
+    private MethodHandle getClaimAt;
+    private MethodHandle getClaims;
+    private MethodHandle getLesserCorner;
+    private MethodHandle getGreaterCorner;
+    private MethodHandle getChildren;
+
+    @Override
+    public String getPluginName() {
+        return "GriefPrevention";
+    }
+
+    @Override
+    public void bind(Plugin plugin) throws Throwable {
+        ClassLoader classLoader = plugin.getClass().getClassLoader();
+        Class<?> pluginClass = Class.forName("me.ryanhamshire.GriefPrevention.GriefPrevention", true, classLoader);
+        Class<?> dataStoreClass = Class.forName("me.ryanhamshire.GriefPrevention.DataStore", true, classLoader);
+        Object dataStore = MethodHandles.publicLookup()
+            .findStatic(pluginClass, "getDataStore", MethodType.methodType(dataStoreClass))
+            .invoke();
+        allowBuild = MethodHandles.publicLookup()
+            .findVirtual(dataStoreClass, "allowBuild",
+                MethodType.methodType(String.class, Player.class, Location.class, Material.class))
+            .bindTo(dataStore);
+
+        // Claim bounds only let answers be reused, so versions without them still work
+        try {
+            Class<?> claimClass = Class.forName("me.ryanhamshire.GriefPrevention.Claim", true, classLoader);
+            getClaimAt = MethodHandles.publicLookup()
+                .findVirtual(dataStoreClass, "getClaimAt",
+                    MethodType.methodType(claimClass, Location.class, boolean.class, claimClass))
+                .bindTo(dataStore);
+            getClaims = MethodHandles.publicLookup()
+                .findVirtual(dataStoreClass, "getClaims", MethodType.methodType(Collection.class, int.class, int.class))
+                .bindTo(dataStore);
+            getLesserCorner = MethodHandles.publicLookup()
+                .findVirtual(claimClass, "getLesserBoundaryCorner", MethodType.methodType(Location.class));
+            getGreaterCorner = MethodHandles.publicLookup()
+                .findVirtual(claimClass, "getGreaterBoundaryCorner", MethodType.methodType(Location.class));
+            getChildren = MethodHandles.publicLookup().findGetter(claimClass, "children", ArrayList.class);
+        } catch (ReflectiveOperationException e) {
+            getClaimAt = null;
+        }
+    }
+
+    @Override
+    public boolean canBuild(Player player, Location location) throws Throwable {
+        // GriefPrevention returns the reason building is denied, or null if it is allowed
+        return (String) allowBuild.invokeExact(player, location, Material.CHEST) == null;
+    }
+
+    @Override
+    public BlockArea getDecisionArea(Location location) throws Throwable {
+        if (getClaimAt == null) {
+            return null;
+        }
+
+        World world = location.getWorld();
+        Object claim = getClaimAt.invoke(location, false, null);
+        if (claim == null) {
+            // Outside claims the answer is the same wherever no claim reaches into the chunk
+            int chunkX = location.getBlockX() >> 4;
+            int chunkZ = location.getBlockZ() >> 4;
+            return ((Collection<?>) getClaims.invoke(chunkX, chunkZ)).isEmpty()
+                ? BlockArea.ofChunk(chunkX, chunkZ, world.getMinHeight(), world.getMaxHeight() - 1) : null;
+        }
+
+        // Subdivisions can trust other players than the rest of their claim
+        if (!((Collection<?>) getChildren.invoke(claim)).isEmpty()) {
+            return null;
+        }
+
+        // Claims reach from their lower corner up to the top of the world
+        Location lesser = (Location) getLesserCorner.invoke(claim);
+        Location greater = (Location) getGreaterCorner.invoke(claim);
+        return new BlockArea(lesser.getBlockX(), lesser.getBlockY(), lesser.getBlockZ(),
+            greater.getBlockX(), world.getMaxHeight() - 1, greater.getBlockZ());
+    }
+}
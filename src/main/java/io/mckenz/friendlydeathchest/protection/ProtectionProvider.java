@@ -0,0 +1,58 @@
+package io.mckenz.friendlydeathchest.protection;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Build permission check backed by a protection or claim plugin
+ * <p>
+ * Providers are bound once when their plugin is enabled, resolving everything they
+ * need through reflection up front, so {@link #canBuild(Player, Location)} only
+ * invokes cached method handles. The protection manager binds a provider again
+ * whenever its plugin is enabled and forgets it when the plugin is disabled.
+ * <p>
+ * A provider that knows the claim or region a check matched reports it through
+ * {@link #getDecisionArea(Location)}, so the answer can be reused for the other
+ * blocks of that area.
+ */
+public interface ProtectionProvider {
+
+    /**
+     * Gets the name of the plugin this provider checks with
+     *
+     * @return The plugin name, as used by the plugin manager
+     */
+    String getPluginName();
+
+    /**
+     * Resolves the plugin API this provider uses
+     *
+     * @param plugin The enabled plugin instance
+     * @throws Throwable If the plugin API is missing or could not be resolved
+     */
+    void bind(Plugin plugin) throws Throwable;
+
+    /**
+     * Checks if a player may build at a location
+     *
+     * @param player The player
+     * @param location The location
+     * @return true if the plugin allows building there
+     * @throws Throwable If the plugin API call failed
+     */
+    boolean canBuild(Player player, Location location) throws Throwable;
+
+    /**
+     * Gets the blocks around a location that this plugin answers every build check for
+     * like the location itself, for any player. This is the claim or region the location
+     * is in, or an area that no claim or region reaches into.
+     *
+     * @param location The location
+     * @return The area, or null if it is not known
+     * @throws Throwable If the plugin API call failed
+     */
+    default BlockArea getDecisionArea(Location location) throws Throwable {
+        return null;
+    }
+}
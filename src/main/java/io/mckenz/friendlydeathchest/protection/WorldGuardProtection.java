@@ -0,0 +1,82 @@
+package io.mckenz.friendlydeathchest.protection;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Build permission check through WorldGuard
+ */
+public class WorldGuardProtection implements ProtectionProvider {
+    private MethodHandle canBuild;
+    private MethodHandle getRegionManager;
+    private MethodHandle newVector;
+    private MethodHandle newCuboid;
+    private MethodHandle getApplicableRegions;
+    private MethodHandle regionCount;
+
+    @Override
+    public String getPluginName() {
+        return "WorldGuard";
+    }
+
+    @Override
+    public void bind(Plugin plugin) throws Throwable {
+        ClassLoader classLoader = plugin.getClass().getClassLoader();
+        Class<?> pluginClass = Class.forName("com.sk89q.worldguard.bukkit.WorldGuardPlugin", true, classLoader);
+        Object worldGuard = MethodHandles.publicLookup()
+            .findStatic(pluginClass, "inst", MethodType.methodType(pluginClass))
+            .invoke();
+        canBuild = MethodHandles.publicLookup()
+            .findVirtual(pluginClass, "canBuild", MethodType.methodType(boolean.class, Player.class, Location.class))
+            .bindTo(worldGuard);
+
+        // Region lookups only let answers be reused, so versions without them still work
+        try {
+            Class<?> managerClass = Class.forName("com.sk89q.worldguard.protection.managers.RegionManager", true, classLoader);
+            Class<?> vectorClass = Class.forName("com.sk89q.worldedit.BlockVector", true, classLoader);
+            Class<?> regionClass = Class.forName("com.sk89q.worldguard.protection.regions.ProtectedRegion", true, classLoader);
+            Class<?> cuboidClass = Class.forName("com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion", true, classLoader);
+            Class<?> setClass = Class.forName("com.sk89q.worldguard.protection.ApplicableRegionSet", true, classLoader);
+            getRegionManager = MethodHandles.publicLookup()
+                .findVirtual(pluginClass, "getRegionManager", MethodType.methodType(managerClass, World.class))
+                .bindTo(worldGuard);
+            newVector = MethodHandles.publicLookup()
+                .findConstructor(vectorClass, MethodType.methodType(void.class, int.class, int.class, int.class));
+            newCuboid = MethodHandles.publicLookup()
+                .findConstructor(cuboidClass, MethodType.methodType(void.class, String.class, vectorClass, vectorClass));
+            getApplicableRegions = MethodHandles.publicLookup()
+                .findVirtual(managerClass, "getApplicableRegions", MethodType.methodType(setClass, regionClass));
+            regionCount = MethodHandles.publicLookup().findVirtual(setClass, "size", MethodType.methodType(int.class));
+        } catch (ReflectiveOperationException e) {
+            getRegionManager = null;
+        }
+    }
+
+    @Override
+    public boolean canBuild(Player player, Location location) throws Throwable {
+        return (boolean) canBuild.invokeExact(player, location);
+    }
+
+    @Override
+    public BlockArea getDecisionArea(Location location) throws Throwable {
+        World world = location.getWorld();
+        Object manager = getRegionManager != null ? getRegionManager.invoke(world) : null;
+        if (manager == null) {
+            return null;
+        }
+
+        // Regions can have any shape, so only a chunk that no region reaches into is known to answer alike
+        BlockArea chunk = BlockArea.ofChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4,
+            world.getMinHeight(), world.getMaxHeight() - 1);
+        Object column = newCuboid.invoke("friendlydeathchest-probe",
+            newVector.invoke(chunk.minX(), chunk.minY(), chunk.minZ()),
+            newVector.invoke(chunk.maxX(), chunk.maxY(), chunk.maxZ()));
+        return (int) regionCount.invoke(getApplicableRegions.invoke(manager, column)) == 0 ? chunk : null;
+    }
+}
@@ -2,6 +2,15 @@ package io.mckenz.friendlydeathchest.service;
 
 import io.mckenz.friendlydeathchest.config.ConfigManager;
 import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.model.ChestPlacement;
+import io.mckenz.friendlydeathchest.storage.ChestSnapshot;
+import io.mckenz.friendlydeathchest.storage.ChestSnapshotArchive;
+import io.mckenz.friendlydeathchest.storage.ChestStorage;
+import io.mckenz.friendlydeathchest.storage.MappedChestStorage;
+import io.mckenz.friendlydeathchest.storage.RegionChestStorage;
+import io.mckenz.friendlydeathchest.storage.SqliteChestStorage;
+import io.mckenz.friendlydeathchest.storage.YamlChestStorage;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -17,18 +26,21 @@ import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.block.TileState;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.plugin.Plugin;
-import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.configuration.ConfigurationSection;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import org.bukkit.block.BlockFace;
 import org.bukkit.World;
+import org.bukkit.Chunk;
 import org.bukkit.ChatColor;
 
 /**
@@ -39,12 +51,28 @@ public class ChestManager {
     private final ConfigManager config;
     private final LocationFinder locationFinder;
     
-    private final Map<Location, ChestData> deathChests = new HashMap<>();
+    private final ChestRegistry registry;
+    private final TombstoneQueue tombstones;
     private final NamespacedKey ownerKey;
     private final NamespacedKey expiryTimeKey;
     private final NamespacedKey experienceKey;
     
-    private BukkitRunnable expiryWarningTask;
+    private final ExpiryScheduler expiryScheduler = new ExpiryScheduler();
+    // Expiry time of the chest each queued EXPIRE event was scheduled for, so chests loaded again are not queued twice
+    private final LongHashMap<Long> queuedExpiry = new LongHashMap<>();
+    private BukkitRunnable expiryTask;
+    
+    private final ChestStorage storage;
+    private final ChestStorage.Loader storageLoader = createStorageLoader();
+    private boolean chestsLoaded;
+    private final ExecutorService ioExecutor;
+    private BukkitRunnable storageTask;
+    private final ChestSnapshotArchive snapshots;
+    private BukkitRunnable snapshotTask;
+    
+    private VirtualChestManager virtualChests;
+    private final ProtectionManager protection;
+    
     private boolean persistentStorage;
     private boolean respectProtectionPlugins;
     
@@ -59,6 +87,8 @@ public class ChestManager {
         this.plugin = plugin;
         this.config = config;
         this.locationFinder = locationFinder;
+        this.registry = new ChestRegistry(plugin.getServer());
+        this.tombstones = new TombstoneQueue();
         
         // Create namespaced keys for persistent data
         this.ownerKey = new NamespacedKey(plugin, "owner");
@@ -67,19 +97,52 @@ public class ChestManager {
         
         this.persistentStorage = config.isPersistentStorageEnabled();
         this.respectProtectionPlugins = config.shouldRespectProtectionPlugins();
+        this.protection = new ProtectionManager(plugin, config);
+        if (respectProtectionPlugins) {
+            protection.resolveProviders();
+        }
         
         // Create plugin data folder if it doesn't exist
         if (!plugin.getDataFolder().exists()) {
             plugin.getDataFolder().mkdirs();
         }
         
+        // Virtual chests are written on this thread too, so it exists without chest storage
+        this.ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FriendlyDeathChest-IO");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.storage = persistentStorage ? createStorage() : null;
+        
+        // Snapshots cover the whole registry, which on-demand storages only fill with loaded regions
+        this.snapshots = storage != null && !storage.loadsOnDemand() && config.getSnapshotInterval() > 0
+            ? new ChestSnapshotArchive(plugin.getDataFolder(), plugin.getLogger(), config.getSnapshotRetention())
+            : null;
+        
         this.loadChests();
         
+        // Record every change from here on
+        if (storage != null) {
+            registry.setChangeListener(storage);
+            tombstones.setChangeListener(storage);
+        }
+        
         // Start tasks
-        if (config.getChestLifetime() > 0) {
-            startExpirationTask();
+        this.startExpiryTask();
+        this.startStorageTask();
+        this.startSnapshotTask();
+        
+        // Chunks loaded before the plugin (e.g. spawn chunks) never fire a ChunkLoadEvent for us
+        if (registry.size() > 0 || !tombstones.isEmpty()) {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    verifyLoadedChunks();
+                    applyLoadedTombstones();
+                }
+            }.runTask(plugin);
         }
-        this.startExpiryWarningTask();
     }
     
     /**
@@ -92,121 +155,49 @@ public class ChestManager {
      * @return A list of items that couldn't be stored, or an empty list if all were stored
      */
     public List<ItemStack> createDeathChest(Player player, Location location, List<ItemStack> items, int experiencePoints) {
-        // Find a suitable location for the chest
-        Location chestLocation = locationFinder.findChestLocation(location, player);
+        // Count total non-null items
+        int itemCount = (int) items.stream().filter(item -> item != null && item.getType() != Material.AIR).count();
         
-        if (chestLocation == null) {
+        // Find blocks for the whole chest (27 slots in single, 54 in double) in one search
+        ChestPlacement placement = locationFinder.findPlacement(location, player, locationFinder.getFootprint(itemCount));
+        
+        if (placement == null) {
             // If no suitable location found, return all items
             return new ArrayList<>(items);
         }
         
-        Block chestBlock = chestLocation.getBlock();
-        
-        // Count total non-null items
-        int itemCount = (int) items.stream().filter(item -> item != null && item.getType() != Material.AIR).count();
-        
-        // Determine if we need a double chest (27 slots in single, 54 in double)
-        boolean needsDoubleChest = itemCount > 27 && "DOUBLE_CHEST".equalsIgnoreCase(config.getOverflowBehavior());
-        
-        // Place the chest
-        chestBlock.setType(Material.CHEST);
+        Block chestBlock = placement.getChestBlock();
+        Block secondChestBlock = placement.getSecondChestBlock();
         
         // Set up chest data
         long expiryTime = config.getChestLifetime() > 0 ? 
             System.currentTimeMillis() + (config.getChestLifetime() * 60 * 1000) : 0;
         
-        // Store chest data for tracking
-        ChestData chestData = new ChestData(player.getUniqueId(), experiencePoints, expiryTime);
-        deathChests.put(chestBlock.getLocation(), chestData);
-        
-        // Store owner data and experience in the chest's persistent data container
-        if (chestBlock.getState() instanceof TileState tileState) {
-            PersistentDataContainer container = tileState.getPersistentDataContainer();
-            container.set(ownerKey, PersistentDataType.STRING, player.getUniqueId().toString());
-            if (expiryTime > 0) {
-                container.set(expiryTimeKey, PersistentDataType.LONG, expiryTime);
-            }
-            if (experiencePoints > 0) {
-                container.set(experienceKey, PersistentDataType.INTEGER, experiencePoints);
-            }
-            tileState.update();
-        }
-        
-        Block secondChestBlock = null;
-        if (needsDoubleChest) {
-            // Try to find an adjacent block for double chest
-            for (BlockFace face : new BlockFace[]{BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST}) {
-                Block adjacent = chestBlock.getRelative(face);
-                if (adjacent.getType() == Material.AIR && adjacent.getRelative(BlockFace.DOWN).getType().isSolid()) {
-                    secondChestBlock = adjacent;
-                    break;
-                }
-            }
-            
-            if (secondChestBlock != null) {
-                secondChestBlock.setType(Material.CHEST);
-                
-                // Connect the chests to form a double chest
-                connectChests(chestBlock, secondChestBlock);
-                
-                // Store owner data in the second chest too
-                if (secondChestBlock.getState() instanceof TileState tileState) {
-                    PersistentDataContainer container = tileState.getPersistentDataContainer();
-                    container.set(ownerKey, PersistentDataType.STRING, player.getUniqueId().toString());
-                    if (expiryTime > 0) {
-                        container.set(expiryTimeKey, PersistentDataType.LONG, expiryTime);
-                    }
-                    tileState.update();
-                }
-                
-                // Track the second chest too
-                deathChests.put(secondChestBlock.getLocation(), 
-                    new ChestData(player.getUniqueId(), 0, expiryTime));
-            }
-        }
-        
-        Chest chest = (Chest) chestBlock.getState();
-        
-        // Set custom name if enabled
-        if (config.shouldNameChest()) {
-            chest.setCustomName(player.getName() + "'s Death Chest");
-            chest.update();
-            
-            if (secondChestBlock != null) {
-                Chest secondChest = (Chest) secondChestBlock.getState();
-                secondChest.setCustomName(player.getName() + "'s Death Chest");
-                secondChest.update();
-            }
-        }
-        
-        // List to track items that couldn't be stored
+        // List to track items that couldn't be stored, starting with excluded items
         List<ItemStack> leftoverItems = new ArrayList<>();
-        
-        // Fill the chest(s) with the items, excluding items in the excluded list
+        List<ItemStack> storedItems = new ArrayList<>(items.size());
         for (ItemStack item : items) {
             if (item != null && item.getType() != Material.AIR) {
-                // Skip excluded items
                 if (config.getExcludedItems().contains(item.getType().getKey().toString())) {
                     leftoverItems.add(item);
-                    continue;
-                }
-                
-                // Try to add the item to the chest
-                HashMap<Integer, ItemStack> leftovers = chest.getInventory().addItem(item);
-                
-                // If there are leftovers and we have a second chest, add to that
-                if (!leftovers.isEmpty() && secondChestBlock != null) {
-                    Chest secondChest = (Chest) secondChestBlock.getState();
-                    leftovers = secondChest.getInventory().addItem(leftovers.values().toArray(new ItemStack[0]));
-                }
-                
-                // If there are still leftovers, track them
-                if (!leftovers.isEmpty()) {
-                    leftoverItems.addAll(leftovers.values());
+                } else {
+                    storedItems.add(item);
                 }
             }
         }
         
+        String customName = config.shouldNameChest() ? player.getName() + "'s Death Chest" : null;
+        leftoverItems.addAll(placeChest(chestBlock, secondChestBlock, player.getUniqueId(), customName, 
+            expiryTime, experiencePoints, storedItems));
+        
+        // Store chest data for tracking
+        ChestData chestData = new ChestData(player.getUniqueId(), experiencePoints, expiryTime);
+        scheduleExpiry(registry.registerChest(chestBlock, chestData), chestData);
+        if (secondChestBlock != null) {
+            ChestData secondChestData = new ChestData(player.getUniqueId(), 0, expiryTime);
+            scheduleExpiry(registry.registerChest(secondChestBlock, secondChestData), secondChestData);
+        }
+        
         // Play creation effects
         Location chestLoc = chestBlock.getLocation().add(0.5, 0.5, 0.5);
         chestLoc.getWorld().spawnParticle(Particle.FLAME, chestLoc, 50, 0.5, 0.5, 0.5, 0.1);
@@ -243,27 +234,7 @@ public class ChestManager {
         chestLoc.getWorld().playSound(chestLoc, Sound.ENTITY_ENDERMAN_TELEPORT, 0.7f, 1.2f);
         
         // Remove hologram if enabled
-        if (config.isHologramEnabled()) {
-            try {
-                // Try to get the HologramManager from the main plugin class
-                if (plugin instanceof io.mckenz.friendlydeathchest.FriendlyDeathChest) {
-                    io.mckenz.friendlydeathchest.FriendlyDeathChest mainPlugin = 
-                        (io.mckenz.friendlydeathchest.FriendlyDeathChest) plugin;
-                    
-                    HologramManager hologramManager = mainPlugin.getHologramManager();
-                    if (hologramManager != null) {
-                        hologramManager.removeHologram(chestBlock.getLocation());
-                        if (config.isDebugEnabled()) {
-                            plugin.getLogger().info("Removed hologram at " + chestBlock.getLocation());
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                if (config.isDebugEnabled()) {
-                    plugin.getLogger().warning("Failed to remove hologram: " + e.getMessage());
-                }
-            }
-        }
+        removeHologram(chestBlock.getLocation());
         
         // Remove sign if enabled
         if (config.isSignEnabled()) {
@@ -314,7 +285,7 @@ public class ChestManager {
             
             // Also check for signs directly above the chest (older versions might have placed them there)
             Block aboveBlock = chestBlock.getRelative(BlockFace.UP);
-            if (aboveBlock.getType().name().endsWith("_SIGN")) {
+            if (config.getMaterialTable().isSign(aboveBlock.getType())) {
                 aboveBlock.setType(Material.AIR, false);
                 if (config.isDebugEnabled()) {
                     plugin.getLogger().info("Removed sign above chest at " + aboveBlock.getLocation());
@@ -335,14 +306,17 @@ public class ChestManager {
                 Chest otherChest = (Chest) otherHalf.getState();
                 if (otherChest.getInventory().isEmpty()) {
                     otherHalf.setType(Material.AIR, false);
-                    deathChests.remove(otherHalf.getLocation());
+                    registry.remove(otherHalf);
                 }
             }
         }
         
         // Then remove chest without dropping it
         chestBlock.setType(Material.AIR, false);
-        deathChests.remove(chestBlock.getLocation());
+        registry.remove(chestBlock);
+        
+        // The freed blocks may end a search miss cached nearby
+        locationFinder.invalidateHints(chestBlock);
         
         // Notify player if provided
         if (player != null) {
@@ -350,6 +324,37 @@ public class ChestManager {
         }
     }
     
+    /**
+     * Removes the hologram of a chest if holograms are enabled
+     * 
+     * @param location The chest location
+     */
+    private void removeHologram(Location location) {
+        if (!config.isHologramEnabled()) {
+            return;
+        }
+        
+        try {
+            // Try to get the HologramManager from the main plugin class
+            if (plugin instanceof io.mckenz.friendlydeathchest.FriendlyDeathChest) {
+                io.mckenz.friendlydeathchest.FriendlyDeathChest mainPlugin = 
+                    (io.mckenz.friendlydeathchest.FriendlyDeathChest) plugin;
+                
+                HologramManager hologramManager = mainPlugin.getHologramManager();
+                if (hologramManager != null) {
+                    hologramManager.removeHologram(location);
+                    if (config.isDebugEnabled()) {
+                        plugin.getLogger().info("Removed hologram at " + location);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().warning("Failed to remove hologram: " + e.getMessage());
+            }
+        }
+    }
+    
     /**
      * Checks if a block is a wall sign
      * 
@@ -357,7 +362,7 @@ public class ChestManager {
      * @return true if the block is a wall sign
      */
     private boolean isWallSign(Block block) {
-        return block.getBlockData() instanceof org.bukkit.block.data.type.WallSign;
+        return config.getMaterialTable().isWallSign(block.getType());
     }
     
     /**
@@ -372,66 +377,373 @@ public class ChestManager {
             return null;
         }
         
+        // Like vanilla, a left half is joined to its partner on its facing's clockwise side
         if (chestData.getType() == Type.LEFT) {
-            if (chestData.getFacing() == org.bukkit.block.BlockFace.NORTH) {
-                return chestBlock.getRelative(-1, 0, 0);
-            } else if (chestData.getFacing() == org.bukkit.block.BlockFace.SOUTH) {
-                return chestBlock.getRelative(1, 0, 0);
-            } else if (chestData.getFacing() == org.bukkit.block.BlockFace.EAST) {
-                return chestBlock.getRelative(0, 0, 1);
-            } else {
-                return chestBlock.getRelative(0, 0, -1);
+            return chestBlock.getRelative(clockwise(chestData.getFacing()));
+        }
+        return chestBlock.getRelative(counterClockwise(chestData.getFacing()));
+    }
+    
+    /**
+     * Starts the task that hands recorded changes to the storage thread
+     */
+    private void startStorageTask() {
+        if (storage == null) {
+            return;
+        }
+        
+        storageTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                storage.flush(registry, tombstones);
             }
-        } else { // RIGHT
-            if (chestData.getFacing() == org.bukkit.block.BlockFace.NORTH) {
-                return chestBlock.getRelative(1, 0, 0);
-            } else if (chestData.getFacing() == org.bukkit.block.BlockFace.SOUTH) {
-                return chestBlock.getRelative(-1, 0, 0);
-            } else if (chestData.getFacing() == org.bukkit.block.BlockFace.EAST) {
-                return chestBlock.getRelative(0, 0, -1);
-            } else {
-                return chestBlock.getRelative(0, 0, 1);
+        };
+        
+        // Flush every second, which bounds how many changes a crash can lose
+        storageTask.runTaskTimer(plugin, 20, 20);
+    }
+    
+    /**
+     * Starts the task that writes compressed snapshots of the registry on the storage thread
+     */
+    private void startSnapshotTask() {
+        if (snapshots == null) {
+            return;
+        }
+        
+        snapshotTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                // Copying the registry is a single pass; compressing and writing happen off the tick
+                ChestSnapshot snapshot = ChestSnapshot.capture(registry, tombstones.keys());
+                ioExecutor.execute(() -> {
+                    try {
+                        snapshots.write(snapshot);
+                    } catch (IOException e) {
+                        plugin.getLogger().warning("Failed to write death chest snapshot: " + e.getMessage());
+                    }
+                });
             }
+        };
+        
+        long interval = config.getSnapshotInterval() * 60L * 20L;
+        snapshotTask.runTaskTimer(plugin, interval, interval);
+    }
+    
+    /**
+     * Checks if registry snapshots are being written
+     * 
+     * @return true if snapshots are enabled
+     */
+    public boolean isSnapshotsEnabled() {
+        return snapshots != null;
+    }
+    
+    /**
+     * Lists the stored snapshots, reading their headers on the storage thread
+     * 
+     * @param callback Called on the main thread with the snapshots, oldest first
+     */
+    public void listSnapshots(Consumer<List<ChestSnapshotArchive.Entry>> callback) {
+        if (snapshots == null) {
+            callback.accept(List.of());
+            return;
         }
+        
+        ioExecutor.execute(() -> {
+            List<ChestSnapshotArchive.Entry> entries = snapshots.list();
+            runOnMainThread(() -> callback.accept(entries));
+        });
     }
     
     /**
-     * Starts the expiration task for death chests
+     * Restores chests from the newest snapshot taken at or before a time. The snapshot
+     * is read on the storage thread. Positions that are tracked now are left alone,
+     * since their current state is newer, and restored chests whose block is gone are
+     * dropped when their chunk is checked.
+     * 
+     * @param time The time in milliseconds
+     * @param callback Called on the main thread with the snapshot and the number of
+     *                 chests restored, or with null if no readable snapshot is that old
      */
-    private void startExpirationTask() {
-        new BukkitRunnable() {
+    public void restoreSnapshot(long time, BiConsumer<ChestSnapshotArchive.Entry, Integer> callback) {
+        if (snapshots == null) {
+            callback.accept(null, 0);
+            return;
+        }
+        
+        ioExecutor.execute(() -> {
+            ChestSnapshotArchive.Entry entry = snapshots.find(time);
+            byte[] records = null;
+            if (entry != null) {
+                try {
+                    records = snapshots.readRecords(entry);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to read death chest snapshot: " + e.getMessage());
+                }
+            }
+            
+            byte[] finalRecords = records;
+            runOnMainThread(() -> {
+                if (finalRecords == null) {
+                    callback.accept(null, 0);
+                } else {
+                    callback.accept(entry, applySnapshot(entry, finalRecords));
+                }
+            });
+        });
+    }
+    
+    /**
+     * Registers the chests and queued removals of a snapshot at positions that are not tracked
+     * 
+     * @param entry The snapshot
+     * @param records The inflated snapshot records
+     * @return The number of chests restored
+     */
+    private int applySnapshot(ChestSnapshotArchive.Entry entry, byte[] records) {
+        int sizeBefore = registry.size();
+        ChestSnapshotArchive.replay(entry, records, new ChestStorage.Loader() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                if (registry.get(registry.key(worldName, x, y, z)) == null) {
+                    storageLoader.put(worldName, x, y, z, owner, experience, expiryTime);
+                }
+            }
+            
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+                // Snapshots hold no removals
+            }
+            
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                if (registry.get(registry.key(worldName, x, y, z)) == null) {
+                    storageLoader.tombstone(worldName, x, y, z, queued);
+                }
+            }
+        });
+        int restored = registry.size() - sizeBefore;
+        
+        verifyLoadedChunks();
+        applyLoadedTombstones();
+        
+        plugin.getLogger().info("Restored " + restored + " death chests from the snapshot taken at " + entry.getTakenAt() + ".");
+        return restored;
+    }
+    
+    /**
+     * Runs a task on the main thread unless the plugin is shutting down
+     * 
+     * @param task The task
+     */
+    private void runOnMainThread(Runnable task) {
+        if (plugin.isEnabled()) {
+            plugin.getServer().getScheduler().runTask(plugin, task);
+        }
+    }
+    
+    /**
+     * Starts the task that fires due expiry warnings and expirations
+     */
+    private void startExpiryTask() {
+        // Cancel existing task if running
+        if (expiryTask != null) {
+            expiryTask.cancel();
+        }
+        
+        expiryTask = new BukkitRunnable() {
             @Override
             public void run() {
                 long currentTime = System.currentTimeMillis();
                 
-                // Create a copy of the keys to avoid concurrent modification
-                List<Location> locationsToCheck = new ArrayList<>(deathChests.keySet());
+                // Nothing is due yet, which is the common case
+                if (expiryScheduler.nextDueTime() > currentTime) {
+                    return;
+                }
                 
-                for (Location loc : locationsToCheck) {
-                    ChestData data = deathChests.get(loc);
-                    if (data != null && data.getExpiryTime() > 0 && currentTime > data.getExpiryTime()) {
-                        // Chest has expired, remove it
-                        Block block = loc.getBlock();
-                        if (block.getType() == Material.CHEST) {
-                            // Remove chest without notifying player
-                            removeChest(block, null);
-                            
-                            // Notify player if they're online
-                            Player owner = plugin.getServer().getPlayer(data.getOwnerUUID());
-                            if (owner != null && owner.isOnline()) {
-                                String message = config.getMessageExpiryWarning()
-                                    .replace("{location}", formatLocation(loc))
-                                    .replace("{x}", String.valueOf(loc.getBlockX()))
-                                    .replace("{y}", String.valueOf(loc.getBlockY()))
-                                    .replace("{z}", String.valueOf(loc.getBlockZ()))
-                                    .replace("{time}", "0");
-                                owner.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
-                            }
+                expiryScheduler.pollDue(currentTime, (key, kind, dueTime) -> {
+                    if (kind == ExpiryScheduler.WARN) {
+                        sendExpiryWarning(key, currentTime);
+                    } else {
+                        Long queued = queuedExpiry.get(key);
+                        if (queued != null && queued <= dueTime) {
+                            queuedExpiry.remove(key);
                         }
+                        expireChest(key, currentTime);
                     }
-                }
+                });
             }
-        }.runTaskTimer(plugin, 20 * 60, 20 * 60); // Check every minute
+        };
+        
+        // Check every second so chests expire on time
+        expiryTask.runTaskTimer(plugin, 20, 20);
+    }
+    
+    /**
+     * Schedules the expiry warning and expiration of a chest
+     * 
+     * @param key The registry key of the chest
+     * @param chestData The chest data
+     */
+    private void scheduleExpiry(long key, ChestData chestData) {
+        long expiryTime = chestData.getExpiryTime();
+        if (expiryTime <= 0) {
+            return;
+        }
+        
+        // Regions loaded again bring back chests whose events are still queued
+        Long queued = queuedExpiry.get(key);
+        if (queued != null && queued == expiryTime) {
+            return;
+        }
+        queuedExpiry.put(key, expiryTime);
+        
+        expiryScheduler.schedule(key, ExpiryScheduler.EXPIRE, expiryTime);
+        if (config.getExpiryWarningTime() > 0 && !chestData.isWarningShown()) {
+            expiryScheduler.schedule(key, ExpiryScheduler.WARN, 
+                expiryTime - config.getExpiryWarningTime() * 60000L);
+        }
+    }
+    
+    /**
+     * Sends the expiry warning for a chest if it is still due
+     * 
+     * @param key The registry key of the chest
+     * @param currentTime The current time in milliseconds
+     */
+    private void sendExpiryWarning(long key, long currentTime) {
+        ChestData chestData = registry.get(key);
+        
+        // Skip stale events for chests that are gone, already warned or no longer expiring,
+        // and events left over from an earlier chest at the same position that are due too early
+        if (chestData == null || chestData.isWarningShown() || chestData.getExpiryTime() <= currentTime
+                || chestData.getExpiryTime() - config.getExpiryWarningTime() * 60000L > currentTime) {
+            return;
+        }
+        
+        // Mark warning as shown, for both halves of a double chest so the owner is warned once
+        chestData.setWarningShown(true);
+        ChestData partnerData = registry.get(registry.getPartner(key));
+        if (partnerData != null) {
+            partnerData.setWarningShown(true);
+        }
+        
+        // Get the owner player
+        Player owner = plugin.getServer().getPlayer(chestData.getOwnerUUID());
+        Location loc = registry.toLocation(key);
+        if (owner != null && owner.isOnline() && loc != null) {
+            // Send warning message
+            String message = config.getMessageExpiryWarning()
+                .replace("{location}", formatLocation(loc))
+                .replace("{x}", String.valueOf(loc.getBlockX()))
+                .replace("{y}", String.valueOf(loc.getBlockY()))
+                .replace("{z}", String.valueOf(loc.getBlockZ()))
+                .replace("{time}", String.valueOf(config.getExpiryWarningTime()));
+            owner.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
+        }
+    }
+    
+    /**
+     * Removes an expired chest if it is still due, together with the other half of a
+     * double chest, and tells the owner once
+     * 
+     * @param key The registry key of the chest
+     * @param currentTime The current time in milliseconds
+     */
+    private void expireChest(long key, long currentTime) {
+        ChestData data = registry.get(key);
+        
+        // Skip stale events for chests that are gone or whose expiry moved
+        if (data == null || data.getExpiryTime() <= 0 || data.getExpiryTime() > currentTime) {
+            return;
+        }
+        
+        // The other half must be looked up before this one leaves the registry
+        long partner = registry.getPartner(key);
+        Location loc = registry.toLocation(key);
+        if (!removeExpired(key, data, loc, currentTime)) {
+            return;
+        }
+        
+        // Its own event finds it gone and stays silent
+        ChestData partnerData = registry.get(partner);
+        if (partnerData != null) {
+            removeExpired(partner, partnerData, registry.toLocation(partner), currentTime);
+        }
+        
+        sendExpiredMessage(data, loc);
+    }
+    
+    /**
+     * Removes an expired chest, or stops tracking it if its chunk is not loaded
+     * 
+     * @param key The registry key of the chest
+     * @param data The chest data
+     * @param loc The chest location, or null if its world is not loaded
+     * @param currentTime The current time in milliseconds
+     * @return true if the owner should be told the chest is gone
+     */
+    private boolean removeExpired(long key, ChestData data, Location loc, long currentTime) {
+        if (data.isVirtual()) {
+            // Virtual chests have no block to clear, so they expire wherever they are
+            registry.remove(key);
+            if (virtualChests != null) {
+                virtualChests.remove(key);
+            }
+            return loc != null;
+        }
+        
+        if (loc == null) {
+            // World is not loaded, check again in a minute
+            expiryScheduler.schedule(key, ExpiryScheduler.EXPIRE, currentTime + 60000L);
+            queuedExpiry.put(key, data.getExpiryTime());
+            return false;
+        }
+        
+        if (!loc.getWorld().isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+            // Never load a chunk just to expire a chest: stop tracking it now
+            // and clear the block when the chunk loads on its own
+            removeHologram(loc);
+            registry.remove(key);
+            tombstones.add(key);
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().info("Deferred removal of expired chest at " + formatLocation(loc));
+            }
+        } else {
+            // Chest has expired, remove it
+            Block block = loc.getBlock();
+            if (block.getType() != Material.CHEST) {
+                // The chest is already gone, just stop tracking it
+                removeHologram(loc);
+                registry.remove(key);
+                return false;
+            }
+            
+            // Remove chest without notifying player
+            removeChest(block, null);
+        }
+        return true;
+    }
+    
+    /**
+     * Tells the owner of an expired chest that it is gone, if they are online
+     * 
+     * @param data The chest data
+     * @param loc The chest location
+     */
+    private void sendExpiredMessage(ChestData data, Location loc) {
+        // Notify player if they're online
+        Player owner = plugin.getServer().getPlayer(data.getOwnerUUID());
+        if (owner != null && owner.isOnline()) {
+            String message = config.getMessageExpiryWarning()
+                .replace("{location}", formatLocation(loc))
+                .replace("{x}", String.valueOf(loc.getBlockX()))
+                .replace("{y}", String.valueOf(loc.getBlockY()))
+                .replace("{z}", String.valueOf(loc.getBlockZ()))
+                .replace("{time}", "0");
+            owner.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
+        }
     }
     
     /**
@@ -441,7 +753,17 @@ public class ChestManager {
      * @return true if the location contains a death chest
      */
     public boolean isDeathChest(Location location) {
-        return deathChests.containsKey(location);
+        return registry.isDeathChest(location);
+    }
+    
+    /**
+     * Checks if a block is a death chest
+     * 
+     * @param block The block to check
+     * @return true if the block is a death chest
+     */
+    public boolean isDeathChest(Block block) {
+        return getChestData(block) != null;
     }
     
     /**
@@ -451,7 +773,106 @@ public class ChestManager {
      * @return The chest data, or null if not a death chest
      */
     public ChestData getChestData(Location location) {
-        return deathChests.get(location);
+        return registry.getChestData(location);
+    }
+    
+    /**
+     * Gets the chest data for a block
+     * 
+     * @param block The block to check
+     * @return The chest data, or null if not a death chest
+     */
+    public ChestData getChestData(Block block) {
+        ChestData chestData = registry.getChestData(block);
+        
+        // Virtual chests have no block
+        if (chestData != null && chestData.isVirtual()) {
+            return null;
+        }
+        
+        // Chests loaded from storage are checked against the world on first use
+        if (chestData != null && !chestData.isVerified() && !verifyChest(registry.key(block), chestData, block)) {
+            return null;
+        }
+        return chestData;
+    }
+    
+    /**
+     * Checks if any death chest could be within a horizontal radius of a block.
+     * This is a chunk index probe and is meant as a cheap pre-filter for event handlers.
+     * 
+     * @param block The block to check around
+     * @param radius The horizontal radius in blocks
+     * @return true if a chunk overlapping the area contains death chests
+     */
+    public boolean hasChestsNear(Block block, int radius) {
+        return registry.hasChestsNear(block.getWorld(), block.getX(), block.getZ(), radius);
+    }
+    
+    /**
+     * Checks if any death chest could be within a horizontal radius of a location.
+     * This is a chunk index probe and is meant as a cheap pre-filter for event handlers.
+     * 
+     * @param location The location to check around
+     * @param radius The horizontal radius in blocks
+     * @return true if a chunk overlapping the area contains death chests
+     */
+    public boolean hasChestsNear(Location location, int radius) {
+        World world = location.getWorld();
+        return world != null && registry.hasChestsNear(world, location.getBlockX(), location.getBlockZ(), radius);
+    }
+    
+    /**
+     * Gets the locations of all death chests owned by a player
+     * 
+     * @param owner The owner's UUID
+     * @return The chest locations in loaded worlds
+     */
+    public List<Location> getChestLocations(UUID owner) {
+        long[] keys = registry.getChestsOf(owner);
+        List<Location> locations = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            Location location = registry.toLocation(key);
+            if (location != null) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+    
+    /**
+     * Counts the death chests owned by a player
+     * 
+     * @param owner The owner's UUID
+     * @return The number of chests
+     */
+    public int getChestCount(UUID owner) {
+        return registry.countChests(owner);
+    }
+    
+    /**
+     * Finds the death chest of a player closest to a location
+     * 
+     * @param owner The owner's UUID
+     * @param from The location to measure from
+     * @return The nearest chest location, or null if the player has no chest in that world
+     */
+    public Location findNearestChest(UUID owner, Location from) {
+        World world = from.getWorld();
+        if (world == null) {
+            return null;
+        }
+        long key = registry.findNearest(owner, world, from.getBlockX(), from.getBlockY(), from.getBlockZ());
+        return key != 0 ? registry.toLocation(key) : null;
+    }
+    
+    /**
+     * Gets the registry of tracked death chests
+     * 
+     * @return The chest registry
+     */
+    public ChestRegistry getRegistry() {
+        return registry;
     }
     
     /**
@@ -527,81 +948,188 @@ public class ChestManager {
     }
     
     /**
-     * Starts the task that checks for chest expiry and sends warnings
+     * Loads the chests of the chunk's region if storage loads on demand, verifies
+     * stored chests in the chunk, and removes the blocks of chests that expired while
+     * the chunk was unloaded
+     * 
+     * @param chunk The chunk that was loaded
+     * @param newChunk true if the chunk was just generated
      */
-    private void startExpiryWarningTask() {
-        // Only start if expiry warnings are enabled
-        if (config.getExpiryWarningTime() <= 0) {
+    public void handleChunkLoad(Chunk chunk, boolean newChunk) {
+        World world = chunk.getWorld();
+        if (storage != null && storage.loadsOnDemand()) {
+            storage.chunkLoaded(world.getName(), chunk.getX(), chunk.getZ(), storageLoader);
+        }
+        
+        // Freshly generated chunks cannot contain death chests
+        if (newChunk) {
             return;
         }
-
-        // Cancel existing task if running
-        if (expiryWarningTask != null) {
-            expiryWarningTask.cancel();
+        
+        if (registry.hasChestsInChunk(world, chunk.getX(), chunk.getZ())) {
+            verifyChunk(world, chunk.getX(), chunk.getZ());
         }
-
-        // Create new task
-        expiryWarningTask = new BukkitRunnable() {
+        
+        if (tombstones.isEmpty()) {
+            return;
+        }
+        
+        long chunkKey = registry.chunkKey(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        if (chunkKey == 0) {
+            return;
+        }
+        
+        long[] keys = tombstones.takeChunk(chunkKey);
+        if (keys.length == 0) {
+            return;
+        }
+        
+        // Changing blocks while the chunk is still being loaded is unsafe, wait a tick
+        new BukkitRunnable() {
             @Override
             public void run() {
-                long currentTime = System.currentTimeMillis();
-                long warningTime = config.getExpiryWarningTime() * 60000; // Convert to milliseconds
-
-                for (Map.Entry<Location, ChestData> entry : deathChests.entrySet()) {
-                    ChestData chestData = entry.getValue();
-                    
-                    // Skip if chest has no expiry time
-                    if (chestData.getExpiryTime() <= 0) {
-                        continue;
-                    }
-                    
-                    // Check if chest is within the warning period
-                    long timeUntilExpiry = chestData.getExpiryTime() - currentTime;
-                    if (timeUntilExpiry > 0 && timeUntilExpiry <= warningTime && !chestData.isWarningShown()) {
-                        // Mark warning as shown
-                        chestData.setWarningShown(true);
-                        
-                        // Get the owner player
-                        Player owner = plugin.getServer().getPlayer(chestData.getOwnerUUID());
-                        if (owner != null && owner.isOnline()) {
-                            // Send warning message
-                            Location loc = entry.getKey();
-                            String message = config.getMessageExpiryWarning()
-                                .replace("{location}", formatLocation(loc))
-                                .replace("{x}", String.valueOf(loc.getBlockX()))
-                                .replace("{y}", String.valueOf(loc.getBlockY()))
-                                .replace("{z}", String.valueOf(loc.getBlockZ()))
-                                .replace("{time}", String.valueOf(config.getExpiryWarningTime()));
-                            owner.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
-                        }
-                    }
+                for (long key : keys) {
+                    applyTombstone(key);
                 }
             }
-        };
+        }.runTask(plugin);
+    }
+    
+    /**
+     * Stops tracking the chests of the chunk's region once the region has no loaded
+     * chunks left, if storage loads on demand
+     * 
+     * @param chunk The chunk that was unloaded
+     */
+    public void handleChunkUnload(Chunk chunk) {
+        if (storage == null || !storage.loadsOnDemand()) {
+            return;
+        }
         
-        // Run every minute
-        expiryWarningTask.runTaskTimer(plugin, 20 * 60, 20 * 60);
+        // The storage has saved these already, so dropping them is not a removal
+        for (long key : storage.chunkUnloaded(chunk.getWorld().getName(), chunk.getX(), chunk.getZ())) {
+            registry.remove(key);
+            tombstones.remove(key);
+        }
     }
-
+    
     /**
-     * Cancels the expiration task
+     * Verifies the chests loaded from storage that sit in chunks which are already loaded
      */
-    public void cancelExpirationTask() {
-        if (expiryWarningTask != null) {
-            expiryWarningTask.cancel();
-            expiryWarningTask = null;
+    private void verifyLoadedChunks() {
+        List<long[]> loadedChunks = new ArrayList<>();
+        registry.forEachChunk((worldName, chunkX, chunkZ, chestKeys) -> {
+            World world = plugin.getServer().getWorld(worldName);
+            if (world != null && world.isChunkLoaded(chunkX, chunkZ)) {
+                loadedChunks.add(chestKeys.toArray());
+            }
+        });
+        
+        // Verify outside the iteration, since verification may unregister chests
+        for (long[] keys : loadedChunks) {
+            for (long key : keys) {
+                ChestData chestData = registry.get(key);
+                World world = registry.getWorld(key);
+                if (chestData != null && !chestData.isVerified() && world != null) {
+                    verifyChest(key, chestData, world.getBlockAt(
+                        ChestRegistry.blockX(key), ChestRegistry.blockY(key), ChestRegistry.blockZ(key)));
+                }
+            }
         }
     }
-
+    
+    /**
+     * Verifies the chests loaded from storage in a loaded chunk
+     * 
+     * @param world The world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     */
+    private void verifyChunk(World world, int chunkX, int chunkZ) {
+        for (long key : registry.getChestsInChunk(world, chunkX, chunkZ)) {
+            ChestData chestData = registry.get(key);
+            if (chestData != null && !chestData.isVerified()) {
+                verifyChest(key, chestData, world.getBlockAt(
+                    ChestRegistry.blockX(key), ChestRegistry.blockY(key), ChestRegistry.blockZ(key)));
+            }
+        }
+    }
+    
+    /**
+     * Checks that a chest loaded from storage still exists, and stops tracking it if not.
+     * The block's chunk must be loaded.
+     * 
+     * @param key The registry key of the chest
+     * @param chestData The chest data
+     * @param block The chest block
+     * @return true if the chest block exists
+     */
+    private boolean verifyChest(long key, ChestData chestData, Block block) {
+        if (block.getType() == Material.CHEST) {
+            chestData.setVerified(true);
+            return true;
+        }
+        
+        removeHologram(block.getLocation());
+        registry.remove(key);
+        if (config.isDebugEnabled()) {
+            plugin.getLogger().info("Dropped stored death chest at " + formatLocation(block.getLocation()) 
+                + " because the chest block is gone");
+        }
+        return false;
+    }
+    
+    /**
+     * Applies queued removals in chunks that are already loaded
+     */
+    private void applyLoadedTombstones() {
+        for (long key : tombstones.keys()) {
+            World world = registry.getWorld(key);
+            if (world != null && world.isChunkLoaded(ChestRegistry.blockX(key) >> 4, ChestRegistry.blockZ(key) >> 4)) {
+                tombstones.takeChunk(ChestRegistry.chunkKeyOf(key));
+                applyTombstone(key);
+            }
+        }
+    }
+    
     /**
-     * Cancels the expiry warning task
+     * Removes the block of a chest that expired while its chunk was unloaded
+     * 
+     * @param key The registry key of the expired chest
      */
-    public void cancelExpiryWarningTask() {
-        if (expiryWarningTask != null) {
-            expiryWarningTask.cancel();
-            expiryWarningTask = null;
+    private void applyTombstone(long key) {
+        // A new death chest may have been registered here in the meantime
+        if (registry.get(key) != null) {
+            return;
+        }
+        
+        Location loc = registry.toLocation(key);
+        if (loc == null) {
+            // World went away again, keep the entry for later
+            tombstones.add(key);
+            return;
+        }
+        
+        Block block = loc.getBlock();
+        if (block.getType() == Material.CHEST) {
+            removeChest(block, null);
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().info("Removed expired chest at " + formatLocation(loc) + " after its chunk loaded");
+            }
         }
     }
+    
+    /**
+     * Cancels the expiration task
+     */
+    public void cancelExpirationTask() {
+        if (expiryTask != null) {
+            expiryTask.cancel();
+            expiryTask = null;
+        }
+        expiryScheduler.clear();
+        queuedExpiry.clear();
+    }
 
     /**
      * Formats a location into a readable string
@@ -629,207 +1157,360 @@ public class ChestManager {
             return true;
         }
         
-        // Check WorldGuard if available
-        Plugin worldGuard = plugin.getServer().getPluginManager().getPlugin("WorldGuard");
-        if (worldGuard != null && worldGuard.isEnabled()) {
-            try {
-                // Use reflection to avoid hard dependency
-                Class<?> worldGuardPluginClass = Class.forName("com.sk89q.worldguard.bukkit.WorldGuardPlugin");
-                Object worldGuardPlugin = worldGuardPluginClass.getMethod("inst").invoke(null);
-                boolean canBuild = (boolean) worldGuardPluginClass.getMethod("canBuild", Player.class, Location.class)
-                        .invoke(worldGuardPlugin, player, location);
-                
-                if (!canBuild) {
-                    return false;
-                }
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to check WorldGuard protection: " + e.getMessage());
-            }
-        }
-        
-        // Check GriefPrevention if available
-        Plugin griefPrevention = plugin.getServer().getPluginManager().getPlugin("GriefPrevention");
-        if (griefPrevention != null && griefPrevention.isEnabled()) {
-            try {
-                // Use reflection to avoid hard dependency
-                Class<?> dataStoreClass = Class.forName("me.ryanhamshire.GriefPrevention.DataStore");
-                Object dataStore = Class.forName("me.ryanhamshire.GriefPrevention.GriefPrevention")
-                        .getMethod("getDataStore").invoke(null);
-                
-                String reason = (String) dataStoreClass.getMethod("allowBuild", Player.class, Location.class, Material.class)
-                        .invoke(dataStore, player, location, Material.CHEST);
-                
-                if (reason != null) {
-                    return false;
-                }
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to check GriefPrevention protection: " + e.getMessage());
-            }
+        return protection.canBuild(player, location);
+    }
+    
+    /**
+     * Checks if a player can build at the given block, using cached decisions covering it
+     * 
+     * @param player The player to check
+     * @param block The block to check
+     * @return true if the player can build at the block
+     */
+    public boolean canBuild(Player player, Block block) {
+        if (!respectProtectionPlugins) {
+            return true;
         }
         
-        return true;
+        return protection.canBuild(player, block);
     }
     
     /**
      * Loads death chests from persistent storage
      */
     private void loadChests() {
-        if (!persistentStorage) {
+        if (storage == null) {
             return;
         }
         
-        File storageFile = new File(plugin.getDataFolder(), "chests.yml");
-        if (!storageFile.exists()) {
-            return;
+        try {
+            storage.load(storageLoader);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to load death chests: " + e.getMessage());
         }
         
-        YamlConfiguration storage = YamlConfiguration.loadConfiguration(storageFile);
-        ConfigurationSection chestsSection = storage.getConfigurationSection("chests");
-        
-        if (chestsSection == null) {
-            return;
+        // Storages that load on demand start with the regions around already loaded chunks
+        if (storage.loadsOnDemand()) {
+            for (World world : plugin.getServer().getWorlds()) {
+                for (Chunk chunk : world.getLoadedChunks()) {
+                    storage.chunkLoaded(world.getName(), chunk.getX(), chunk.getZ(), storageLoader);
+                }
+            }
         }
         
-        for (String key : chestsSection.getKeys(false)) {
-            try {
-                ConfigurationSection chestSection = chestsSection.getConfigurationSection(key);
-                if (chestSection == null) {
-                    continue;
-                }
-                
-                // Parse location
-                String worldName = chestSection.getString("world");
-                int x = chestSection.getInt("x");
-                int y = chestSection.getInt("y");
-                int z = chestSection.getInt("z");
-                
-                World world = plugin.getServer().getWorld(worldName);
-                if (world == null) {
-                    continue;
-                }
-                
-                Location location = new Location(world, x, y, z);
-                
-                // Parse owner UUID
-                String uuidString = chestSection.getString("owner");
-                UUID ownerUUID = UUID.fromString(uuidString);
-                
-                // Parse other data
-                int experience = chestSection.getInt("experience", 0);
-                long expiryTime = chestSection.getLong("expiry-time", 0);
+        // Schedule expiry once every entry is final, so replaced entries leave no stale events
+        registry.forEach(this::scheduleExpiry);
+        chestsLoaded = true;
+        
+        plugin.getLogger().info("Loaded " + registry.size() + " death chests from " + storage.getName() + " storage.");
+    }
+    
+    /**
+     * Creates the callback that registers entries read from storage
+     * 
+     * @return The storage loader
+     */
+    private ChestStorage.Loader createStorageLoader() {
+        return new ChestStorage.Loader() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                registry.remove(registry.key(worldName, x, y, z));
+                long key = loadChest(worldName, x, y, z, owner, experience, expiryTime);
                 
-                // Skip expired chests
-                if (expiryTime > 0 && expiryTime < System.currentTimeMillis()) {
-                    continue;
+                // Chests loaded with a region after startup are scheduled right away
+                if (key != 0 && chestsLoaded) {
+                    scheduleExpiry(key, registry.get(key));
                 }
-                
-                // Check if the chest block exists
-                Block block = location.getBlock();
-                if (block.getType() != Material.CHEST) {
-                    continue;
+            }
+            
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+                registry.remove(registry.key(worldName, x, y, z));
+            }
+            
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                if (!ChestRegistry.isPackable(x, y, z)) {
+                    return;
                 }
-                
-                // Register the chest
-                ChestData chestData = new ChestData(ownerUUID, experience, expiryTime);
-                deathChests.put(location, chestData);
-                
-                if (config.isDebugEnabled()) {
-                    plugin.getLogger().info("Loaded death chest at " + formatLocation(location) + " for " + ownerUUID);
+                long key = registry.assignKey(worldName, x, y, z);
+                if (queued) {
+                    tombstones.add(key);
+                } else {
+                    tombstones.remove(key);
                 }
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to load death chest: " + e.getMessage());
             }
-        }
-        
-        plugin.getLogger().info("Loaded " + deathChests.size() + " death chests from storage.");
+        };
     }
     
     /**
-     * Saves death chests to persistent storage
+     * Registers a stored chest without touching the world; the block is checked
+     * when its chunk loads or on first lookup
+     * 
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @param ownerUUID The owner's UUID
+     * @param experience The stored experience
+     * @param expiryTime The expiry time in milliseconds
+     * @return The registry key of the chest, or 0 if it was skipped
      */
-    public void saveChests() {
-        if (!persistentStorage) {
-            return;
+    private long loadChest(String worldName, int x, int y, int z, UUID ownerUUID, int experience, long expiryTime) {
+        if (worldName == null || !ChestRegistry.isPackable(x, y, z)) {
+            return 0;
         }
         
-        File storageFile = new File(plugin.getDataFolder(), "chests.yml");
-        YamlConfiguration storage = new YamlConfiguration();
+        // Skip expired chests
+        if (expiryTime > 0 && expiryTime < System.currentTimeMillis()) {
+            return 0;
+        }
         
-        ConfigurationSection chestsSection = storage.createSection("chests");
-        int count = 0;
+        ChestData chestData = new ChestData(ownerUUID, experience, expiryTime);
+        chestData.setVerified(false);
+        long key = registry.registerChest(worldName, x, y, z, chestData);
         
-        for (Map.Entry<Location, ChestData> entry : deathChests.entrySet()) {
-            Location location = entry.getKey();
-            ChestData chestData = entry.getValue();
-            
-            // Skip chests that are expired
-            if (chestData.getExpiryTime() > 0 && chestData.getExpiryTime() < System.currentTimeMillis()) {
-                continue;
-            }
-            
-            ConfigurationSection chestSection = chestsSection.createSection(String.valueOf(count++));
-            
-            // Save location
-            chestSection.set("world", location.getWorld().getName());
-            chestSection.set("x", location.getBlockX());
-            chestSection.set("y", location.getBlockY());
-            chestSection.set("z", location.getBlockZ());
-            
-            // Save chest data
-            chestSection.set("owner", chestData.getOwnerUUID().toString());
-            chestSection.set("experience", chestData.getExperience());
-            chestSection.set("expiry-time", chestData.getExpiryTime());
+        // Virtual chests have no block to check
+        if (virtualChests != null) {
+            virtualChests.attach(key, chestData);
         }
         
+        if (config.isDebugEnabled()) {
+            plugin.getLogger().info("Loaded death chest at x:" + x + ", y:" + y + ", z:" + z 
+                + " in " + worldName + " for " + ownerUUID);
+        }
+        return key;
+    }
+    
+    /**
+     * Stops the storage task, hands the remaining changes to the storage thread, and waits for it to finish
+     */
+    public void closeStorage() {
+        if (storageTask != null) {
+            storageTask.cancel();
+            storageTask = null;
+        }
+        if (snapshotTask != null) {
+            snapshotTask.cancel();
+            snapshotTask = null;
+        }
+        
+        if (storage != null) {
+            storage.close();
+        }
+        ioExecutor.shutdown();
         try {
-            storage.save(storageFile);
-            if (config.isDebugEnabled()) {
-                plugin.getLogger().info("Saved " + count + " death chests to storage.");
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for death chest storage to finish writing.");
             }
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to save death chests: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
-
+    
+    /**
+     * Creates the storage backend selected in the config
+     * 
+     * @return The storage backend
+     */
+    private ChestStorage createStorage() {
+        File dataFolder = plugin.getDataFolder();
+        if (config.getStorageType().equalsIgnoreCase("REGION")) {
+            return new RegionChestStorage(dataFolder, registry, ioExecutor, plugin.getLogger());
+        } else if (config.getStorageType().equalsIgnoreCase("BINARY")) {
+            return new MappedChestStorage(dataFolder, registry, ioExecutor, plugin.getLogger());
+        } else if (config.getStorageType().equalsIgnoreCase("SQLITE")) {
+            if (SqliteChestStorage.isDriverAvailable()) {
+                return new SqliteChestStorage(dataFolder, registry, ioExecutor, plugin.getLogger());
+            }
+            plugin.getLogger().warning("SQLite driver not found, using YAML storage instead.");
+        } else if (!config.getStorageType().equalsIgnoreCase("YAML")) {
+            plugin.getLogger().warning("Unknown storage type: " + config.getStorageType() + ". Using YAML instead.");
+        }
+        return new YamlChestStorage(dataFolder, registry, ioExecutor, plugin.getLogger(), 
+            config.getJournalCompactSize() * 1024L);
+    }
+    
+    /**
+     * Registers a death chest for tracking
+     * 
+     * @param location The chest location
+     * @param chestData The chest data
+     */
     public void registerChest(Location location, ChestData chestData) {
-        deathChests.put(location, chestData);
+        scheduleExpiry(registry.registerChest(location, chestData), chestData);
+    }
+    
+    /**
+     * Registers a death chest for tracking in a world identified by name
+     * 
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @param chestData The chest data
+     */
+    public void registerChest(String worldName, int x, int y, int z, ChestData chestData) {
+        scheduleExpiry(registry.registerChest(worldName, x, y, z, chestData), chestData);
+    }
+    
+    /**
+     * Sets the virtual chest manager, so chests loaded from storage are recognized as virtual
+     * 
+     * @param virtualChests The virtual chest manager
+     */
+    public void setVirtualChestManager(VirtualChestManager virtualChests) {
+        this.virtualChests = virtualChests;
+    }
+    
+    /**
+     * Gets the protection manager, which other plugins can register protection providers with
+     * 
+     * @return The protection manager
+     */
+    public ProtectionManager getProtectionManager() {
+        return protection;
+    }
+    
+    /**
+     * Checks if the chest storage only loads chests while their region is loaded
+     * 
+     * @return true if chests are loaded on demand
+     */
+    public boolean loadsChestsOnDemand() {
+        return storage != null && storage.loadsOnDemand();
+    }
+    
+    /**
+     * Runs a write on the storage thread, in order with chest storage writes,
+     * or right away once the storage thread has been shut down
+     * 
+     * @param task The task
+     */
+    public void runOnStorageThread(Runnable task) {
+        if (!ioExecutor.isShutdown()) {
+            ioExecutor.execute(task);
+        } else {
+            task.run();
+        }
     }
 
     /**
-     * Connects two chest blocks to form a double chest
+     * Places a death chest and fills it. The final block data of both halves is computed
+     * up front and applied without physics, so neighbours are not updated for the
+     * intermediate single chests. The owner data, name and items of each half are then
+     * written through a single block state snapshot and applied without physics.
      * 
-     * @param firstChest The first chest block
-     * @param secondChest The second chest block
+     * @param chestBlock The block to place the chest at
+     * @param secondChestBlock The block to place the second half of a double chest at, or null for a single chest
+     * @param owner The owner's UUID
+     * @param customName The chest name, or null to leave it unnamed
+     * @param expiryTime The expiry time in milliseconds, or 0 if the chest does not expire
+     * @param experience The experience to store in the chest
+     * @param items The items to store, which must not be null or air
+     * @return The items that did not fit
      */
-    private void connectChests(Block firstChest, Block secondChest) {
+    public List<ItemStack> placeChest(Block chestBlock, Block secondChestBlock, UUID owner, String customName,
+                                      long expiryTime, int experience, List<ItemStack> items) {
         org.bukkit.block.data.type.Chest firstChestData = 
-            (org.bukkit.block.data.type.Chest) firstChest.getBlockData();
-        org.bukkit.block.data.type.Chest secondChestData = 
-            (org.bukkit.block.data.type.Chest) secondChest.getBlockData();
+            (org.bukkit.block.data.type.Chest) Material.CHEST.createBlockData();
+        org.bukkit.block.data.type.Chest secondChestData = null;
         
-        // Determine the direction based on relative positions
-        BlockFace direction = null;
-        if (firstChest.getX() != secondChest.getX()) {
-            direction = firstChest.getX() < secondChest.getX() ? BlockFace.EAST : BlockFace.WEST;
-        } else if (firstChest.getZ() != secondChest.getZ()) {
-            direction = firstChest.getZ() < secondChest.getZ() ? BlockFace.SOUTH : BlockFace.NORTH;
+        if (secondChestBlock != null) {
+            // A left half is joined to its partner on its facing's clockwise side
+            BlockFace side = chestBlock.getFace(secondChestBlock);
+            BlockFace facing = counterClockwise(side);
+            secondChestData = (org.bukkit.block.data.type.Chest) Material.CHEST.createBlockData();
+            firstChestData.setFacing(facing);
+            firstChestData.setType(Type.LEFT);
+            secondChestData.setFacing(facing);
+            secondChestData.setType(Type.RIGHT);
         }
         
-        if (direction != null) {
-            firstChestData.setFacing(direction);
-            secondChestData.setFacing(direction);
-            
-            // Set chest types based on direction
-            if (direction == BlockFace.NORTH || direction == BlockFace.EAST) {
-                firstChestData.setType(Type.LEFT);
-                secondChestData.setType(Type.RIGHT);
-            } else {
-                firstChestData.setType(Type.RIGHT);
-                secondChestData.setType(Type.LEFT);
-            }
-            
-            firstChest.setBlockData(firstChestData);
-            secondChest.setBlockData(secondChestData);
+        chestBlock.setBlockData(firstChestData, false);
+        if (secondChestBlock != null) {
+            secondChestBlock.setBlockData(secondChestData, false);
+        }
+        
+        ItemStack[] remaining = fillChest(chestBlock, owner, customName, expiryTime, experience, 
+            items.toArray(new ItemStack[0]));
+        if (secondChestBlock != null) {
+            // The second half gets the owner data even if the first half took every item
+            remaining = fillChest(secondChestBlock, owner, customName, expiryTime, 0, remaining);
+        }
+        return new ArrayList<>(Arrays.asList(remaining));
+    }
+    
+    /**
+     * Writes the owner data, name and items of a placed chest half through one block state snapshot
+     * 
+     * @param block The chest block
+     * @param owner The owner's UUID
+     * @param customName The chest name, or null to leave it unnamed
+     * @param expiryTime The expiry time in milliseconds, or 0 if the chest does not expire
+     * @param experience The experience to store, or 0 for none
+     * @param items The items to add
+     * @return The items that did not fit
+     */
+    private ItemStack[] fillChest(Block block, UUID owner, String customName, long expiryTime, int experience, ItemStack[] items) {
+        if (!(block.getState() instanceof Chest chest)) {
+            return items;
+        }
+        
+        PersistentDataContainer container = chest.getPersistentDataContainer();
+        container.set(ownerKey, PersistentDataType.STRING, owner.toString());
+        if (expiryTime > 0) {
+            container.set(expiryTimeKey, PersistentDataType.LONG, expiryTime);
+        }
+        if (experience > 0) {
+            container.set(experienceKey, PersistentDataType.INTEGER, experience);
+        }
+        if (customName != null) {
+            chest.setCustomName(customName);
+        }
+        
+        // The snapshot inventory is written back with the state instead of changing the block right away
+        HashMap<Integer, ItemStack> leftovers = items.length > 0 
+            ? chest.getSnapshotInventory().addItem(items) : new HashMap<>();
+        chest.update(true, false);
+        return leftovers.values().toArray(new ItemStack[0]);
+    }
+    
+    /**
+     * Gets the horizontal face a quarter turn clockwise from another, seen from above
+     * 
+     * @param face A horizontal face
+     * @return The rotated face
+     */
+    private static BlockFace clockwise(BlockFace face) {
+        switch (face) {
+            case NORTH:
+                return BlockFace.EAST;
+            case EAST:
+                return BlockFace.SOUTH;
+            case SOUTH:
+                return BlockFace.WEST;
+            default:
+                return BlockFace.NORTH;
+        }
+    }
+    
+    /**
+     * Gets the horizontal face a quarter turn counterclockwise from another, seen from above
+     * 
+     * @param face A horizontal face
+     * @return The rotated face
+     */
+    private static BlockFace counterClockwise(BlockFace face) {
+        switch (face) {
+            case NORTH:
+                return BlockFace.WEST;
+            case WEST:
+                return BlockFace.SOUTH;
+            case SOUTH:
+                return BlockFace.EAST;
+            default:
+                return BlockFace.NORTH;
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,757 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongList;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks death chests keyed by a packed block position
+ * <p>
+ * Each chest is identified by a single {@code long} holding a world index and the
+ * block coordinates, so lookups from event handlers never allocate a {@link Location}
+ * and the registry holds no strong references to {@link World} instances.
+ * <p>
+ * Key layout, from the most significant bit: world index (8 bits), x (22 bits),
+ * z (22 bits), y (12 bits). World index 0 is never assigned, so a key of 0 means
+ * "no chest can exist here".
+ * <p>
+ * A secondary index groups chest keys by chunk, so "are there any chests around
+ * here" costs a single hash probe instead of a scan of every chest. A second index
+ * groups chest keys by owner, so per-player queries only touch that player's chests.
+ */
+public class ChestRegistry {
+    private static final int WORLD_BITS = 8;
+    private static final int XZ_BITS = 22;
+    private static final int Y_BITS = 12;
+
+    private static final int X_SHIFT = XZ_BITS + Y_BITS;
+    private static final int Z_SHIFT = Y_BITS;
+    private static final int WORLD_SHIFT = X_SHIFT + XZ_BITS;
+
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+
+    private static final int MIN_XZ = -(1 << (XZ_BITS - 1));
+    private static final int MAX_XZ = (1 << (XZ_BITS - 1)) - 1;
+    private static final int MIN_Y = -(1 << (Y_BITS - 1));
+    private static final int MAX_Y = (1 << (Y_BITS - 1)) - 1;
+    private static final int MAX_WORLDS = (1 << WORLD_BITS) - 1;
+
+    // Chunk key layout: world index (8 bits), chunk x (28 bits), chunk z (28 bits)
+    private static final int CHUNK_BITS = 28;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private static final long[] NO_KEYS = new long[0];
+
+    // Offsets of the blocks the other half of a double chest can be at
+    private static final int[] PARTNER_X = {1, -1, 0, 0};
+    private static final int[] PARTNER_Z = {0, 0, 1, -1};
+
+    private final Server server;
+    private final LongHashMap<ChestData> chests = new LongHashMap<>(256);
+    private final LongHashMap<LongList> chunks = new LongHashMap<>(256);
+    private final Map<UUID, LongList> owners = new HashMap<>();
+
+    // World names by index; slot 0 is intentionally left empty
+    private String[] worldNames = new String[8];
+    private int worldCount = 0;
+
+    private ChangeListener changeListener;
+
+    /**
+     * Callback for registrations and removals, used to persist changes incrementally
+     */
+    public interface ChangeListener {
+        /**
+         * @param key The packed key
+         * @param chestData The chest data now registered at the key
+         */
+        void chestRegistered(long key, ChestData chestData);
+
+        /**
+         * @param key The packed key of the removed chest
+         */
+        void chestRemoved(long key);
+    }
+
+    /**
+     * Creates a new ChestRegistry
+     *
+     * @param server The server used to resolve worlds by name
+     */
+    public ChestRegistry(Server server) {
+        this.server = server;
+    }
+
+    /**
+     * Gets the key for a block
+     *
+     * @param block The block
+     * @return The packed key, or 0 if no chest can be registered at the block
+     */
+    public long key(Block block) {
+        return key(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Gets the key for a location
+     *
+     * @param location The location
+     * @return The packed key, or 0 if no chest can be registered at the location
+     */
+    public long key(Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return 0;
+        }
+        return key(world, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Gets the key for a block position
+     *
+     * @param world The world
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The packed key, or 0 if no chest can be registered at the position
+     */
+    public long key(World world, int x, int y, int z) {
+        return key(world.getName(), x, y, z);
+    }
+
+    /**
+     * Gets the key for a block position in a world identified by name
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The packed key, or 0 if no chest can be registered at the position
+     */
+    public long key(String worldName, int x, int y, int z) {
+        int worldIndex = indexOf(worldName);
+        if (worldIndex == 0 || !isPackable(x, y, z)) {
+            return 0;
+        }
+        return pack(worldIndex, x, y, z);
+    }
+
+    /**
+     * Gets the key for a block position, assigning an index to the world if needed.
+     * Used for positions that must stay addressable after their chest is removed.
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The packed key
+     */
+    public long assignKey(String worldName, int x, int y, int z) {
+        if (!isPackable(x, y, z)) {
+            throw new IllegalArgumentException("Coordinates out of range: " + x + ", " + y + ", " + z);
+        }
+        return pack(indexOrAssign(worldName), x, y, z);
+    }
+
+    /**
+     * Gets the key of a chunk, in the same format as {@link #chunkKeyOf(long)}
+     *
+     * @param world The world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return The packed chunk key, or 0 if no chest was ever registered in the world
+     */
+    public long chunkKey(World world, int chunkX, int chunkZ) {
+        int worldIndex = indexOf(world.getName());
+        return worldIndex != 0 ? chunkKey(worldIndex, chunkX, chunkZ) : 0;
+    }
+
+    /**
+     * Checks if a block holds a death chest
+     *
+     * @param block The block to check
+     * @return true if the block is a registered death chest
+     */
+    public boolean isDeathChest(Block block) {
+        return chests.containsKey(key(block));
+    }
+
+    /**
+     * Checks if a location holds a death chest
+     *
+     * @param location The location to check
+     * @return true if the location is a registered death chest
+     */
+    public boolean isDeathChest(Location location) {
+        return chests.containsKey(key(location));
+    }
+
+    /**
+     * Gets the chest data for a block
+     *
+     * @param block The block to check
+     * @return The chest data, or null if not a death chest
+     */
+    public ChestData getChestData(Block block) {
+        return chests.get(key(block));
+    }
+
+    /**
+     * Gets the chest data for a location
+     *
+     * @param location The location to check
+     * @return The chest data, or null if not a death chest
+     */
+    public ChestData getChestData(Location location) {
+        return chests.get(key(location));
+    }
+
+    /**
+     * Gets the chest data for a key
+     *
+     * @param key The packed key
+     * @return The chest data, or null if not a death chest
+     */
+    public ChestData get(long key) {
+        return chests.get(key);
+    }
+
+    /**
+     * Callback used to iterate over the chunks that contain chests
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        /**
+         * @param worldName The world name
+         * @param chunkX The chunk x coordinate
+         * @param chunkZ The chunk z coordinate
+         * @param chestKeys The keys of the chests in the chunk; must not be modified
+         */
+        void accept(String worldName, int chunkX, int chunkZ, LongList chestKeys);
+    }
+
+    /**
+     * Checks if a chunk contains any death chests
+     *
+     * @param world The world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return true if at least one chest is registered in the chunk
+     */
+    public boolean hasChestsInChunk(World world, int chunkX, int chunkZ) {
+        int worldIndex = indexOf(world.getName());
+        return worldIndex != 0 && chunks.containsKey(chunkKey(worldIndex, chunkX, chunkZ));
+    }
+
+    /**
+     * Checks if any death chest could be within a horizontal radius of a block.
+     * Usually a single chunk probe; more only when the radius crosses a chunk border.
+     *
+     * @param world The world
+     * @param x The block x coordinate
+     * @param z The block z coordinate
+     * @param radius The horizontal radius in blocks
+     * @return true if a chunk overlapping the area contains chests
+     */
+    public boolean hasChestsNear(World world, int x, int z, int radius) {
+        int worldIndex = indexOf(world.getName());
+        if (worldIndex == 0) {
+            return false;
+        }
+
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                if (chunks.containsKey(chunkKey(worldIndex, chunkX, chunkZ))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the keys of all death chests in a chunk
+     *
+     * @param world The world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return The chest keys, or an empty array if there are none
+     */
+    public long[] getChestsInChunk(World world, int chunkX, int chunkZ) {
+        int worldIndex = indexOf(world.getName());
+        if (worldIndex == 0) {
+            return NO_KEYS;
+        }
+        LongList bucket = chunks.get(chunkKey(worldIndex, chunkX, chunkZ));
+        return bucket != null ? bucket.toArray() : NO_KEYS;
+    }
+
+    /**
+     * Gets the keys of all death chests within a horizontal square around a block
+     *
+     * @param world The world
+     * @param x The block x coordinate
+     * @param z The block z coordinate
+     * @param radius The horizontal radius in blocks
+     * @return The chest keys, or an empty array if there are none
+     */
+    public long[] getChestsNear(World world, int x, int z, int radius) {
+        int worldIndex = indexOf(world.getName());
+        if (worldIndex == 0) {
+            return NO_KEYS;
+        }
+
+        LongList result = null;
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                LongList bucket = chunks.get(chunkKey(worldIndex, chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    long key = bucket.get(i);
+                    if (Math.abs(blockX(key) - x) <= radius && Math.abs(blockZ(key) - z) <= radius) {
+                        if (result == null) {
+                            result = new LongList();
+                        }
+                        result.add(key);
+                    }
+                }
+            }
+        }
+        return result != null ? result.toArray() : NO_KEYS;
+    }
+
+    /**
+     * Visits every chunk that contains at least one death chest.
+     * The registry must not be modified during iteration.
+     *
+     * @param consumer The callback to invoke for each chunk
+     */
+    public void forEachChunk(ChunkConsumer consumer) {
+        chunks.forEach((chunkKey, bucket) -> consumer.accept(
+            worldNames[(int) (chunkKey >>> WORLD_SHIFT)],
+            (int) (chunkKey << WORLD_BITS >> (Long.SIZE - CHUNK_BITS)),
+            (int) (chunkKey << (WORLD_BITS + CHUNK_BITS) >> (Long.SIZE - CHUNK_BITS)),
+            bucket));
+    }
+
+    /**
+     * Gets the keys of all death chests owned by a player
+     *
+     * @param owner The owner's UUID
+     * @return The chest keys, or an empty array if there are none
+     */
+    public long[] getChestsOf(UUID owner) {
+        LongList bucket = owners.get(owner);
+        return bucket != null ? bucket.toArray() : NO_KEYS;
+    }
+
+    /**
+     * Counts the death chests owned by a player, counting a double chest once
+     *
+     * @param owner The owner's UUID
+     * @return The number of chests
+     */
+    public int countChests(UUID owner) {
+        LongList bucket = owners.get(owner);
+        if (bucket == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            if (!isSecondHalf(bucket.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the other half of a double death chest. Death chests are never placed next
+     * to another chest, so a chest block of the same owner right beside one is the other
+     * half of the same double chest.
+     *
+     * @param key The chest key
+     * @return The key of the other half, or 0 if the chest is not part of a double chest
+     */
+    public long getPartner(long key) {
+        ChestData chestData = chests.get(key);
+        if (chestData == null || chestData.isVirtual()) {
+            return 0;
+        }
+
+        int x = blockX(key);
+        int y = blockY(key);
+        int z = blockZ(key);
+        for (int i = 0; i < PARTNER_X.length; i++) {
+            if (!isPackable(x + PARTNER_X[i], y, z + PARTNER_Z[i])) {
+                continue;
+            }
+            long other = pack(worldIndex(key), x + PARTNER_X[i], y, z + PARTNER_Z[i]);
+            ChestData otherData = chests.get(other);
+            if (otherData != null && !otherData.isVirtual() && otherData.getOwnerUUID().equals(chestData.getOwnerUUID())) {
+                return other;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if a chest is the half of a double chest that listings skip, so each double
+     * chest is shown once
+     *
+     * @param key The chest key
+     * @return true if the chest is the second half of a double chest
+     */
+    public boolean isSecondHalf(long key) {
+        long partner = getPartner(key);
+        return partner != 0 && partner < key;
+    }
+
+    /**
+     * Finds the death chest of a player closest to a block position
+     *
+     * @param owner The owner's UUID
+     * @param world The world to search in
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The key of the nearest chest, or 0 if the player has no chest in that world
+     */
+    public long findNearest(UUID owner, World world, int x, int y, int z) {
+        LongList bucket = owners.get(owner);
+        int worldIndex = indexOf(world.getName());
+        if (bucket == null || worldIndex == 0) {
+            return 0;
+        }
+
+        long nearest = 0;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < bucket.size(); i++) {
+            long key = bucket.get(i);
+            if (worldIndex(key) != worldIndex) {
+                continue;
+            }
+            long dx = blockX(key) - x;
+            long dy = blockY(key) - y;
+            long dz = blockZ(key) - z;
+            long distance = dx * dx + dy * dy + dz * dz;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = key;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Gets the UUIDs of all players that own at least one death chest
+     *
+     * @return An unmodifiable view of the owners
+     */
+    public Collection<UUID> getOwners() {
+        return Collections.unmodifiableSet(owners.keySet());
+    }
+
+    /**
+     * Registers a death chest
+     *
+     * @param location The chest location
+     * @param chestData The chest data
+     * @return The packed key of the chest
+     */
+    public long registerChest(Location location, ChestData chestData) {
+        World world = location.getWorld();
+        if (world == null) {
+            throw new IllegalArgumentException("Location has no world");
+        }
+        return registerChest(world.getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), chestData);
+    }
+
+    /**
+     * Registers a death chest
+     *
+     * @param block The chest block
+     * @param chestData The chest data
+     * @return The packed key of the chest
+     */
+    public long registerChest(Block block, ChestData chestData) {
+        return registerChest(block.getWorld().getName(), block.getX(), block.getY(), block.getZ(), chestData);
+    }
+
+    /**
+     * Registers a death chest in a world identified by name
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @param chestData The chest data
+     * @return The packed key of the chest
+     */
+    public long registerChest(String worldName, int x, int y, int z, ChestData chestData) {
+        long key = assignKey(worldName, x, y, z);
+        ChestData previous = chests.put(key, chestData);
+        if (previous == null) {
+            long chunkKey = chunkKeyOf(key);
+            LongList bucket = chunks.get(chunkKey);
+            if (bucket == null) {
+                bucket = new LongList(2);
+                chunks.put(chunkKey, bucket);
+            }
+            bucket.add(key);
+        } else {
+            removeOwnerEntry(previous.getOwnerUUID(), key);
+        }
+        owners.computeIfAbsent(chestData.getOwnerUUID(), uuid -> new LongList(2)).add(key);
+        if (changeListener != null) {
+            changeListener.chestRegistered(key, chestData);
+        }
+        return key;
+    }
+
+    /**
+     * Removes a death chest
+     *
+     * @param block The chest block
+     * @return The removed chest data, or null if not a death chest
+     */
+    public ChestData remove(Block block) {
+        return remove(key(block));
+    }
+
+    /**
+     * Removes a death chest
+     *
+     * @param location The chest location
+     * @return The removed chest data, or null if not a death chest
+     */
+    public ChestData remove(Location location) {
+        return remove(key(location));
+    }
+
+    /**
+     * Removes a death chest
+     *
+     * @param key The packed key
+     * @return The removed chest data, or null if not a death chest
+     */
+    public ChestData remove(long key) {
+        ChestData removed = chests.remove(key);
+        if (removed != null) {
+            long chunkKey = chunkKeyOf(key);
+            LongList bucket = chunks.get(chunkKey);
+            if (bucket != null && bucket.removeValue(key) && bucket.isEmpty()) {
+                chunks.remove(chunkKey);
+            }
+            removeOwnerEntry(removed.getOwnerUUID(), key);
+            if (changeListener != null) {
+                changeListener.chestRemoved(key);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the number of registered chests
+     *
+     * @return The number of chests
+     */
+    public int size() {
+        return chests.size();
+    }
+
+    /**
+     * Sets the callback notified of every registration and removal
+     *
+     * @param changeListener The callback, or null for none
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Copies the world table, indexed like the world index of a key
+     *
+     * @return The world names by index; index 0 is always null
+     */
+    public String[] copyWorldNames() {
+        return Arrays.copyOf(worldNames, worldCount + 1);
+    }
+
+    /**
+     * Copies the keys of all registered chests
+     *
+     * @return The keys of all chests
+     */
+    public long[] keys() {
+        return chests.keys();
+    }
+
+    /**
+     * Visits every registered chest. The registry must not be modified during iteration.
+     *
+     * @param consumer The callback to invoke for each chest
+     */
+    public void forEach(LongHashMap.EntryConsumer<? super ChestData> consumer) {
+        chests.forEach(consumer);
+    }
+
+    /**
+     * Gets the name of the world a key belongs to
+     *
+     * @param key The packed key
+     * @return The world name, or null if the key is invalid
+     */
+    public String getWorldName(long key) {
+        int index = worldIndex(key);
+        return index > 0 && index <= worldCount ? worldNames[index] : null;
+    }
+
+    /**
+     * Gets the world a key belongs to
+     *
+     * @param key The packed key
+     * @return The world, or null if it is not loaded
+     */
+    public World getWorld(long key) {
+        String worldName = getWorldName(key);
+        return worldName != null ? server.getWorld(worldName) : null;
+    }
+
+    /**
+     * Converts a key back into a block location
+     *
+     * @param key The packed key
+     * @return The location, or null if the world is not loaded
+     */
+    public Location toLocation(long key) {
+        World world = getWorld(key);
+        if (world == null) {
+            return null;
+        }
+        return new Location(world, blockX(key), blockY(key), blockZ(key));
+    }
+
+    /**
+     * Checks if block coordinates fit into a packed key
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return true if the coordinates can be packed
+     */
+    public static boolean isPackable(int x, int y, int z) {
+        return x >= MIN_XZ && x <= MAX_XZ
+            && z >= MIN_XZ && z <= MAX_XZ
+            && y >= MIN_Y && y <= MAX_Y;
+    }
+
+    /**
+     * Gets the world index stored in a key
+     *
+     * @param key The packed key
+     * @return The world index
+     */
+    public static int worldIndex(long key) {
+        return (int) (key >>> WORLD_SHIFT);
+    }
+
+    /**
+     * Gets the block x coordinate stored in a key
+     *
+     * @param key The packed key
+     * @return The block x coordinate
+     */
+    public static int blockX(long key) {
+        return (int) (key << WORLD_BITS >> (Long.SIZE - XZ_BITS));
+    }
+
+    /**
+     * Gets the block y coordinate stored in a key
+     *
+     * @param key The packed key
+     * @return The block y coordinate
+     */
+    public static int blockY(long key) {
+        return (int) (key << (Long.SIZE - Y_BITS) >> (Long.SIZE - Y_BITS));
+    }
+
+    /**
+     * Gets the block z coordinate stored in a key
+     *
+     * @param key The packed key
+     * @return The block z coordinate
+     */
+    public static int blockZ(long key) {
+        return (int) (key << (WORLD_BITS + XZ_BITS) >> (Long.SIZE - XZ_BITS));
+    }
+
+    /**
+     * Gets the key of the chunk containing a chest
+     *
+     * @param key The packed chest key
+     * @return The packed chunk key
+     */
+    public static long chunkKeyOf(long key) {
+        return chunkKey(worldIndex(key), blockX(key) >> 4, blockZ(key) >> 4);
+    }
+
+    private static long chunkKey(int worldIndex, int chunkX, int chunkZ) {
+        return ((long) worldIndex << WORLD_SHIFT)
+            | ((chunkX & CHUNK_MASK) << CHUNK_BITS)
+            | (chunkZ & CHUNK_MASK);
+    }
+
+    private static long pack(int worldIndex, int x, int y, int z) {
+        return ((long) worldIndex << WORLD_SHIFT)
+            | ((x & XZ_MASK) << X_SHIFT)
+            | ((z & XZ_MASK) << Z_SHIFT)
+            | (y & Y_MASK);
+    }
+
+    private void removeOwnerEntry(UUID owner, long key) {
+        LongList bucket = owners.get(owner);
+        if (bucket != null && bucket.removeValue(key) && bucket.isEmpty()) {
+            owners.remove(owner);
+        }
+    }
+
+    private int indexOf(String worldName) {
+        // Servers rarely have more than a handful of worlds, so a linear scan beats hashing
+        for (int i = 1; i <= worldCount; i++) {
+            if (worldNames[i].equals(worldName)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private int indexOrAssign(String worldName) {
+        int index = indexOf(worldName);
+        if (index != 0) {
+            return index;
+        }
+        if (worldCount == MAX_WORLDS) {
+            throw new IllegalStateException("Too many worlds with death chests");
+        }
+        if (worldCount + 1 == worldNames.length) {
+            worldNames = Arrays.copyOf(worldNames, worldNames.length * 2);
+        }
+        worldNames[++worldCount] = worldName;
+        return worldCount;
+    }
+}
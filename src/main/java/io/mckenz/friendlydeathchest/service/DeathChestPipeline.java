@@ -0,0 +1,202 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.model.ChestPlacement;
+import io.mckenz.friendlydeathchest.model.DeathChestJob;
+import io.mckenz.friendlydeathchest.storage.PendingDeathJournal;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates death chests over the ticks following the deaths, instead of inside the death event
+ * <p>
+ * Each tick works through the queued jobs until the configured time budget is spent, but
+ * always completes at least one, so mass deaths are spread over several ticks. Jobs whose
+ * location search runs off the main thread are tracked until their result arrives. When
+ * the plugin is disabled, every job that is still queued or searching is completed on the
+ * spot, so no items are lost. Pending jobs are also kept on disk until they are done, so
+ * the jobs of a server that crashes or is killed are completed on its next start.
+ */
+public class DeathChestPipeline {
+    private final JavaPlugin plugin;
+    private final ConfigManager config;
+    private final LocationFinder locationFinder;
+    private final PendingDeathJournal journal;
+    private final ArrayDeque<DeathChestJob> queue = new ArrayDeque<>();
+    private final Set<DeathChestJob> searching = new LinkedHashSet<>();
+    private Builder builder;
+    private BukkitRunnable task;
+    private boolean draining;
+
+    /**
+     * Creates the death chest, or drops the items, once a job's location search is done
+     */
+    @FunctionalInterface
+    public interface Builder {
+        /**
+         * @param job The job
+         * @param placement The blocks to create the chest at, or null if none were found
+         */
+        void build(DeathChestJob job, ChestPlacement placement);
+    }
+
+    /**
+     * Creates a new DeathChestPipeline
+     *
+     * @param plugin The plugin instance
+     * @param config The configuration manager
+     * @param locationFinder The location finder service
+     */
+    public DeathChestPipeline(JavaPlugin plugin, ConfigManager config, LocationFinder locationFinder) {
+        this.plugin = plugin;
+        this.config = config;
+        this.locationFinder = locationFinder;
+        this.journal = new PendingDeathJournal(plugin);
+    }
+
+    /**
+     * Sets what completes each job
+     *
+     * @param builder The builder
+     */
+    public void setBuilder(Builder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Queues a job, to be started within the next tick
+     *
+     * @param job The job
+     */
+    public void submit(DeathChestJob job) {
+        if (draining) {
+            complete(job);
+            return;
+        }
+
+        journal.record(job);
+        enqueue(job);
+    }
+
+    /**
+     * Queues the jobs left on disk by a crash or kill of the last run. Called on enable,
+     * once the builder is set.
+     */
+    public void resume() {
+        List<DeathChestJob> jobs = journal.load();
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        plugin.getLogger().info("Creating " + jobs.size() + " death chests left pending by the last run.");
+        for (DeathChestJob job : jobs) {
+            enqueue(job);
+        }
+    }
+
+    /**
+     * Gets the number of jobs that are queued or waiting for their location search
+     *
+     * @return The number of pending jobs
+     */
+    public int getPendingCount() {
+        return queue.size() + searching.size();
+    }
+
+    /**
+     * Completes every pending job right away, stops taking new jobs into the queue and
+     * waits for the journal to catch up. Called when the plugin is disabled, before the
+     * chest storage is closed.
+     */
+    public void drain() {
+        draining = true;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        // Results of searches still running off the main thread would never be delivered
+        for (DeathChestJob job : searching) {
+            complete(job);
+        }
+        searching.clear();
+
+        DeathChestJob job;
+        while ((job = queue.poll()) != null) {
+            complete(job);
+        }
+        journal.close();
+    }
+
+    private void enqueue(DeathChestJob job) {
+        queue.add(job);
+        if (task == null) {
+            startTask();
+        }
+    }
+
+    private void startTask() {
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                long deadline = System.nanoTime() + config.getChestCreationBudget() * 1_000_000L;
+                do {
+                    start(queue.poll());
+                } while (!queue.isEmpty() && System.nanoTime() < deadline);
+
+                if (queue.isEmpty()) {
+                    cancel();
+                    task = null;
+                }
+            }
+        };
+        task.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Starts the location search of a job, completing it once the search is done. Protection
+     * plugins are checked for the player who died while they are online, as in {@link #complete}.
+     *
+     * @param job The job
+     */
+    private void start(DeathChestJob job) {
+        if (!config.isAsyncLocationSearch()) {
+            complete(job);
+            return;
+        }
+
+        searching.add(job);
+        locationFinder.findPlacementAsync(job.getDeathLocation(), job.getOwner(), job.getFootprint(), placement -> {
+            // The job was already completed if the plugin was disabled meanwhile
+            if (searching.remove(job)) {
+                finish(job, placement);
+            }
+        });
+    }
+
+    /**
+     * Searches for a job's location on the main thread and completes it. Protection plugins
+     * are checked for the player who died; if they are no longer online, as for jobs replayed
+     * after a crash, there is no player to check and protection is skipped.
+     *
+     * @param job The job
+     */
+    private void complete(DeathChestJob job) {
+        Player player = plugin.getServer().getPlayer(job.getOwner());
+        finish(job, locationFinder.findPlacement(job.getDeathLocation(), player, job.getFootprint()));
+    }
+
+    private void finish(DeathChestJob job, ChestPlacement placement) {
+        if (!job.isDone()) {
+            job.markDone();
+            builder.build(job, placement);
+            journal.remove(job);
+        }
+    }
+}
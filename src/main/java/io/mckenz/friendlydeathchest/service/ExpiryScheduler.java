@@ -0,0 +1,149 @@
+package io.mckenz.friendlydeathchest.service;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap of timed chest events (expiry warnings and expirations)
+ * <p>
+ * Events are stored in parallel primitive arrays ordered by due time, so checking
+ * for due work is a single comparison against the heap root and each poll only
+ * touches the events that are actually due. Entries are never removed early;
+ * callers validate each event against the current chest data when it fires and
+ * ignore stale ones.
+ */
+public class ExpiryScheduler {
+    /** Event kind for the expiry warning sent to the owner */
+    public static final byte WARN = 0;
+    /** Event kind for the chest expiring */
+    public static final byte EXPIRE = 1;
+
+    private long[] dueTimes = new long[64];
+    private long[] keys = new long[64];
+    private byte[] kinds = new byte[64];
+    private int size;
+
+    /**
+     * Callback invoked for each event that has become due
+     */
+    @FunctionalInterface
+    public interface DueHandler {
+        /**
+         * @param key The registry key of the chest
+         * @param kind The event kind ({@link #WARN} or {@link #EXPIRE})
+         * @param dueTime The time the event was scheduled for
+         */
+        void onDue(long key, byte kind, long dueTime);
+    }
+
+    /**
+     * Schedules an event
+     *
+     * @param key The registry key of the chest
+     * @param kind The event kind ({@link #WARN} or {@link #EXPIRE})
+     * @param dueTime The time in milliseconds at which the event fires
+     */
+    public void schedule(long key, byte kind, long dueTime) {
+        if (size == dueTimes.length) {
+            int capacity = size * 2;
+            dueTimes = Arrays.copyOf(dueTimes, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+        }
+
+        // Sift up from the new leaf
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (dueTimes[parent] <= dueTime) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        dueTimes[index] = dueTime;
+        keys[index] = key;
+        kinds[index] = kind;
+    }
+
+    /**
+     * Gets the time at which the next event is due
+     *
+     * @return The due time, or {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    public long nextDueTime() {
+        return size > 0 ? dueTimes[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Removes every event due at or before a time and passes it to a handler.
+     * The handler may schedule new events.
+     *
+     * @param now The current time in milliseconds
+     * @param handler The callback for due events
+     * @return The number of events handled
+     */
+    public int pollDue(long now, DueHandler handler) {
+        int handled = 0;
+        while (size > 0 && dueTimes[0] <= now) {
+            long dueTime = dueTimes[0];
+            long key = keys[0];
+            byte kind = kinds[0];
+            removeRoot();
+            handler.onDue(key, kind, dueTime);
+            handled++;
+        }
+        return handled;
+    }
+
+    /**
+     * Gets the number of scheduled events, including stale ones
+     *
+     * @return The number of events
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all scheduled events
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    private void removeRoot() {
+        int last = --size;
+        if (last == 0) {
+            return;
+        }
+
+        long dueTime = dueTimes[last];
+        long key = keys[last];
+        byte kind = kinds[last];
+
+        // Sift the former last leaf down from the root
+        int index = 0;
+        int half = last >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < last && dueTimes[right] < dueTimes[child]) {
+                child = right;
+            }
+            if (dueTime <= dueTimes[child]) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        dueTimes[index] = dueTime;
+        keys[index] = key;
+        kinds[index] = kind;
+    }
+
+    private void move(int from, int to) {
+        dueTimes[to] = dueTimes[from];
+        keys[to] = keys[from];
+        kinds[to] = kinds[from];
+    }
+}
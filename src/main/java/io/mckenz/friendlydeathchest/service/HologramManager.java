@@ -2,6 +2,8 @@ package io.mckenz.friendlydeathchest.service;
 
 import io.mckenz.friendlydeathchest.config.ConfigManager;
 import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongList;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.entity.ArmorStand;
@@ -12,9 +14,6 @@ import org.bukkit.scheduler.BukkitRunnable;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
 
 /**
  * Manages holograms for death chests
@@ -24,9 +23,23 @@ public class HologramManager {
     private final ConfigManager config;
     private final ChestManager chestManager;
     
-    private final Map<Location, ArmorStand> holograms = new HashMap<>();
+    // Holograms keyed by the chest registry key of the chest they belong to
+    private final LongHashMap<Hologram> holograms = new LongHashMap<>();
     private BukkitRunnable updateTask;
     
+    /**
+     * A spawned hologram together with the name it displays, so updates need no owner lookup
+     */
+    private static final class Hologram {
+        private final ArmorStand stand;
+        private final String playerName;
+        
+        private Hologram(ArmorStand stand, String playerName) {
+            this.stand = stand;
+            this.playerName = playerName;
+        }
+    }
+    
     /**
      * Creates a new HologramManager
      * 
@@ -57,8 +70,14 @@ public class HologramManager {
             return;
         }
         
+        // Only registered chests get a hologram
+        long key = chestManager.getRegistry().key(location);
+        if (key == 0) {
+            return;
+        }
+        
         // Remove any existing hologram at this location
-        removeHologram(location);
+        removeHologram(key);
         
         // Create a new hologram
         Location holoLoc = location.clone().add(0.5, 1.5, 0.5);
@@ -73,7 +92,7 @@ public class HologramManager {
         hologram.setMarker(true);
         
         // Store the hologram
-        holograms.put(location, hologram);
+        holograms.put(key, new Hologram(hologram, playerName));
     }
     
     /**
@@ -82,9 +101,18 @@ public class HologramManager {
      * @param location The chest location
      */
     public void removeHologram(Location location) {
-        ArmorStand hologram = holograms.remove(location);
-        if (hologram != null && !hologram.isDead()) {
-            hologram.remove();
+        removeHologram(chestManager.getRegistry().key(location));
+    }
+    
+    /**
+     * Removes a hologram
+     * 
+     * @param key The registry key of the chest
+     */
+    private void removeHologram(long key) {
+        Hologram hologram = holograms.remove(key);
+        if (hologram != null && !hologram.stand.isDead()) {
+            hologram.stand.remove();
         }
     }
     
@@ -92,11 +120,11 @@ public class HologramManager {
      * Removes all holograms
      */
     public void removeAllHolograms() {
-        for (ArmorStand hologram : holograms.values()) {
-            if (hologram != null && !hologram.isDead()) {
-                hologram.remove();
+        holograms.forEach((key, hologram) -> {
+            if (!hologram.stand.isDead()) {
+                hologram.stand.remove();
             }
-        }
+        });
         holograms.clear();
     }
     
@@ -151,33 +179,32 @@ public class HologramManager {
         updateTask = new BukkitRunnable() {
             @Override
             public void run() {
-                // Update each hologram with the current time remaining
-                for (Map.Entry<Location, ArmorStand> entry : holograms.entrySet()) {
-                    Location location = entry.getKey();
-                    ArmorStand hologram = entry.getValue();
-                    
-                    // Skip if hologram or location is invalid
-                    if (hologram == null || hologram.isDead() || location == null) {
-                        continue;
+                if (holograms.isEmpty()) {
+                    return;
+                }
+                
+                ChestRegistry registry = chestManager.getRegistry();
+                LongList orphaned = new LongList();
+                holograms.forEach((key, hologram) -> {
+                    // Skip if hologram is invalid, which includes holograms in unloaded chunks
+                    if (!hologram.stand.isValid()) {
+                        return;
                     }
                     
-                    // Get chest data
-                    ChestData chestData = chestManager.getChestData(location);
+                    // Remove the hologram if its chest is no longer tracked
+                    ChestData chestData = registry.get(key);
                     if (chestData == null) {
-                        // Chest data is missing, remove hologram
-                        removeHologram(location);
-                        continue;
-                    }
-                    
-                    // Get player name
-                    UUID ownerUUID = chestData.getOwnerUUID();
-                    String playerName = plugin.getServer().getOfflinePlayer(ownerUUID).getName();
-                    if (playerName == null) {
-                        playerName = "Unknown";
+                        orphaned.add(key);
+                        return;
                     }
                     
                     // Update hologram text
-                    hologram.setCustomName(formatHologramText(playerName, chestData.getExpiryTime()));
+                    hologram.stand.setCustomName(formatHologramText(hologram.playerName, chestData.getExpiryTime()));
+                });
+                
+                // The map cannot change while it is being walked
+                for (int i = 0; i < orphaned.size(); i++) {
+                    removeHologram(orphaned.get(i));
                 }
             }
         };
@@ -203,6 +230,15 @@ public class HologramManager {
      * @return true if the entity is a death chest hologram
      */
     public boolean isDeathChestHologram(Entity entity) {
-        return entity instanceof ArmorStand && holograms.containsValue(entity);
+        if (!(entity instanceof ArmorStand)) {
+            return false;
+        }
+        
+        // Holograms float 1.5 blocks above the chest they belong to
+        Location location = entity.getLocation();
+        long key = chestManager.getRegistry().key(location.getWorld(), location.getBlockX(),
+            (int) Math.floor(location.getY() - 1.5), location.getBlockZ());
+        Hologram hologram = key != 0 ? holograms.get(key) : null;
+        return hologram != null && hologram.stand == entity;
     }
 } 
\ No newline at end of file
@@ -1,12 +1,24 @@
 package io.mckenz.friendlydeathchest.service;
 
 import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.model.ChestPlacement;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongKeys;
+import io.mckenz.friendlydeathchest.utils.MaterialTable;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.HeightMap;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Responsible for finding appropriate chest locations
@@ -14,10 +26,20 @@ import org.bukkit.entity.Player;
 public class LocationFinder {
     private final ConfigManager config;
     private ChestManager chestManager;
+    private final SearchHintCache hints;
+    private final LocationReservations reservations = new LocationReservations();
     
     private static final BlockFace[] HORIZONTAL_FACES = {
         BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST
     };
+    
+    // Most blocks probed in one column by the vertical search
+    private static final int COLUMN_PROBES = 48;
+    
+    // Probe results in the search cache
+    private static final byte UNKNOWN = 0;
+    private static final byte VALID = 1;
+    private static final byte INVALID = 2;
 
     /**
      * Creates a new LocationFinder
@@ -28,6 +50,7 @@ public class LocationFinder {
     public LocationFinder(ConfigManager config, ChestManager chestManager) {
         this.config = config;
         this.chestManager = chestManager;
+        this.hints = new SearchHintCache(config.getSearchCacheTtl() * 1000L);
     }
 
     /**
@@ -48,29 +71,247 @@ public class LocationFinder {
      * @return A suitable location, or null if none found
      */
     public Location findChestLocation(Location deathLocation, Player player) {
+        ChestPlacement placement = findPlacement(deathLocation, player, 1);
+        return placement != null ? placement.getChestBlock().getLocation() : null;
+    }
+    
+    /**
+     * Gets how many blocks a death chest for a number of item stacks needs
+     * 
+     * @param stackCount The number of item stacks to store
+     * @return 2 if the items need a double chest and overflow-behavior allows one, otherwise 1
+     */
+    public int getFootprint(int stackCount) {
+        return stackCount > 27 && "DOUBLE_CHEST".equalsIgnoreCase(config.getOverflowBehavior()) ? 2 : 1;
+    }
+    
+    /**
+     * Finds blocks for a death chest in a single spiral pass around the death location.
+     * Every probed block is checked once and the result is reused when it comes up again
+     * as the second half of another candidate. If a double chest fits nowhere, the first
+     * valid single block is returned instead.
+     * 
+     * @param deathLocation The location where the player died
+     * @param player The player who died (for permission checks), or null
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     * @return The placement, or null if none found
+     */
+    public ChestPlacement findPlacement(Location deathLocation, Player player, int footprint) {
         World world = deathLocation.getWorld();
         if (world == null) {
             return null;
         }
         
-        // Get the max search radius from config
-        int maxRadius = config.getMaxSearchRadius();
-        String invalidBehavior = config.getInvalidLocationBehavior();
+        int originX = deathLocation.getBlockX();
+        int originY = deathLocation.getBlockY();
+        int originZ = deathLocation.getBlockZ();
+        int radius = getSearchRadius();
+        UUID searcher = getSearcher(player);
         
-        // Try the exact death location first
-        Block block = deathLocation.getBlock();
-        if (isValidChestLocation(block, player)) {
-            return block.getLocation();
+        // Repeated deaths in the same spot reuse the last result when it still holds
+        SearchHintCache.Hint hint = hints.get(world.getName(), originX, originY, originZ);
+        if (hint != null) {
+            if (hint.isMissFor(searcher, originX, originY, originZ)) {
+                return null;
+            }
+            ChestPlacement hinted = fromHint(world, hint, originX, originY, originZ, radius, footprint, player);
+            if (hinted != null) {
+                return hinted;
+            }
         }
         
-        // If we shouldn't search for alternatives, return null
-        if ("CANCEL".equalsIgnoreCase(invalidBehavior)) {
+        // Blocks claimed by searches still running off the main thread are skipped
+        String worldName = world.getName();
+        boolean[] skippedReserved = new boolean[1];
+        int[] found = search(new WorldBlockTypes(world), config.getMaterialTable(), originX, originY, originZ, 
+            radius, config.getVerticalSearchBudget(), footprint, (x, y, z) -> {
+                if (reservations.isBlocked(worldName, x, y, z)) {
+                    skippedReserved[0] = true;
+                    return false;
+                }
+                return player == null || canBuild(player, world.getBlockAt(x, y, z));
+            }, SpotClaim.NONE);
+        
+        // A miss caused by reservations only lasts until those chests are placed
+        if (found != null || !skippedReserved[0]) {
+            hints.put(worldName, originX, originY, originZ, searcher, found);
+        }
+        
+        if (player != null && chestManager != null && config.shouldRespectProtectionPlugins() && config.isDebugEnabled()) {
+            ProtectionCache cache = chestManager.getProtectionManager().getCache();
+            config.getPlugin().getLogger().info("Protection cache: " + cache.getHits() + " hits, " 
+                + cache.getMisses() + " misses, " + cache.size() + " entries");
+        }
+        return toPlacement(world, found);
+    }
+    
+    /**
+     * Finds blocks for a death chest like {@link #findPlacement}, but searches copies of
+     * the surrounding chunks off the main thread. Chunks that are not loaded are treated
+     * as blocked rather than loaded. The result is checked against the world and the
+     * protection plugins again on the main thread, falling back to a regular search if
+     * the world changed meanwhile or the owner may not build there. A cached result for
+     * the death location is passed to the callback right away. The blocks found are
+     * reserved until the callback returns, so searches running at the same time pick
+     * different blocks.
+     * 
+     * @param deathLocation The location where the player died
+     * @param owner The UUID of the player who died, for permission checks while they are online
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     * @param callback Called on the main thread with the placement, or with null if none was found
+     */
+    public void findPlacementAsync(Location deathLocation, UUID owner, int footprint, Consumer<ChestPlacement> callback) {
+        World world = deathLocation.getWorld();
+        if (world == null) {
+            callback.accept(null);
+            return;
+        }
+        
+        int originX = deathLocation.getBlockX();
+        int originY = deathLocation.getBlockY();
+        int originZ = deathLocation.getBlockZ();
+        int radius = getSearchRadius();
+        JavaPlugin plugin = config.getPlugin();
+        Player player = plugin.getServer().getPlayer(owner);
+        
+        // A cached result answers right away, without copying any chunks
+        SearchHintCache.Hint hint = hints.get(world.getName(), originX, originY, originZ);
+        if (hint != null) {
+            if (hint.isMissFor(getSearcher(player), originX, originY, originZ)) {
+                callback.accept(null);
+                return;
+            }
+            ChestPlacement hinted = fromHint(world, hint, originX, originY, originZ, radius, footprint, player);
+            if (hinted != null) {
+                callback.accept(hinted);
+                return;
+            }
+        }
+        
+        // Copy the chunks the search and its border reach, without loading any
+        int reach = radius + 2;
+        LongHashMap<ChunkSnapshot> snapshots = new LongHashMap<>();
+        for (int chunkX = (originX - reach) >> 4; chunkX <= (originX + reach) >> 4; chunkX++) {
+            for (int chunkZ = (originZ - reach) >> 4; chunkZ <= (originZ + reach) >> 4; chunkZ++) {
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    // The highest block of each column is kept for the vertical search
+                    snapshots.put(LongKeys.pack(chunkX, chunkZ), world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, false, false));
+                }
+            }
+        }
+        BlockTypes types = new SnapshotBlockTypes(snapshots, world.getMinHeight(), world.getMaxHeight());
+        MaterialTable materials = config.getMaterialTable();
+        int verticalBudget = config.getVerticalSearchBudget();
+        
+        String worldName = world.getName();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Each accepted spot is claimed right away; one another search claimed first is passed over
+            int[] found = search(types, materials, originX, originY, originZ, radius, verticalBudget, footprint, 
+                (x, y, z) -> !reservations.isBlocked(worldName, x, y, z), spot -> reservations.claim(worldName, spot));
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                // Protection plugins can only be asked on the main thread, for the one or two blocks found
+                Player searcher = plugin.getServer().getPlayer(owner);
+                ChestPlacement placement = toPlacement(world, found);
+                boolean claimed = found != null;
+                if (placement != null && (!isValidChestLocation(placement.getChestBlock(), searcher) 
+                        || (placement.isDoubleChest() && !isValidChestLocation(placement.getSecondChestBlock(), searcher)))) {
+                    // Blocks changed while searching or are protected, so give the spot up and search the world itself
+                    reservations.release(worldName, found);
+                    claimed = false;
+                    placement = findPlacement(deathLocation, searcher, footprint);
+                } else if (found != null) {
+                    // Misses are not recorded, since chunks that were not loaded count as blocked
+                    hints.put(worldName, originX, originY, originZ, getSearcher(searcher), found);
+                }
+                try {
+                    callback.accept(placement);
+                } finally {
+                    // The chest is placed now, and blocks it next to itself
+                    if (claimed) {
+                        reservations.release(worldName, found);
+                    }
+                }
+            });
+        });
+    }
+    
+    /**
+     * Forgets the search results that a block change could affect
+     * 
+     * @param block The changed block
+     */
+    public void invalidateHints(Block block) {
+        // Searches probe one block past their radius for second halves and adjacent chests
+        hints.invalidate(block.getWorld().getName(), block.getX(), block.getZ(), getSearchRadius() + 2);
+    }
+    
+    /**
+     * Builds a placement from the spot an earlier search from the same cell found, if it
+     * is still valid and within the search radius of this death location. The spot is not
+     * used when the death location itself can hold the chest.
+     * 
+     * @param world The world
+     * @param hint The earlier result
+     * @param originX The death location x coordinate
+     * @param originY The death location y coordinate
+     * @param originZ The death location z coordinate
+     * @param radius The search radius
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     * @param player The player to check permissions for, or null to skip permission checks
+     * @return The placement, or null to search normally
+     */
+    private ChestPlacement fromHint(World world, SearchHintCache.Hint hint, int originX, int originY, int originZ,
+                                    int radius, int footprint, Player player) {
+        int[] spot = hint.spot();
+        if (spot.length < footprint * 3 || Math.abs(spot[0] - originX) > radius || Math.abs(spot[2] - originZ) > radius
+                || isValidChestLocation(world.getBlockAt(originX, originY, originZ), player)) {
             return null;
         }
         
-        // Search in a spiral pattern around the death location
-        for (int radius = 1; radius <= maxRadius; radius++) {
-            // Try locations in increasing radius
+        Block chestBlock = world.getBlockAt(spot[0], spot[1], spot[2]);
+        Block secondChestBlock = footprint > 1 ? world.getBlockAt(spot[3], spot[4], spot[5]) : null;
+        if (!isValidChestLocation(chestBlock, player) || reservations.isBlocked(world.getName(), spot[0], spot[1], spot[2])
+                || (secondChestBlock != null && (!isValidChestLocation(secondChestBlock, player) 
+                    || reservations.isBlocked(world.getName(), spot[3], spot[4], spot[5])))) {
+            return null;
+        }
+        return new ChestPlacement(chestBlock, secondChestBlock);
+    }
+    
+    /**
+     * Gets how far around the death location to search
+     * 
+     * @return The search radius in blocks, 0 to only try the death location
+     */
+    private int getSearchRadius() {
+        return "CANCEL".equalsIgnoreCase(config.getInvalidLocationBehavior()) ? 0 : Math.max(0, config.getMaxSearchRadius());
+    }
+    
+    /**
+     * Runs the spiral search. Only reads block types through the given reader, so it
+     * can run off the main thread when the reader does.
+     * 
+     * @param types The block type reader
+     * @param materials The block classes to check against
+     * @param originX The death location x coordinate
+     * @param originY The death location y coordinate
+     * @param originZ The death location z coordinate
+     * @param maxRadius The search radius
+     * @param verticalBudget The most blocks the column search may probe
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     * @param allowed Extra check of a block that is otherwise valid, such as protection
+     * @param claim Takes each spot the search accepts, which is skipped if the claim fails
+     * @return The x, y and z coordinates of the chest block, followed by those of the
+     *         second half for a double chest, or null if nothing was found
+     */
+    private int[] search(BlockTypes types, MaterialTable materials, int originX, int originY, int originZ, 
+                         int maxRadius, int verticalBudget, int footprint, BlockFilter allowed, SpotClaim claim) {
+        // Cached probe results covering the search area plus a border for second halves
+        ProbeCache cache = new ProbeCache(types, materials, originX, originY, originZ, maxRadius + 1, allowed);
+        List<int[]> singles = footprint < 2 ? null : new ArrayList<>();
+        
+        // Try the exact death location first, then search in a spiral pattern around it
+        for (int radius = 0; radius <= maxRadius; radius++) {
             for (int x = -radius; x <= radius; x++) {
                 for (int z = -radius; z <= radius; z++) {
                     // Only check the perimeter of the current radius
@@ -78,29 +319,294 @@ public class LocationFinder {
                         continue;
                     }
                     
-                    // Check this location
-                    Block testBlock = block.getRelative(x, 0, z);
-                    if (isValidChestLocation(testBlock, player)) {
-                        return testBlock.getLocation();
+                    // Check this location, then one block above and one below; the death
+                    // location itself is only checked at its own height
+                    for (int y : radius == 0 ? new int[]{0} : new int[]{0, 1, -1}) {
+                        if (!cache.isValid(x, y, z)) {
+                            continue;
+                        }
+                        
+                        int[] single = {originX + x, originY + y, originZ + z};
+                        if (footprint < 2) {
+                            if (claim.claim(single)) {
+                                return single;
+                            }
+                            continue;
+                        }
+                        singles.add(single);
+                        
+                        for (BlockFace face : HORIZONTAL_FACES) {
+                            if (cache.isValid(x + face.getModX(), y, z + face.getModZ())) {
+                                int[] pair = {originX + x, originY + y, originZ + z, 
+                                    originX + x + face.getModX(), originY + y, originZ + z + face.getModZ()};
+                                if (claim.claim(pair)) {
+                                    return pair;
+                                }
+                            }
+                        }
                     }
-                    
-                    // Check one block above
-                    testBlock = block.getRelative(x, 1, z);
-                    if (isValidChestLocation(testBlock, player)) {
-                        return testBlock.getLocation();
+                }
+            }
+        }
+        
+        // Deaths in the sky, in lava or in deep water leave nothing within a block of the
+        // death height, so look up and down the columns for the nearest surface
+        if ((singles == null || singles.isEmpty()) && maxRadius > 0) {
+            return searchColumns(types, materials, originX, originY, originZ, maxRadius, verticalBudget, footprint, 
+                allowed, claim);
+        }
+        
+        // No room for both halves anywhere, fall back to a single chest
+        return claimFirst(singles, claim);
+    }
+    
+    /**
+     * Claims the first of the single chest spots a search accepted that can still be claimed
+     * 
+     * @param singles The spots in search order, or null
+     * @param claim The claim
+     * @return The claimed spot, or null if there is none
+     */
+    private static int[] claimFirst(List<int[]> singles, SpotClaim claim) {
+        if (singles != null) {
+            for (int[] single : singles) {
+                if (claim.claim(single)) {
+                    return single;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Searches the columns around the death location, nearest first, for a surface to
+     * place the chest on. Each column is scanned outward from the death height, or from
+     * just above its highest block for deaths in the sky, since nothing above that can
+     * hold a chest, or from the bottom of the world for deaths in the void. The number
+     * of probed blocks is limited by the vertical search budget, which the caller reads
+     * on the main thread.
+     * 
+     * @param types The block type reader
+     * @param materials The block classes to check against
+     * @param originX The death location x coordinate
+     * @param originY The death location y coordinate
+     * @param originZ The death location z coordinate
+     * @param maxRadius The search radius
+     * @param verticalBudget The most blocks the column search may probe
+     * @param footprint The number of blocks the chest needs, 1 or 2
+     * @param allowed Extra check of a block that is otherwise valid, such as protection
+     * @param claim Takes each spot the search accepts, which is skipped if the claim fails
+     * @return The coordinates in the same form as {@link #search}, or null if nothing was found
+     */
+    private int[] searchColumns(BlockTypes types, MaterialTable materials, int originX, int originY, int originZ, 
+                                int maxRadius, int verticalBudget, int footprint, BlockFilter allowed, SpotClaim claim) {
+        int budget = verticalBudget;
+        List<int[]> singles = footprint < 2 ? null : new ArrayList<>();
+        
+        for (int radius = 0; radius <= maxRadius && budget > 0; radius++) {
+            for (int x = -radius; x <= radius && budget > 0; x++) {
+                for (int z = -radius; z <= radius && budget > 0; z++) {
+                    if (Math.abs(x) != radius && Math.abs(z) != radius) {
+                        continue;
                     }
                     
-                    // Check one block below
-                    testBlock = block.getRelative(x, -1, z);
-                    if (isValidChestLocation(testBlock, player)) {
-                        return testBlock.getLocation();
+                    int columnX = originX + x;
+                    int columnZ = originZ + z;
+                    int top = types.getHighestY(columnX, columnZ) + 1;
+                    int start = Math.max(types.getMinHeight() + 1, Math.min(originY, top));
+                    
+                    // Probe the start, then alternate below and above it
+                    for (int step = 0; step < COLUMN_PROBES && budget > 0; step++) {
+                        int offset = (step + 1) >> 1;
+                        int y = (step & 1) == 1 ? start - offset : start + offset;
+                        if (y > top || y <= types.getMinHeight()) {
+                            continue;
+                        }
+                        
+                        budget--;
+                        if (!isValidChestLocation(types, materials, columnX, y, columnZ) || !allowed.test(columnX, y, columnZ)) {
+                            continue;
+                        }
+                        
+                        int[] single = {columnX, y, columnZ};
+                        if (footprint < 2) {
+                            if (claim.claim(single)) {
+                                return single;
+                            }
+                            continue;
+                        }
+                        singles.add(single);
+                        
+                        for (BlockFace face : HORIZONTAL_FACES) {
+                            int secondX = columnX + face.getModX();
+                            int secondZ = columnZ + face.getModZ();
+                            budget--;
+                            if (isValidChestLocation(types, materials, secondX, y, secondZ) && allowed.test(secondX, y, secondZ)) {
+                                int[] pair = {columnX, y, columnZ, secondX, y, secondZ};
+                                if (claim.claim(pair)) {
+                                    return pair;
+                                }
+                            }
+                        }
                     }
                 }
             }
         }
         
-        // If we get here, no valid location was found within the radius
-        return null;
+        return claimFirst(singles, claim);
+    }
+    
+    /**
+     * Turns search coordinates into a placement
+     * 
+     * @param world The world
+     * @param found The coordinates returned by the search, or null
+     * @return The placement, or null if nothing was found
+     */
+    private ChestPlacement toPlacement(World world, int[] found) {
+        if (found == null) {
+            return null;
+        }
+        Block second = found.length > 3 ? world.getBlockAt(found[3], found[4], found[5]) : null;
+        return new ChestPlacement(world.getBlockAt(found[0], found[1], found[2]), second);
+    }
+    
+    /**
+     * Reads block types at world coordinates, from the world itself or from chunk snapshots
+     */
+    private interface BlockTypes {
+        Material getType(int x, int y, int z);
+        
+        int getHighestY(int x, int z);
+        
+        int getMinHeight();
+    }
+    
+    /**
+     * Reads block types from the world; main thread only
+     */
+    private static final class WorldBlockTypes implements BlockTypes {
+        private final World world;
+        
+        private WorldBlockTypes(World world) {
+            this.world = world;
+        }
+        
+        @Override
+        public Material getType(int x, int y, int z) {
+            return world.getBlockAt(x, y, z).getType();
+        }
+        
+        @Override
+        public int getHighestY(int x, int z) {
+            // Fluids count, so columns over lava or water start at their surface
+            return world.getHighestBlockYAt(x, z, HeightMap.MOTION_BLOCKING);
+        }
+        
+        @Override
+        public int getMinHeight() {
+            return world.getMinHeight();
+        }
+    }
+    
+    /**
+     * Reads block types from chunk snapshots, treating chunks without a snapshot as solid
+     * blocks that cannot hold a chest; safe on any thread
+     */
+    private static final class SnapshotBlockTypes implements BlockTypes {
+        private final LongHashMap<ChunkSnapshot> snapshots;
+        private final int minHeight;
+        private final int maxHeight;
+        
+        private SnapshotBlockTypes(LongHashMap<ChunkSnapshot> snapshots, int minHeight, int maxHeight) {
+            this.snapshots = snapshots;
+            this.minHeight = minHeight;
+            this.maxHeight = maxHeight;
+        }
+        
+        @Override
+        public Material getType(int x, int y, int z) {
+            if (y < minHeight || y >= maxHeight) {
+                return Material.VOID_AIR;
+            }
+            ChunkSnapshot snapshot = snapshots.get(LongKeys.pack(x >> 4, z >> 4));
+            return snapshot != null ? snapshot.getBlockType(x & 15, y, z & 15) : Material.BARRIER;
+        }
+        
+        @Override
+        public int getHighestY(int x, int z) {
+            ChunkSnapshot snapshot = snapshots.get(LongKeys.pack(x >> 4, z >> 4));
+            return snapshot != null ? snapshot.getHighestBlockYAt(x & 15, z & 15) : minHeight - 1;
+        }
+        
+        @Override
+        public int getMinHeight() {
+            return minHeight;
+        }
+    }
+    
+    /**
+     * Accepts or rejects a block by its world coordinates
+     */
+    private interface BlockFilter {
+        boolean test(int x, int y, int z);
+    }
+    
+    /**
+     * Claims a spot the search accepted before it is returned, so searches running at the
+     * same time move on to other spots instead of all returning the same one
+     */
+    private interface SpotClaim {
+        /** Claims nothing, for searches whose chest is placed before any other search runs */
+        SpotClaim NONE = found -> true;
+        
+        boolean claim(int[] found);
+    }
+    
+    /**
+     * Probe results for the blocks around a death location, so each block is
+     * checked at most once per search
+     */
+    private final class ProbeCache {
+        private final BlockTypes types;
+        private final MaterialTable materials;
+        private final int originX;
+        private final int originY;
+        private final int originZ;
+        private final int extent;
+        private final int width;
+        private final BlockFilter allowed;
+        private final byte[] results;
+        
+        private ProbeCache(BlockTypes types, MaterialTable materials, int originX, int originY, int originZ, int extent, 
+                           BlockFilter allowed) {
+            this.types = types;
+            this.materials = materials;
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+            this.extent = extent;
+            this.width = extent * 2 + 1;
+            this.allowed = allowed;
+            this.results = new byte[width * width * 3];
+        }
+        
+        private boolean isValid(int x, int y, int z) {
+            if (Math.abs(x) > extent || Math.abs(z) > extent || y < -1 || y > 1) {
+                return false;
+            }
+            
+            int index = ((y + 1) * width + (x + extent)) * width + (z + extent);
+            if (results[index] == UNKNOWN) {
+                int blockX = originX + x;
+                int blockY = originY + y;
+                int blockZ = originZ + z;
+                boolean valid = isValidChestLocation(types, materials, blockX, blockY, blockZ) 
+                    && allowed.test(blockX, blockY, blockZ);
+                results[index] = valid ? VALID : INVALID;
+            }
+            return results[index] == VALID;
+        }
     }
     
     /**
@@ -111,26 +617,40 @@ public class LocationFinder {
      * @return true if the location is valid
      */
     private boolean isValidChestLocation(Block block, Player player) {
-        // Must be air or a replaceable block
-        if (!isReplaceable(block.getType())) {
+        return isValidChestLocation(new WorldBlockTypes(block.getWorld()), config.getMaterialTable(), 
+                block.getX(), block.getY(), block.getZ())
+            && (player == null || canBuild(player, block));
+    }
+    
+    /**
+     * Checks if a block location is valid for placing a chest, apart from protection
+     * 
+     * @param types The block type reader
+     * @param materials The block classes to check against
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return true if the location is valid
+     */
+    private boolean isValidChestLocation(BlockTypes types, MaterialTable materials, int x, int y, int z) {
+        // Must be within the range the chest registry can track
+        if (!ChestRegistry.isPackable(x, y, z)) {
             return false;
         }
-        
-        // Must have a solid block beneath
-        if (!block.getRelative(BlockFace.DOWN).getType().isSolid()) {
+
+        // Must be air or a replaceable block
+        if (!materials.isReplaceable(types.getType(x, y, z))) {
             return false;
         }
         
-        // Check if player has permission to build here
-        if (player != null && chestManager != null && 
-            config.shouldRespectProtectionPlugins() && 
-            !chestManager.canBuild(player, block.getLocation())) {
+        // Must have a solid block beneath that is not forbidden
+        if (!materials.isValidGround(types.getType(x, y - 1, z))) {
             return false;
         }
         
         // Check for chests nearby (can't place double chests)
         for (BlockFace face : HORIZONTAL_FACES) {
-            if (block.getRelative(face).getType() == Material.CHEST) {
+            if (types.getType(x + face.getModX(), y, z + face.getModZ()) == Material.CHEST) {
                 return false;
             }
         }
@@ -139,31 +659,29 @@ public class LocationFinder {
     }
     
     /**
-     * Checks if a material is replaceable
+     * Gets the player whose protection checks apply to a search
      * 
-     * @param material The material to check
-     * @return true if the material is replaceable
+     * @param player The player who died, or null
+     * @return The player's UUID, or null if no protection checks apply
      */
-    private boolean isReplaceable(Material material) {
-        return material == Material.AIR || 
-               material == Material.CAVE_AIR ||
-               material == Material.VOID_AIR ||
-               material == Material.WATER ||
-               material == Material.GRASS_BLOCK ||
-               material == Material.TALL_GRASS ||
-               material == Material.SEAGRASS ||
-               material == Material.SNOW ||
-               material == Material.VINE ||
-               material == Material.DEAD_BUSH;
+    private UUID getSearcher(Player player) {
+        return player != null && chestManager != null && config.shouldRespectProtectionPlugins() 
+            ? player.getUniqueId() : null;
     }
-
+    
+    /**
+     * Checks if a player has permission to build at a block
+     * 
+     * @param player The player
+     * @param block The block
+     * @return true if the player may build there or protection plugins are ignored
+     */
+    private boolean canBuild(Player player, Block block) {
+        return chestManager == null || !config.shouldRespectProtectionPlugins() 
+            || chestManager.canBuild(player, block);
+    }
+    
     public void setChestManager(ChestManager chestManager) {
         this.chestManager = chestManager;
     }
-
-    private boolean isValidGround(Block block) {
-        return block.getType().isSolid() && 
-               block.getType() != Material.BARRIER &&
-               block.getType() != Material.BEDROCK;
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,114 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongKeys;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Blocks claimed by location searches whose chests have not been placed yet
+ * <p>
+ * Searches running at the same time would otherwise all pick the same free block next
+ * to a shared death location, and all but one would have to search again once the first
+ * chest is placed. A reserved block counts as taken, and its neighbours as next to a
+ * chest. A search claims each spot as it accepts it, in one step for both halves of a
+ * double chest, and moves on to the next spot if another search claimed any of it first,
+ * so a burst of searches spreads out in a single pass. Reservations are released once
+ * the chest is placed, and expire on their own in case that never happens. Safe to use
+ * from any thread.
+ */
+public class LocationReservations {
+    private static final long TTL = 10_000L;
+
+    private final Map<String, LongHashMap<Long>> worlds = new HashMap<>();
+    private volatile int size;
+
+    /**
+     * Checks if a block is reserved, or next to a reserved block
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return true if a chest may not be placed at the block
+     */
+    public boolean isBlocked(String worldName, int x, int y, int z) {
+        // Nearly always empty, so skip the lock
+        if (size == 0) {
+            return false;
+        }
+
+        synchronized (this) {
+            LongHashMap<Long> blocks = worlds.get(worldName);
+            if (blocks == null) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            return isReserved(blocks, x, y, z, now) 
+                || isReserved(blocks, x + 1, y, z, now) || isReserved(blocks, x - 1, y, z, now)
+                || isReserved(blocks, x, y, z + 1, now) || isReserved(blocks, x, y, z - 1, now);
+        }
+    }
+
+    /**
+     * Reserves the blocks a search found, unless another search reserved any of them or
+     * their neighbours first
+     *
+     * @param worldName The world name
+     * @param found The x, y and z coordinates of each block, as returned by the search
+     * @return true if all blocks were reserved, false if none were
+     */
+    public synchronized boolean claim(String worldName, int[] found) {
+        for (int i = 0; i < found.length; i += 3) {
+            if (isBlocked(worldName, found[i], found[i + 1], found[i + 2])) {
+                return false;
+            }
+        }
+
+        LongHashMap<Long> blocks = worlds.computeIfAbsent(worldName, name -> new LongHashMap<>());
+        long now = System.currentTimeMillis();
+        if (blocks.size() > 256) {
+            purgeExpired(blocks, now);
+        }
+        Long expiresAt = now + TTL;
+        for (int i = 0; i < found.length; i += 3) {
+            if (blocks.put(LongKeys.packBlock(found[i], found[i + 1], found[i + 2]), expiresAt) == null) {
+                size++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases the blocks of an earlier claim
+     *
+     * @param worldName The world name
+     * @param found The coordinates that were claimed
+     */
+    public synchronized void release(String worldName, int[] found) {
+        LongHashMap<Long> blocks = worlds.get(worldName);
+        if (blocks == null) {
+            return;
+        }
+        for (int i = 0; i < found.length; i += 3) {
+            if (blocks.remove(LongKeys.packBlock(found[i], found[i + 1], found[i + 2])) != null) {
+                size--;
+            }
+        }
+    }
+
+    private static boolean isReserved(LongHashMap<Long> blocks, int x, int y, int z, long now) {
+        Long expiresAt = blocks.get(LongKeys.packBlock(x, y, z));
+        return expiresAt != null && expiresAt > now;
+    }
+
+    private void purgeExpired(LongHashMap<Long> blocks, long now) {
+        for (long key : blocks.keys()) {
+            if (blocks.get(key) <= now) {
+                blocks.remove(key);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.protection.BlockArea;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongKeys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recent build permission decisions of the protection plugins, per player
+ * <p>
+ * Each decision covers the area the protection plugins reported answering alike, such
+ * as the claim a block is in or a chunk no claim reaches into, cut down to the chunk of
+ * the checked block. A block outside every cached area is always checked with the
+ * plugins, so a decision is never applied to blocks its claim does not cover. Decisions
+ * expire after a fixed time to pick up claim changes, and the cache is cleared once it
+ * holds the maximum number of decisions and none of them have expired.
+ */
+public class ProtectionCache {
+    private final long ttl;
+    private final int maxEntries;
+    private final Map<UUID, LongHashMap<List<Decision>>> players = new HashMap<>();
+    private int size;
+    private long hits;
+    private long misses;
+
+    /**
+     * A cached decision, which only applies to the world it was made in
+     */
+    private record Decision(String worldName, BlockArea area, boolean allowed, long expiresAt) {
+    }
+
+    /**
+     * Creates a new ProtectionCache
+     *
+     * @param ttl How long a decision is kept in milliseconds, 0 to disable the cache
+     * @param maxEntries The maximum number of cached decisions
+     */
+    public ProtectionCache(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Checks if decisions are kept at all
+     *
+     * @return true if decisions are cached
+     */
+    public boolean isEnabled() {
+        return ttl > 0 && maxEntries > 0;
+    }
+
+    /**
+     * Gets the cached decision for a block
+     *
+     * @param player The player's UUID
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return Whether the player may build at the block, or null if no decision covers it
+     */
+    public Boolean get(UUID player, String worldName, int x, int y, int z) {
+        LongHashMap<List<Decision>> chunks = players.get(player);
+        List<Decision> decisions = chunks != null ? chunks.get(LongKeys.pack(x >> 4, z >> 4)) : null;
+        if (decisions != null) {
+            long now = System.currentTimeMillis();
+            for (Decision decision : decisions) {
+                if (decision.expiresAt() > now && decision.area().contains(x, y, z)
+                        && decision.worldName().equals(worldName)) {
+                    hits++;
+                    return decision.allowed();
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches a decision
+     *
+     * @param player The player's UUID
+     * @param worldName The world name
+     * @param area The blocks the decision holds for, all within one chunk
+     * @param allowed Whether the player may build there
+     */
+    public void put(UUID player, String worldName, BlockArea area, boolean allowed) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (size >= maxEntries) {
+            purgeExpired(now);
+            if (size >= maxEntries) {
+                clear();
+            }
+        }
+
+        LongHashMap<List<Decision>> chunks = players.computeIfAbsent(player, uuid -> new LongHashMap<>());
+        long key = LongKeys.pack(area.minX() >> 4, area.minZ() >> 4);
+        List<Decision> decisions = chunks.get(key);
+        if (decisions == null) {
+            decisions = new ArrayList<>(2);
+            chunks.put(key, decisions);
+        } else {
+            size -= removeExpired(decisions, now);
+        }
+        decisions.add(new Decision(worldName, area, allowed, now + ttl));
+        size++;
+    }
+
+    /**
+     * Forgets the decisions for a player, e.g. when they leave the server
+     *
+     * @param player The player's UUID
+     */
+    public void invalidatePlayer(UUID player) {
+        LongHashMap<List<Decision>> chunks = players.remove(player);
+        if (chunks != null) {
+            chunks.forEach((key, decisions) -> size -= decisions.size());
+        }
+    }
+
+    /**
+     * Forgets all decisions
+     */
+    public void clear() {
+        players.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the number of cached decisions, including expired ones not purged yet
+     *
+     * @return The number of decisions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to ask the protection plugins
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<LongHashMap<List<Decision>>> iterator = players.values().iterator();
+        while (iterator.hasNext()) {
+            LongHashMap<List<Decision>> chunks = iterator.next();
+            for (long key : chunks.keys()) {
+                List<Decision> decisions = chunks.get(key);
+                size -= removeExpired(decisions, now);
+                if (decisions.isEmpty()) {
+                    chunks.remove(key);
+                }
+            }
+            if (chunks.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int removeExpired(List<Decision> decisions, long now) {
+        int before = decisions.size();
+        decisions.removeIf(decision -> decision.expiresAt() <= now);
+        return before - decisions.size();
+    }
+}
@@ -0,0 +1,219 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.protection.BlockArea;
+import io.mckenz.friendlydeathchest.protection.GriefPreventionProtection;
+import io.mckenz.friendlydeathchest.protection.ProtectionProvider;
+import io.mckenz.friendlydeathchest.protection.WorldGuardProtection;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks build permission with every protection plugin that is installed and enabled
+ * <p>
+ * Providers are bound when the plugin is enabled and again on each plugin enable or
+ * disable event, so checking a block never looks up plugins or reflective methods.
+ * When no protection plugin is bound, a check is a single length test. Decisions are
+ * cached per player for the area the providers report answering alike, such as the
+ * claim the block is in, so a search asks the plugins once per claim or unclaimed chunk
+ * rather than once per probed block.
+ */
+public class ProtectionManager {
+    private static final ProtectionProvider[] NONE = new ProtectionProvider[0];
+
+    private final JavaPlugin plugin;
+    private final List<ProtectionProvider> providers = new ArrayList<>();
+    private ProtectionProvider[] bound = NONE;
+    private ProtectionCache cache;
+
+    /**
+     * Creates a new ProtectionManager with the built-in providers
+     *
+     * @param plugin The plugin instance
+     * @param config The configuration manager
+     */
+    public ProtectionManager(JavaPlugin plugin, ConfigManager config) {
+        this.plugin = plugin;
+        this.cache = createCache(config);
+        providers.add(new WorldGuardProtection());
+        providers.add(new GriefPreventionProtection());
+    }
+
+    /**
+     * Adds a provider for another protection plugin and binds it if that plugin is enabled
+     *
+     * @param provider The provider
+     */
+    public void registerProvider(ProtectionProvider provider) {
+        providers.add(provider);
+        resolveProviders(null);
+    }
+
+    /**
+     * Binds the providers whose plugins are enabled
+     */
+    public void resolveProviders() {
+        resolveProviders(null);
+    }
+
+    /**
+     * Binds the provider of a plugin that was just enabled
+     *
+     * @param enabled The enabled plugin
+     */
+    public void handlePluginEnable(Plugin enabled) {
+        if (hasProvider(enabled)) {
+            resolveProviders(null);
+        }
+    }
+
+    /**
+     * Drops the provider of a plugin that is being disabled
+     *
+     * @param disabled The disabled plugin
+     */
+    public void handlePluginDisable(Plugin disabled) {
+        if (hasProvider(disabled)) {
+            resolveProviders(disabled);
+        }
+    }
+
+    /**
+     * Checks if a player may build at a location according to every bound provider
+     *
+     * @param player The player
+     * @param location The location
+     * @return true if no provider denies building there
+     */
+    public boolean canBuild(Player player, Location location) {
+        if (bound.length == 0) {
+            return true;
+        }
+
+        Boolean cached = cache.get(player.getUniqueId(), location.getWorld().getName(), 
+            location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        return cached != null ? cached : check(player, location);
+    }
+
+    /**
+     * Checks if a player may build at a block according to every bound provider, without
+     * creating a location when a decision covering the block is cached
+     *
+     * @param player The player
+     * @param block The block
+     * @return true if no provider denies building there
+     */
+    public boolean canBuild(Player player, Block block) {
+        if (bound.length == 0) {
+            return true;
+        }
+
+        Boolean cached = cache.get(player.getUniqueId(), block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+        return cached != null ? cached : check(player, block.getLocation());
+    }
+
+    /**
+     * Forgets the cached decisions for a player
+     *
+     * @param player The player
+     */
+    public void invalidate(Player player) {
+        cache.invalidatePlayer(player.getUniqueId());
+    }
+
+    /**
+     * Applies changed cache settings, forgetting all cached decisions
+     *
+     * @param config The reloaded configuration manager
+     */
+    public void reload(ConfigManager config) {
+        cache = createCache(config);
+    }
+
+    /**
+     * Gets the decision cache, for its hit and miss counters
+     *
+     * @return The protection cache
+     */
+    public ProtectionCache getCache() {
+        return cache;
+    }
+
+    private boolean check(Player player, Location location) {
+        // Decisions are cached for at most the chunk of the block, where the lookup finds them
+        World world = location.getWorld();
+        BlockArea chunk = cache.isEnabled() ? BlockArea.ofChunk(location.getBlockX() >> 4, location.getBlockZ() >> 4,
+            world.getMinHeight(), world.getMaxHeight() - 1) : null;
+        BlockArea area = chunk;
+        for (ProtectionProvider provider : bound) {
+            try {
+                boolean allowed = provider.canBuild(player, location);
+                BlockArea reach = chunk != null ? provider.getDecisionArea(location) : null;
+                if (!allowed) {
+                    // One denial decides, wherever the denying plugin answers alike
+                    remember(player, world, reach != null ? chunk.intersect(reach) : null, false);
+                    return false;
+                }
+                area = area != null && reach != null ? area.intersect(reach) : null;
+            } catch (Throwable e) {
+                // A failed check allows building, and is asked again next time
+                plugin.getLogger().warning("Failed to check " + provider.getPluginName() + " protection: " + e.getMessage());
+                area = null;
+            }
+        }
+
+        // Building is allowed wherever every plugin answers alike
+        remember(player, world, area, true);
+        return true;
+    }
+
+    private void remember(Player player, World world, BlockArea area, boolean allowed) {
+        // Without a known area the decision only holds for the checked block, which is not probed twice
+        if (area != null) {
+            cache.put(player.getUniqueId(), world.getName(), area, allowed);
+        }
+    }
+
+    private static ProtectionCache createCache(ConfigManager config) {
+        return new ProtectionCache(config.getProtectionCacheTtl() * 1000L, config.getProtectionCacheSize());
+    }
+
+    private boolean hasProvider(Plugin other) {
+        for (ProtectionProvider provider : providers) {
+            if (provider.getPluginName().equals(other.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void resolveProviders(Plugin disabled) {
+        List<ProtectionProvider> resolved = new ArrayList<>();
+        for (ProtectionProvider provider : providers) {
+            Plugin target = plugin.getServer().getPluginManager().getPlugin(provider.getPluginName());
+            if (target == null || !target.isEnabled() || target == disabled) {
+                continue;
+            }
+            try {
+                provider.bind(target);
+                resolved.add(provider);
+            } catch (Throwable e) {
+                plugin.getLogger().warning("Failed to hook into " + provider.getPluginName() + ": " + e);
+            }
+        }
+
+        if (resolved.size() != bound.length) {
+            plugin.getLogger().info(resolved.isEmpty() ? "No protection plugins found."
+                : "Respecting protection plugins: " + resolved.stream().map(ProtectionProvider::getPluginName).toList());
+        }
+        bound = resolved.toArray(NONE);
+        cache.clear();
+    }
+}
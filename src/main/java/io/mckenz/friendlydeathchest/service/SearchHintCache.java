@@ -0,0 +1,146 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongKeys;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recent chest location search results around death hot spots
+ * <p>
+ * Deaths are grouped into cells of 4x4x4 blocks. A cell remembers either that the last
+ * search from it found nothing, so repeated deaths at that exact block in a lava pit or
+ * arena skip the search, or the spot it found, which later deaths in the cell try first.
+ * Any block change within search reach of a cell, at any height, forgets it, and results
+ * expire after a short time to cover changes that fire no event. Only used on the main
+ * thread.
+ */
+public class SearchHintCache {
+    private static final int CELL_SHIFT = 2;
+    private static final int MAX_ENTRIES = 1024;
+
+    private final long ttl;
+    private final Map<String, LongHashMap<Hint>> worlds = new HashMap<>();
+    private int size;
+
+    /**
+     * The last search result of a cell
+     *
+     * @param cellY The cell y coordinate, since cells of a column share one entry
+     * @param originX The x coordinate of the death location searched from
+     * @param originY The y coordinate of the death location searched from
+     * @param originZ The z coordinate of the death location searched from
+     * @param searcher The player whose protection checks applied to the search, or null if none did
+     * @param spot The coordinates found, as returned by the search, or null if nothing was found
+     * @param expiresAt The time in milliseconds at which the result expires
+     */
+    public record Hint(int cellY, int originX, int originY, int originZ, UUID searcher, int[] spot, long expiresAt) {
+        /**
+         * Checks if this records a search that found nothing, for a searcher at a death location.
+         * Other death locations in the cell search a different area, so misses only hold for
+         * the exact block they were searched from.
+         *
+         * @param player The player searching, or null if no protection checks apply
+         * @param x The death location x coordinate
+         * @param y The death location y coordinate
+         * @param z The death location z coordinate
+         * @return true if a search for the player would find nothing as well
+         */
+        public boolean isMissFor(UUID player, int x, int y, int z) {
+            // Protection only ever removes spots, so a miss without it holds for everyone
+            return spot == null && originX == x && originY == y && originZ == z
+                && (searcher == null || searcher.equals(player));
+        }
+    }
+
+    /**
+     * Creates a new SearchHintCache
+     *
+     * @param ttl How long a result is kept in milliseconds, 0 to disable the cache
+     */
+    public SearchHintCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Gets the last search result of the cell containing a death location
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The result, or null if there is none or it expired
+     */
+    public Hint get(String worldName, int x, int y, int z) {
+        LongHashMap<Hint> cells = worlds.get(worldName);
+        if (cells == null) {
+            return null;
+        }
+
+        Hint hint = cells.get(LongKeys.pack(x >> CELL_SHIFT, z >> CELL_SHIFT));
+        if (hint == null || hint.cellY() != y >> CELL_SHIFT || hint.expiresAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return hint;
+    }
+
+    /**
+     * Records a search result for the cell containing a death location
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @param searcher The player whose protection checks applied to the search, or null if none did
+     * @param spot The coordinates found, or null if nothing was found
+     */
+    public void put(String worldName, int x, int y, int z, UUID searcher, int[] spot) {
+        if (ttl <= 0) {
+            return;
+        }
+
+        if (size >= MAX_ENTRIES) {
+            clear();
+        }
+
+        Hint previous = worlds.computeIfAbsent(worldName, name -> new LongHashMap<>())
+            .put(LongKeys.pack(x >> CELL_SHIFT, z >> CELL_SHIFT), 
+                new Hint(y >> CELL_SHIFT, x, y, z, searcher, spot, System.currentTimeMillis() + ttl));
+        if (previous == null) {
+            size++;
+        }
+    }
+
+    /**
+     * Forgets the results of every cell whose searches could reach a changed block
+     *
+     * @param worldName The world name
+     * @param x The changed block x coordinate
+     * @param z The changed block z coordinate
+     * @param reach How far a search reaches from its death location horizontally
+     */
+    public void invalidate(String worldName, int x, int z, int reach) {
+        LongHashMap<Hint> cells = worlds.get(worldName);
+        if (cells == null || cells.isEmpty()) {
+            return;
+        }
+
+        for (int cellX = (x - reach) >> CELL_SHIFT; cellX <= (x + reach) >> CELL_SHIFT; cellX++) {
+            for (int cellZ = (z - reach) >> CELL_SHIFT; cellZ <= (z + reach) >> CELL_SHIFT; cellZ++) {
+                if (cells.remove(LongKeys.pack(cellX, cellZ)) != null) {
+                    size--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all results
+     */
+    public void clear() {
+        worlds.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,138 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongList;
+
+/**
+ * Queue of expired death chests whose blocks still have to be removed
+ * <p>
+ * When a chest expires in an unloaded chunk it is dropped from the registry right
+ * away and its position is queued here, grouped by chunk. The block is cleared the
+ * next time the chunk loads on its own, so expiry never forces a chunk load.
+ */
+public class TombstoneQueue {
+    private final LongHashMap<LongList> byChunk = new LongHashMap<>();
+    private int size = 0;
+    private ChangeListener changeListener;
+
+    /**
+     * Callback for queue changes, used to persist them incrementally
+     */
+    public interface ChangeListener {
+        /**
+         * @param key The registry key of the queued position
+         */
+        void tombstoneAdded(long key);
+
+        /**
+         * @param key The registry key of the position taken off the queue
+         */
+        void tombstoneRemoved(long key);
+    }
+
+    /**
+     * Queues a chest position for removal
+     *
+     * @param key The registry key of the expired chest
+     */
+    public void add(long key) {
+        long chunkKey = ChestRegistry.chunkKeyOf(key);
+        LongList bucket = byChunk.get(chunkKey);
+        if (bucket == null) {
+            bucket = new LongList(2);
+            byChunk.put(chunkKey, bucket);
+        }
+        if (!bucket.contains(key)) {
+            bucket.add(key);
+            size++;
+            if (changeListener != null) {
+                changeListener.tombstoneAdded(key);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns all queued positions in a chunk
+     *
+     * @param chunkKey The packed chunk key
+     * @return The registry keys of the queued positions, or an empty array if none
+     */
+    public long[] takeChunk(long chunkKey) {
+        LongList bucket = byChunk.remove(chunkKey);
+        if (bucket == null) {
+            return new long[0];
+        }
+        size -= bucket.size();
+        long[] keys = bucket.toArray();
+        if (changeListener != null) {
+            for (long key : keys) {
+                changeListener.tombstoneRemoved(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Copies every queued position
+     *
+     * @return The registry keys of all queued positions
+     */
+    public long[] keys() {
+        LongList all = new LongList(size);
+        byChunk.forEach((chunkKey, bucket) -> {
+            for (int i = 0; i < bucket.size(); i++) {
+                all.add(bucket.get(i));
+            }
+        });
+        return all.toArray();
+    }
+
+    /**
+     * Gets the number of queued positions
+     *
+     * @return The number of queued positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Takes a single position off the queue
+     *
+     * @param key The registry key of the position
+     * @return true if the position was queued
+     */
+    public boolean remove(long key) {
+        long chunkKey = ChestRegistry.chunkKeyOf(key);
+        LongList bucket = byChunk.get(chunkKey);
+        if (bucket == null || !bucket.removeValue(key)) {
+            return false;
+        }
+        if (bucket.isEmpty()) {
+            byChunk.remove(chunkKey);
+        }
+        size--;
+        if (changeListener != null) {
+            changeListener.tombstoneRemoved(key);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the callback notified of every queue change
+     *
+     * @param changeListener The callback, or null for none
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Checks if the queue is empty
+     *
+     * @return true if nothing is queued
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
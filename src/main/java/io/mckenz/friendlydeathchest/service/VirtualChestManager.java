@@ -0,0 +1,530 @@
+package io.mckenz.friendlydeathchest.service;
+
+import io.mckenz.friendlydeathchest.config.ConfigManager;
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.model.VirtualChest;
+import io.mckenz.friendlydeathchest.storage.AtomicFiles;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Manages death chests that are kept by the plugin instead of being placed as blocks.
+ * <p>
+ * Virtual chests are registered with the chest registry like block chests, so expiry,
+ * listing and storage work the same way. Their items live in plugin-held inventories
+ * that are saved to virtual-chests.yml, and a particle marker shows where they are.
+ */
+public class VirtualChestManager {
+    private static final int MAX_SIZE = 54;
+    private static final int MARKER_RANGE = 32;
+    private static final int SPOT_ATTEMPTS = 4;
+
+    private final JavaPlugin plugin;
+    private final ConfigManager config;
+    private final ChestManager chestManager;
+    private final ChestRegistry registry;
+    private final File file;
+
+    // Virtual chests keyed by the registry key of their position
+    private final LongHashMap<VirtualChest> chests = new LongHashMap<>();
+    // Copies of each chest as last saved, so unchanged chests are not copied again
+    private final LongHashMap<SavedChest> saved = new LongHashMap<>();
+    private boolean dirty;
+    private BukkitRunnable markerTask;
+    private BukkitRunnable saveTask;
+
+    /**
+     * A copy of a virtual chest for saving, which is not changed once made
+     */
+    private record SavedChest(String worldName, int x, int y, int z, UUID owner, String ownerName, int experience,
+                              long expiryTime, int size, ItemStack[] contents) {
+    }
+
+    /**
+     * Creates a new VirtualChestManager and loads the stored virtual chests
+     *
+     * @param plugin The plugin instance
+     * @param config The configuration manager
+     * @param chestManager The chest manager
+     */
+    public VirtualChestManager(JavaPlugin plugin, ConfigManager config, ChestManager chestManager) {
+        this.plugin = plugin;
+        this.config = config;
+        this.chestManager = chestManager;
+        this.registry = chestManager.getRegistry();
+        this.file = new File(plugin.getDataFolder(), "virtual-chests.yml");
+
+        load();
+        chestManager.setVirtualChestManager(this);
+
+        startMarkerTask();
+        startSaveTask();
+    }
+
+    /**
+     * Stores a player's drops in a new virtual chest at or just above the death location
+     *
+     * @param player The player who died
+     * @param location The death location
+     * @param items The dropped items
+     * @param experience The dropped experience
+     * @return The items that did not fit, or null if no free spot was found
+     */
+    public List<ItemStack> createVirtualChest(Player player, Location location, List<ItemStack> items, int experience) {
+        World world = location.getWorld();
+        if (world == null) {
+            return null;
+        }
+
+        // Deaths in the void or above the build limit still get a reachable spot
+        int y = Math.max(world.getMinHeight(), Math.min(world.getMaxHeight() - SPOT_ATTEMPTS, location.getBlockY()));
+        long key = 0;
+        for (int i = 0; i < SPOT_ATTEMPTS && key == 0; i++) {
+            if (!ChestRegistry.isPackable(location.getBlockX(), y + i, location.getBlockZ())) {
+                continue;
+            }
+            long candidate = registry.assignKey(world.getName(), location.getBlockX(), y + i, location.getBlockZ());
+            if (registry.get(candidate) == null && !chests.containsKey(candidate)) {
+                key = candidate;
+            }
+        }
+        if (key == 0) {
+            return null;
+        }
+
+        List<ItemStack> stored = new ArrayList<>(items.size());
+        for (ItemStack item : items) {
+            if (item != null && item.getType() != Material.AIR) {
+                stored.add(item);
+            }
+        }
+
+        long expiryTime = 0;
+        if (config.getChestLifetime() > 0) {
+            expiryTime = System.currentTimeMillis() + (config.getChestLifetime() * 60000L);
+        }
+
+        int storedExperience = config.shouldStoreExperience() ? experience : 0;
+        ChestData chestData = new ChestData(player.getUniqueId(), storedExperience, expiryTime);
+        chestData.setVirtual(true);
+        chestData.setVerified(true);
+
+        int size = stored.size() <= 27 ? 27 : MAX_SIZE;
+        VirtualChest chest = new VirtualChest(key, chestData, player.getName(), size,
+            getTitle(player.getName()), storedExperience);
+        List<ItemStack> leftovers = new ArrayList<>(chest.getInventory().addItem(stored.toArray(new ItemStack[0])).values());
+
+        chests.put(key, chest);
+        chestManager.registerChest(world.getName(), ChestRegistry.blockX(key), ChestRegistry.blockY(key),
+            ChestRegistry.blockZ(key), chestData);
+        dirty = true;
+
+        if (config.isDebugEnabled()) {
+            plugin.getLogger().info("Created virtual death chest for " + player.getName() + " at "
+                + registry.toLocation(key) + " with " + stored.size() + " stacks");
+        }
+        return leftovers;
+    }
+
+    /**
+     * Gets the virtual chest at a registry key
+     *
+     * @param key The registry key
+     * @return The virtual chest, or null if there is none
+     */
+    public VirtualChest get(long key) {
+        return key != 0 ? chests.get(key) : null;
+    }
+
+    /**
+     * Checks if there are any virtual chests
+     *
+     * @return true if no virtual chests exist
+     */
+    public boolean isEmpty() {
+        return chests.isEmpty();
+    }
+
+    /**
+     * Marks freshly loaded chest data as belonging to a virtual chest, so it is not
+     * checked against the world
+     *
+     * @param key The registry key
+     * @param chestData The chest data that was registered
+     * @return true if a virtual chest exists at the key
+     */
+    public boolean attach(long key, ChestData chestData) {
+        VirtualChest chest = chests.get(key);
+        if (chest == null) {
+            return false;
+        }
+        chestData.setVirtual(true);
+        chestData.setVerified(true);
+        chest.setChestData(chestData);
+        return true;
+    }
+
+    /**
+     * Finds the nearest virtual chest a player owns in their world
+     *
+     * @param player The player
+     * @param range The maximum distance in blocks, or 0 for any distance
+     * @return The virtual chest, or null if none is in range
+     */
+    public VirtualChest findNearest(Player player, int range) {
+        Location from = player.getLocation();
+        World world = from.getWorld();
+        VirtualChest nearest = null;
+        double nearestDistance = range > 0 ? (double) range * range : Double.MAX_VALUE;
+
+        for (long key : registry.getChestsOf(player.getUniqueId())) {
+            VirtualChest chest = chests.get(key);
+            if (chest == null || world == null || !world.getName().equals(registry.getWorldName(key))) {
+                continue;
+            }
+            double dx = ChestRegistry.blockX(key) + 0.5 - from.getX();
+            double dy = ChestRegistry.blockY(key) + 0.5 - from.getY();
+            double dz = ChestRegistry.blockZ(key) + 0.5 - from.getZ();
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance <= nearestDistance) {
+                nearest = chest;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Opens a virtual chest for a player, giving stored experience back to the owner once
+     *
+     * @param player The player
+     * @param chest The virtual chest
+     */
+    public void open(Player player, VirtualChest chest) {
+        player.openInventory(chest.getInventory());
+
+        if (chest.getExperience() > 0 && player.getUniqueId().equals(chest.getChestData().getOwnerUUID())) {
+            player.giveExp(chest.getExperience());
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', "&a[FriendlyDeathChest] You recovered " + chest.getExperience() + " experience points!"));
+            chest.setExperience(0);
+            chest.markChanged();
+            dirty = true;
+        }
+
+        Location location = registry.toLocation(chest.getKey());
+        if (location != null) {
+            player.playSound(location, Sound.BLOCK_CHEST_OPEN, 1.0f, 1.0f);
+        }
+    }
+
+    /**
+     * Marks a virtual chest for saving if its items changed, and removes it once its last
+     * viewer closes it empty
+     *
+     * @param chest The virtual chest
+     * @param player The player who closed the inventory
+     */
+    public void handleClose(VirtualChest chest, Player player) {
+        chest.checkContents();
+        dirty |= chest.isChanged();
+
+        // The closing player is still listed as a viewer during the close event
+        if (!chest.getInventory().isEmpty() || chest.getInventory().getViewers().size() > 1 || chests.get(chest.getKey()) != chest) {
+            return;
+        }
+
+        Location location = registry.toLocation(chest.getKey());
+        chests.remove(chest.getKey());
+        saved.remove(chest.getKey());
+        registry.remove(chest.getKey());
+
+        if (location != null) {
+            Location center = location.add(0.5, 0.5, 0.5);
+            center.getWorld().spawnParticle(Particle.SMOKE, center, 30, 0.2, 0.2, 0.2, 0.05);
+            center.getWorld().playSound(center, Sound.ENTITY_PLAYER_LEVELUP, 1.0f, 1.2f);
+        }
+        player.sendMessage(ChatColor.translateAlternateColorCodes('&', config.getMessageChestRemoved()));
+
+        if (config.isDebugEnabled()) {
+            plugin.getLogger().info("Virtual death chest removed after being emptied at " + location);
+        }
+    }
+
+    /**
+     * Forgets a virtual chest and closes it for anyone viewing it. The caller
+     * unregisters it from the chest registry.
+     *
+     * @param key The registry key
+     */
+    public void remove(long key) {
+        VirtualChest chest = chests.remove(key);
+        if (chest == null) {
+            return;
+        }
+        saved.remove(key);
+        dirty = true;
+
+        for (HumanEntity viewer : new ArrayList<>(chest.getInventory().getViewers())) {
+            viewer.closeInventory();
+        }
+    }
+
+    /**
+     * Starts the task that shows a particle marker at virtual chests near players
+     */
+    private void startMarkerTask() {
+        markerTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (chests.isEmpty()) {
+                    return;
+                }
+
+                for (Player player : plugin.getServer().getOnlinePlayers()) {
+                    Location location = player.getLocation();
+                    for (long key : registry.getChestsNear(location.getWorld(), location.getBlockX(), location.getBlockZ(), MARKER_RANGE)) {
+                        if (chests.containsKey(key)) {
+                            player.spawnParticle(Particle.END_ROD, new Location(location.getWorld(),
+                                ChestRegistry.blockX(key) + 0.5, ChestRegistry.blockY(key) + 0.5, ChestRegistry.blockZ(key) + 0.5),
+                                4, 0.15, 0.3, 0.15, 0.01);
+                        }
+                    }
+                }
+            }
+        };
+
+        // Only players near a chest get particles, so this stays cheap with many chests
+        markerTask.runTaskTimer(plugin, 20, 20);
+    }
+
+    /**
+     * Starts the task that saves changed virtual chests
+     */
+    private void startSaveTask() {
+        saveTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (dirty) {
+                    save();
+                }
+            }
+        };
+
+        // Save every second, like the chest storage, so a crash loses little
+        saveTask.runTaskTimer(plugin, 20, 20);
+    }
+
+    /**
+     * Stops the tasks, closes open virtual chests and saves them. Must run before
+     * the chest storage is closed, so the write is queued ahead of its shutdown.
+     */
+    public void shutdown() {
+        if (markerTask != null) {
+            markerTask.cancel();
+            markerTask = null;
+        }
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+
+        chests.forEach((key, chest) -> {
+            for (HumanEntity viewer : new ArrayList<>(chest.getInventory().getViewers())) {
+                viewer.closeInventory();
+            }
+            chest.checkContents();
+            dirty |= chest.isChanged();
+        });
+        if (dirty) {
+            save();
+        }
+    }
+
+    /**
+     * Copies the changed virtual chests on the main thread, then encodes all of them and
+     * writes the file on the storage thread
+     */
+    private void save() {
+        dirty = false;
+
+        chests.forEach((key, chest) -> {
+            if (chest.isChanged() || !saved.containsKey(key)) {
+                SavedChest copy = copy(key, chest);
+                if (copy != null) {
+                    saved.put(key, copy);
+                }
+            }
+        });
+        List<SavedChest> copies = new ArrayList<>(saved.size());
+        saved.forEach((key, copy) -> copies.add(copy));
+
+        chestManager.runOnStorageThread(() -> {
+            try {
+                AtomicFiles.write(file, encode(copies));
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save virtual death chests: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Copies a virtual chest for saving and marks it as saved
+     *
+     * @param key The registry key
+     * @param chest The virtual chest
+     * @return The copy, or null if the chest's world is unknown
+     */
+    private SavedChest copy(long key, VirtualChest chest) {
+        String worldName = registry.getWorldName(key);
+        if (worldName == null) {
+            return null;
+        }
+
+        ChestData chestData = chest.getChestData();
+        return new SavedChest(worldName, ChestRegistry.blockX(key), ChestRegistry.blockY(key), ChestRegistry.blockZ(key),
+            chestData.getOwnerUUID(), chest.getOwnerName(), chest.getExperience(), chestData.getExpiryTime(),
+            chest.getInventory().getSize(), chest.saveContents());
+    }
+
+    /**
+     * Encodes copies of virtual chests as virtual-chests.yml
+     *
+     * @param copies The copies
+     * @return The file contents
+     */
+    private static byte[] encode(List<SavedChest> copies) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        for (int i = 0; i < copies.size(); i++) {
+            SavedChest copy = copies.get(i);
+            ConfigurationSection section = yaml.createSection("chests." + i);
+            section.set("world", copy.worldName());
+            section.set("x", copy.x());
+            section.set("y", copy.y());
+            section.set("z", copy.z());
+            section.set("owner", copy.owner().toString());
+            section.set("owner-name", copy.ownerName());
+            section.set("experience", copy.experience());
+            section.set("expiry-time", copy.expiryTime());
+            section.set("size", copy.size());
+
+            ItemStack[] contents = copy.contents();
+            for (int slot = 0; slot < contents.length; slot++) {
+                if (contents[slot] != null && contents[slot].getType() != Material.AIR) {
+                    section.set("items." + slot, contents[slot]);
+                }
+            }
+        }
+        return yaml.saveToString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the stored virtual chests and connects them to the chest registry
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        ConfigurationSection section = yaml.getConfigurationSection("chests");
+        if (section == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String id : section.getKeys(false)) {
+            ConfigurationSection entry = section.getConfigurationSection(id);
+            if (entry == null) {
+                continue;
+            }
+
+            try {
+                String worldName = entry.getString("world");
+                int x = entry.getInt("x");
+                int y = entry.getInt("y");
+                int z = entry.getInt("z");
+                UUID owner = UUID.fromString(entry.getString("owner"));
+                long expiryTime = entry.getLong("expiry-time");
+                if (worldName == null || !ChestRegistry.isPackable(x, y, z) || (expiryTime > 0 && expiryTime < now)) {
+                    continue;
+                }
+
+                long key = registry.assignKey(worldName, x, y, z);
+                ChestData chestData = registry.get(key);
+                if (chestData == null) {
+                    if (config.isPersistentStorageEnabled() && !chestManager.loadsChestsOnDemand()) {
+                        // The chest storage has every chest, so this one was removed after the last save
+                        continue;
+                    }
+                    chestData = new ChestData(owner, entry.getInt("experience"), expiryTime);
+                }
+
+                String ownerName = entry.getString("owner-name", "");
+                int size = Math.max(9, Math.min(MAX_SIZE, entry.getInt("size", MAX_SIZE) / 9 * 9));
+                VirtualChest chest = new VirtualChest(key, chestData, ownerName, size, getTitle(ownerName),
+                    entry.getInt("experience"));
+
+                ConfigurationSection items = entry.getConfigurationSection("items");
+                if (items != null) {
+                    for (String slot : items.getKeys(false)) {
+                        int index = Integer.parseInt(slot);
+                        if (index >= 0 && index < size) {
+                            chest.getInventory().setItem(index, items.getItemStack(slot));
+                        }
+                    }
+                }
+
+                chests.put(key, chest);
+                chestData.setVirtual(true);
+                chestData.setVerified(true);
+
+                // Loaded chests match the file, so they are only copied again once they change
+                SavedChest copy = new SavedChest(worldName, x, y, z, chestData.getOwnerUUID(), ownerName,
+                    chest.getExperience(), chestData.getExpiryTime(), size, chest.saveContents());
+                saved.put(key, copy);
+
+                // Without chest storage the registry starts empty; storages that load on
+                // demand register the chest once its region loads
+                if (!config.isPersistentStorageEnabled()) {
+                    chestManager.registerChest(worldName, x, y, z, chestData);
+                }
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Skipping invalid virtual death chest entry " + id + ": " + e.getMessage());
+            }
+        }
+
+        plugin.getLogger().info("Loaded " + chests.size() + " virtual death chests.");
+    }
+
+    /**
+     * Gets the inventory title of a virtual chest
+     *
+     * @param ownerName The name of the owner
+     * @return The inventory title
+     */
+    private String getTitle(String ownerName) {
+        if (config.shouldNameChest() && ownerName != null && !ownerName.isEmpty()) {
+            return ownerName + "'s Death Chest";
+        }
+        return "Death Chest";
+    }
+}
@@ -0,0 +1,59 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for replacing files without ever leaving a half-written file behind
+ */
+public final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Replaces a file's contents atomically: the data is written to a temporary file
+     * next to the target, flushed to disk, and then renamed over the target
+     *
+     * @param target The file to replace
+     * @param data The new contents
+     * @throws IOException If the file could not be written
+     */
+    public static void write(File target, byte[] data) throws IOException {
+        Path targetPath = target.toPath();
+        Path tempPath = targetPath.resolveSibling(target.getName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Some file systems cannot rename atomically; a plain replace is the best we can do
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes a file if it exists
+     *
+     * @param target The file to delete
+     * @throws IOException If the file exists but could not be deleted
+     */
+    public static void delete(File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+    }
+}
@@ -0,0 +1,274 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Append-only log of registry changes made since the last full snapshot
+ * <p>
+ * Every registration, removal and tombstone change is encoded on the main thread as
+ * a small binary record into an in-memory buffer. The buffer is drained periodically
+ * and appended to chests.journal on the storage thread, so a crash loses at most one
+ * flush interval. Once the journal grows past a threshold it is compacted: a full
+ * snapshot is written and the journal is truncated.
+ * <p>
+ * Record keys use the registry's world indexes, which are only stable for one run,
+ * so each journal declares a world the first time one of its records refers to it.
+ * <p>
+ * The encoding methods must be called on the main thread; {@link #append(byte[])},
+ * {@link #truncate()}, {@link #close()} and {@link #replay(ChestStorage.Loader)} must be called
+ * on the storage thread (or before it starts).
+ */
+public class ChestJournal implements ChestRegistry.ChangeListener, TombstoneQueue.ChangeListener {
+    private static final int MAGIC = 0x46444A31; // "FDJ1"
+
+    private static final byte OP_WORLD = 1;
+    private static final byte OP_PUT = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final byte OP_TOMBSTONE = 4;
+    private static final byte OP_TOMBSTONE_REMOVE = 5;
+
+    private final File file;
+    private final ChestRegistry registry;
+
+    // Main thread state
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1024);
+    private final DataOutputStream out = new DataOutputStream(pending);
+    private final boolean[] worldsDeclared = new boolean[256];
+    private long size;
+
+    // Storage thread state
+    private FileChannel channel;
+
+    /**
+     * Creates a new ChestJournal
+     *
+     * @param dataFolder The plugin data folder
+     * @param registry The chest registry, used to resolve world names
+     */
+    public ChestJournal(File dataFolder, ChestRegistry registry) {
+        this.file = new File(dataFolder, "chests.journal");
+        this.registry = registry;
+    }
+
+    @Override
+    public void chestRegistered(long key, ChestData chestData) {
+        UUID owner = chestData.getOwnerUUID();
+        try {
+            declareWorld(key);
+            out.writeByte(OP_PUT);
+            out.writeLong(key);
+            out.writeLong(owner.getMostSignificantBits());
+            out.writeLong(owner.getLeastSignificantBits());
+            out.writeInt(chestData.getExperience());
+            out.writeLong(chestData.getExpiryTime());
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream cannot fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void chestRemoved(long key) {
+        writeKeyRecord(OP_REMOVE, key);
+    }
+
+    @Override
+    public void tombstoneAdded(long key) {
+        writeKeyRecord(OP_TOMBSTONE, key);
+    }
+
+    @Override
+    public void tombstoneRemoved(long key) {
+        writeKeyRecord(OP_TOMBSTONE_REMOVE, key);
+    }
+
+    private void writeKeyRecord(byte op, long key) {
+        try {
+            declareWorld(key);
+            out.writeByte(op);
+            out.writeLong(key);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void declareWorld(long key) throws IOException {
+        int worldIndex = ChestRegistry.worldIndex(key);
+        if (!worldsDeclared[worldIndex]) {
+            worldsDeclared[worldIndex] = true;
+            out.writeByte(OP_WORLD);
+            out.writeByte(worldIndex);
+            out.writeUTF(registry.getWorldName(key));
+        }
+    }
+
+    /**
+     * Takes the records encoded since the last drain
+     *
+     * @return The encoded records, or an empty array if there are none
+     */
+    public byte[] drain() {
+        byte[] data = pending.toByteArray();
+        pending.reset();
+        size += data.length;
+        return data;
+    }
+
+    /**
+     * Gets the number of bytes drained since the journal was last compacted
+     *
+     * @return The journal size in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Marks the start of a compaction. Records encoded from now on belong to the
+     * journal that follows the snapshot, so they declare their worlds again.
+     * Drain pending records before calling this.
+     */
+    public void startCompaction() {
+        Arrays.fill(worldsDeclared, false);
+        size = 0;
+    }
+
+    /**
+     * Appends drained records to the journal file and flushes them to disk
+     *
+     * @param data The drained records
+     * @throws IOException If the journal could not be written
+     */
+    public void append(byte[] data) throws IOException {
+        if (data.length == 0) {
+            return;
+        }
+
+        FileChannel journal = channel();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journal.force(false);
+    }
+
+    /**
+     * Empties the journal file after a snapshot has been written
+     *
+     * @throws IOException If the journal could not be truncated
+     */
+    public void truncate() throws IOException {
+        FileChannel journal = channel();
+        journal.truncate(0);
+        journal.position(0);
+        writeHeader(journal);
+        journal.force(true);
+    }
+
+    /**
+     * Closes the journal file
+     *
+     * @throws IOException If the file could not be closed
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                writeHeader(channel);
+            }
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    private void writeHeader(FileChannel journal) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+    }
+
+    /**
+     * Reads every complete record in the journal file. A record cut short by a crash
+     * ends the replay; everything before it is kept.
+     *
+     * @param loader The callback for each record
+     * @return The number of records replayed
+     * @throws IOException If the journal could not be read
+     */
+    public int replay(ChestStorage.Loader loader) throws IOException {
+        if (!file.exists() || file.length() < Integer.BYTES) {
+            return 0;
+        }
+
+        String[] worldNames = new String[256];
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a death chest journal: " + file.getName());
+            }
+
+            while (true) {
+                int op = in.read();
+                if (op == -1) {
+                    break;
+                }
+
+                if (op == OP_WORLD) {
+                    worldNames[in.readUnsignedByte()] = in.readUTF();
+                    continue;
+                }
+
+                long key = in.readLong();
+                String worldName = worldNames[ChestRegistry.worldIndex(key)];
+                int x = ChestRegistry.blockX(key);
+                int y = ChestRegistry.blockY(key);
+                int z = ChestRegistry.blockZ(key);
+                if (worldName == null) {
+                    throw new IOException("Journal record refers to an undeclared world");
+                }
+
+                switch (op) {
+                    case OP_PUT -> {
+                        UUID owner = new UUID(in.readLong(), in.readLong());
+                        int experience = in.readInt();
+                        long expiryTime = in.readLong();
+                        loader.put(worldName, x, y, z, owner, experience, expiryTime);
+                    }
+                    case OP_REMOVE -> loader.remove(worldName, x, y, z);
+                    case OP_TOMBSTONE -> loader.tombstone(worldName, x, y, z, true);
+                    case OP_TOMBSTONE_REMOVE -> loader.tombstone(worldName, x, y, z, false);
+                    default -> throw new IOException("Unknown journal record type " + op);
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            // Torn final record from a crash mid-write
+        }
+        return count;
+    }
+}
@@ -0,0 +1,144 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+
+import java.util.UUID;
+
+/**
+ * Point-in-time copy of the tracked death chests, safe to hand to another thread
+ * <p>
+ * The copy is taken on the main thread into flat primitive arrays, one slot per
+ * chest, so capturing it costs a single pass over the registry and allocates no
+ * per-chest objects. Serialization can then happen anywhere.
+ */
+public final class ChestSnapshot {
+    private final String[] worldNames;
+    private final long[] keys;
+    private final long[] ownerMost;
+    private final long[] ownerLeast;
+    private final int[] experience;
+    private final long[] expiryTimes;
+    private final long[] tombstones;
+    private final long takenAt;
+
+    private ChestSnapshot(String[] worldNames, int size, long[] tombstones) {
+        this.worldNames = worldNames;
+        this.keys = new long[size];
+        this.ownerMost = new long[size];
+        this.ownerLeast = new long[size];
+        this.experience = new int[size];
+        this.expiryTimes = new long[size];
+        this.tombstones = tombstones;
+        this.takenAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Copies the current state of the registry. Must be called on the main thread.
+     *
+     * @param registry The chest registry
+     * @param tombstones The registry keys of chests awaiting block removal
+     * @return The snapshot
+     */
+    public static ChestSnapshot capture(ChestRegistry registry, long[] tombstones) {
+        ChestSnapshot snapshot = new ChestSnapshot(registry.copyWorldNames(), registry.size(), tombstones);
+        int[] index = {0};
+        registry.forEach((key, chestData) -> {
+            int i = index[0]++;
+            UUID owner = chestData.getOwnerUUID();
+            snapshot.keys[i] = key;
+            snapshot.ownerMost[i] = owner.getMostSignificantBits();
+            snapshot.ownerLeast[i] = owner.getLeastSignificantBits();
+            snapshot.experience[i] = chestData.getExperience();
+            snapshot.expiryTimes[i] = chestData.getExpiryTime();
+        });
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of chests in the snapshot
+     *
+     * @return The number of chests
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the registry key of a chest
+     *
+     * @param index The chest index
+     * @return The packed key
+     */
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets the name of the world a key belongs to
+     *
+     * @param key The packed key
+     * @return The world name, or null if the key is invalid
+     */
+    public String getWorldName(long key) {
+        int worldIndex = ChestRegistry.worldIndex(key);
+        return worldIndex > 0 && worldIndex < worldNames.length ? worldNames[worldIndex] : null;
+    }
+
+    /**
+     * Gets the owner of a chest
+     *
+     * @param index The chest index
+     * @return The owner's UUID
+     */
+    public UUID getOwner(int index) {
+        return new UUID(ownerMost[index], ownerLeast[index]);
+    }
+
+    /**
+     * Gets the experience stored in a chest
+     *
+     * @param index The chest index
+     * @return The stored experience
+     */
+    public int getExperience(int index) {
+        return experience[index];
+    }
+
+    /**
+     * Gets the expiry time of a chest
+     *
+     * @param index The chest index
+     * @return The expiry time in milliseconds, or a value of 0 or less for no expiry
+     */
+    public long getExpiryTime(int index) {
+        return expiryTimes[index];
+    }
+
+    /**
+     * Checks if a chest had already expired when the snapshot was taken
+     *
+     * @param index The chest index
+     * @return true if the chest is expired
+     */
+    public boolean isExpired(int index) {
+        return expiryTimes[index] > 0 && expiryTimes[index] < takenAt;
+    }
+
+    /**
+     * Gets the registry keys of chests awaiting block removal
+     *
+     * @return The tombstone keys
+     */
+    public long[] getTombstones() {
+        return tombstones;
+    }
+
+    /**
+     * Gets the time the snapshot was taken
+     *
+     * @return The time in milliseconds
+     */
+    public long getTakenAt() {
+        return takenAt;
+    }
+}
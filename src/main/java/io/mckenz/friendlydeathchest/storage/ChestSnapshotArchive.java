@@ -0,0 +1,328 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Rolling set of compressed registry snapshots in the snapshots folder, for
+ * point-in-time restores when the main storage is lost or damaged
+ * <p>
+ * Each snapshot is one file, snapshot-&lt;time&gt;.fds. An uncompressed header holds
+ * the time, counts, world table and body size, so snapshots can be listed and picked
+ * by reading headers alone. The body is Deflater-compressed and only inflated for the
+ * snapshot being restored. Only the newest snapshots are kept, which bounds disk use.
+ * <p>
+ * Body layout: per chest a world index byte, x, y, z, owner UUID as two longs,
+ * experience and expiry time; then per queued removal a world index byte, x, y, z.
+ * <p>
+ * Apart from replaying inflated records, methods do file I/O and must be called on
+ * the storage thread.
+ */
+public class ChestSnapshotArchive {
+    private static final int MAGIC = 0x46444353; // "FDCS"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".fds";
+
+    private final File folder;
+    private final Logger logger;
+    private final int retention;
+
+    /**
+     * Header of a stored snapshot
+     */
+    public static final class Entry {
+        private final File file;
+        private final long takenAt;
+        private final int chestCount;
+        private final int tombstoneCount;
+        private final String[] worldNames;
+        private final int bodyLength;
+
+        private Entry(File file, long takenAt, int chestCount, int tombstoneCount, String[] worldNames, int bodyLength) {
+            this.file = file;
+            this.takenAt = takenAt;
+            this.chestCount = chestCount;
+            this.tombstoneCount = tombstoneCount;
+            this.worldNames = worldNames;
+            this.bodyLength = bodyLength;
+        }
+
+        /**
+         * Gets the time the snapshot was taken
+         *
+         * @return The time in milliseconds
+         */
+        public long getTakenAt() {
+            return takenAt;
+        }
+
+        /**
+         * Gets the number of chests in the snapshot
+         *
+         * @return The number of chests
+         */
+        public int getChestCount() {
+            return chestCount;
+        }
+
+        /**
+         * Gets the number of queued removals in the snapshot
+         *
+         * @return The number of queued removals
+         */
+        public int getTombstoneCount() {
+            return tombstoneCount;
+        }
+    }
+
+    /**
+     * Creates a new ChestSnapshotArchive
+     *
+     * @param dataFolder The plugin data folder
+     * @param logger The logger for unreadable snapshots
+     * @param retention The number of snapshots to keep
+     */
+    public ChestSnapshotArchive(File dataFolder, Logger logger, int retention) {
+        this.folder = new File(dataFolder, "snapshots");
+        this.logger = logger;
+        this.retention = Math.max(1, retention);
+    }
+
+    /**
+     * Writes a snapshot and deletes the oldest ones beyond the retention count
+     *
+     * @param snapshot The snapshot to write
+     * @throws IOException If the snapshot could not be written
+     */
+    public void write(ChestSnapshot snapshot) throws IOException {
+        // Worlds are renumbered densely, so the header only lists worlds the snapshot uses
+        int[] worldIds = new int[256];
+        List<String> worldNames = new ArrayList<>();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 + snapshot.size() * 16);
+        int chestCount = 0;
+        int tombstoneCount = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(body, deflater, 8192))) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (snapshot.isExpired(i)) {
+                    continue;
+                }
+                long key = snapshot.getKey(i);
+                int worldId = worldId(snapshot, key, worldIds, worldNames);
+                if (worldId == 0) {
+                    continue;
+                }
+                UUID owner = snapshot.getOwner(i);
+                out.writeByte(worldId);
+                out.writeInt(ChestRegistry.blockX(key));
+                out.writeInt(ChestRegistry.blockY(key));
+                out.writeInt(ChestRegistry.blockZ(key));
+                out.writeLong(owner.getMostSignificantBits());
+                out.writeLong(owner.getLeastSignificantBits());
+                out.writeInt(snapshot.getExperience(i));
+                out.writeLong(snapshot.getExpiryTime(i));
+                chestCount++;
+            }
+            for (long key : snapshot.getTombstones()) {
+                int worldId = worldId(snapshot, key, worldIds, worldNames);
+                if (worldId == 0) {
+                    continue;
+                }
+                out.writeByte(worldId);
+                out.writeInt(ChestRegistry.blockX(key));
+                out.writeInt(ChestRegistry.blockY(key));
+                out.writeInt(ChestRegistry.blockZ(key));
+                tombstoneCount++;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(128 + body.size());
+        try (DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.getTakenAt());
+            out.writeInt(chestCount);
+            out.writeInt(tombstoneCount);
+            out.writeByte(worldNames.size());
+            for (String worldName : worldNames) {
+                out.writeUTF(worldName);
+            }
+            out.writeInt(body.size());
+            body.writeTo(out);
+        }
+
+        folder.mkdirs();
+        AtomicFiles.write(new File(folder, PREFIX + snapshot.getTakenAt() + SUFFIX), file.toByteArray());
+        prune();
+    }
+
+    private static int worldId(ChestSnapshot snapshot, long key, int[] worldIds, List<String> worldNames) {
+        int worldIndex = ChestRegistry.worldIndex(key);
+        if (worldIds[worldIndex] == 0) {
+            String worldName = snapshot.getWorldName(key);
+            if (worldName == null) {
+                return 0;
+            }
+            worldNames.add(worldName);
+            worldIds[worldIndex] = worldNames.size();
+        }
+        return worldIds[worldIndex];
+    }
+
+    /**
+     * Deletes the oldest snapshots beyond the retention count
+     */
+    private void prune() {
+        List<Entry> entries = list();
+        for (int i = 0; i < entries.size() - retention; i++) {
+            try {
+                AtomicFiles.delete(entries.get(i).file);
+            } catch (IOException e) {
+                logger.warning("Failed to delete old death chest snapshot " + entries.get(i).file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lists the stored snapshots, reading only their headers
+     *
+     * @return The snapshots, oldest first
+     */
+    public List<Entry> list() {
+        List<Entry> entries = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return entries;
+        }
+
+        for (File file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024))) {
+                entries.add(readHeader(file, in));
+            } catch (IOException e) {
+                logger.warning("Skipping unreadable death chest snapshot " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getTakenAt));
+        return entries;
+    }
+
+    /**
+     * Finds the newest snapshot taken at or before a time
+     *
+     * @param time The time in milliseconds
+     * @return The snapshot, or null if none is that old
+     */
+    public Entry find(long time) {
+        Entry found = null;
+        for (Entry entry : list()) {
+            if (entry.takenAt <= time) {
+                found = entry;
+            }
+        }
+        return found;
+    }
+
+    private static Entry readHeader(File file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a death chest snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        long takenAt = in.readLong();
+        int chestCount = in.readInt();
+        int tombstoneCount = in.readInt();
+        String[] worldNames = new String[in.readUnsignedByte() + 1];
+        for (int i = 1; i < worldNames.length; i++) {
+            worldNames[i] = in.readUTF();
+        }
+        int bodyLength = in.readInt();
+        return new Entry(file, takenAt, chestCount, tombstoneCount, worldNames, bodyLength);
+    }
+
+    /**
+     * Reads and inflates the body of a snapshot
+     *
+     * @param entry The snapshot
+     * @return The inflated records, for {@link #replay(Entry, byte[], ChestStorage.Loader)}
+     * @throws IOException If the snapshot could not be read
+     */
+    public byte[] readRecords(Entry entry) throws IOException {
+        byte[] compressed = new byte[entry.bodyLength];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry.file)))) {
+            readHeader(entry.file, in);
+            in.readFully(compressed);
+        }
+
+        byte[] records = new byte[entry.chestCount * 41 + entry.tombstoneCount * 13];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < records.length && !inflater.finished()) {
+                int inflated = inflater.inflate(records, length, records.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != records.length) {
+                throw new IOException("snapshot body is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("snapshot body is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        return records;
+    }
+
+    /**
+     * Passes inflated snapshot records to a loader. Does no file I/O, so it can run
+     * on the main thread.
+     *
+     * @param entry The snapshot the records were read from
+     * @param records The inflated records
+     * @param loader The callback for each chest and queued removal
+     */
+    public static void replay(Entry entry, byte[] records, ChestStorage.Loader loader) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(records))) {
+            for (int i = 0; i < entry.chestCount; i++) {
+                String worldName = entry.worldNames[in.readUnsignedByte()];
+                int x = in.readInt();
+                int y = in.readInt();
+                int z = in.readInt();
+                UUID owner = new UUID(in.readLong(), in.readLong());
+                loader.put(worldName, x, y, z, owner, in.readInt(), in.readLong());
+            }
+            for (int i = 0; i < entry.tombstoneCount; i++) {
+                loader.tombstone(entry.worldNames[in.readUnsignedByte()], in.readInt(), in.readInt(), in.readInt(), true);
+            }
+        } catch (IOException e) {
+            // The length was checked when the records were inflated
+            throw new IllegalStateException(e);
+        }
+    }
+}
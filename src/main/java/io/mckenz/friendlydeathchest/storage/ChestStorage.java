@@ -0,0 +1,119 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Persistence backend for death chests
+ * <p>
+ * The chest manager loads everything once at startup, then reports each change as it
+ * happens through the change listener callbacks. Implementations record changes on
+ * the main thread and perform the actual I/O on the storage thread they were given,
+ * when {@link #flush(ChestRegistry, TombstoneQueue)} hands the pending changes over.
+ */
+public interface ChestStorage extends ChestRegistry.ChangeListener, TombstoneQueue.ChangeListener {
+
+    /**
+     * Receives stored chests and queued removals. Entries are delivered in the order
+     * they were written, so a later entry for a position replaces an earlier one.
+     */
+    interface Loader {
+        /**
+         * @param worldName The world name
+         * @param x The block x coordinate
+         * @param y The block y coordinate
+         * @param z The block z coordinate
+         * @param owner The owner's UUID
+         * @param experience The stored experience
+         * @param expiryTime The expiry time in milliseconds
+         */
+        void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime);
+
+        /**
+         * @param worldName The world name
+         * @param x The block x coordinate
+         * @param y The block y coordinate
+         * @param z The block z coordinate
+         */
+        void remove(String worldName, int x, int y, int z);
+
+        /**
+         * @param worldName The world name
+         * @param x The block x coordinate
+         * @param y The block y coordinate
+         * @param z The block z coordinate
+         * @param queued true if the position is queued for block removal, false if it was taken off the queue
+         */
+        void tombstone(String worldName, int x, int y, int z, boolean queued);
+    }
+
+    /**
+     * Gets the name of the storage type, for log messages
+     *
+     * @return The storage type name
+     */
+    String getName();
+
+    /**
+     * Reads every stored chest and queued removal. Called once on the main thread at
+     * startup, before any change is reported.
+     *
+     * @param loader The callback for each stored entry
+     * @throws IOException If the storage could not be read
+     */
+    void load(Loader loader) throws IOException;
+
+    /**
+     * Checks if chests are loaded region by region as chunks load, rather than all
+     * at startup. Such storages only hold the chests of loaded regions in the registry.
+     *
+     * @return true if chests are loaded on demand
+     */
+    default boolean loadsOnDemand() {
+        return false;
+    }
+
+    /**
+     * Called on the main thread for every chunk load when chests are loaded on demand,
+     * including chunks already loaded at startup
+     *
+     * @param worldName The world name
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @param loader The callback for each chest loaded with the chunk's region
+     */
+    default void chunkLoaded(String worldName, int chunkX, int chunkZ, Loader loader) {
+    }
+
+    /**
+     * Called on the main thread for every chunk unload when chests are loaded on demand
+     *
+     * @param worldName The world name
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return The registry keys of chests and queued removals to stop tracking, because
+     *         their region has no loaded chunks left; their state has already been saved
+     */
+    default long[] chunkUnloaded(String worldName, int chunkX, int chunkZ) {
+        return new long[0];
+    }
+
+    /**
+     * Hands the changes recorded since the last flush to the storage thread.
+     * Called periodically on the main thread.
+     *
+     * @param registry The chest registry, for implementations that write full snapshots
+     * @param tombstones The queued removals, for implementations that write full snapshots
+     */
+    void flush(ChestRegistry registry, TombstoneQueue tombstones);
+
+    /**
+     * Hands the remaining changes to the storage thread and queues the release of any
+     * open files or connections. Called on the main thread at shutdown; the caller then
+     * waits for the storage thread to finish.
+     */
+    void close();
+}
@@ -0,0 +1,444 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+import io.mckenz.friendlydeathchest.utils.LongIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Stores death chests as fixed-width records in a memory-mapped file (chests.dat)
+ * <p>
+ * Every chest and queued removal owns one record slot. A change rewrites only its
+ * own slot in the mapped buffer, directly on the main thread; the storage thread
+ * just forces dirty pages to disk on each flush. Freed slots are chained into a
+ * free list and reused before the file grows. Loading is a single linear scan.
+ * <p>
+ * File layout: a {@value #HEADER_SIZE}-byte header (magic, version, record size,
+ * slots in use, free list head, world table) followed by {@value #RECORD_SIZE}-byte
+ * records:
+ * <pre>
+ *  0  byte  kind (0 = free, 1 = chest, 2 = queued removal)
+ *  1  byte  world id (index into the header's world table)
+ *  4  int   x (next free slot when the record is free)
+ *  8  int   y
+ * 12  int   z
+ * 16  long  owner UUID, most significant bits
+ * 24  long  owner UUID, least significant bits
+ * 32  int   experience
+ * 36  long  expiry time
+ * </pre>
+ */
+public class MappedChestStorage implements ChestStorage {
+    private static final int MAGIC = 0x46444342; // "FDCB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8192;
+    private static final int RECORD_SIZE = 44;
+    private static final int INITIAL_SLOTS = 256;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_RECORD_SIZE = 8;
+    private static final int OFFSET_HIGH_WATER = 12;
+    private static final int OFFSET_FREE_HEAD = 16;
+    private static final int OFFSET_WORLD_COUNT = 20;
+    private static final int OFFSET_WORLDS = 24;
+
+    private static final byte KIND_FREE = 0;
+    private static final byte KIND_CHEST = 1;
+    private static final byte KIND_TOMBSTONE = 2;
+
+    private final File file;
+    private final ChestRegistry registry;
+    private final Executor executor;
+    private final Logger logger;
+
+    private final LongIntHashMap chestSlots = new LongIntHashMap(256, -1);
+    private final LongIntHashMap tombstoneSlots = new LongIntHashMap(16, -1);
+    private final List<String> worldNames = new ArrayList<>();
+    private final int[] fileWorldIds = new int[256];
+    private int worldTableEnd = OFFSET_WORLDS;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int highWater;
+    private int freeHead = -1;
+    private boolean dirty;
+
+    /**
+     * Creates a new MappedChestStorage
+     *
+     * @param dataFolder The plugin data folder
+     * @param registry The chest registry, used to resolve keys after loading
+     * @param executor The storage thread
+     * @param logger The logger for storage errors
+     */
+    public MappedChestStorage(File dataFolder, ChestRegistry registry, Executor executor, Logger logger) {
+        this.file = new File(dataFolder, "chests.dat");
+        this.registry = registry;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        boolean created = !file.exists() || file.length() < HEADER_SIZE;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (created) {
+            map(INITIAL_SLOTS);
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_VERSION, VERSION);
+            buffer.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+            writeHeaderCounters();
+            buffer.putInt(OFFSET_WORLD_COUNT, 0);
+            dirty = true;
+            return;
+        }
+
+        map((int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE));
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException("Not a death chest store: " + file.getName());
+        }
+        readWorldTable();
+
+        // Walk every slot in use; the free list is rebuilt rather than trusted, so a
+        // crash between a slot write and the header update cannot lose slots
+        highWater = Math.min(buffer.getInt(OFFSET_HIGH_WATER), capacity);
+        freeHead = -1;
+        for (int slot = highWater - 1; slot >= 0; slot--) {
+            int offset = offset(slot);
+            byte kind = buffer.get(offset);
+            if (kind == KIND_CHEST || kind == KIND_TOMBSTONE) {
+                int worldId = buffer.get(offset + 1) & 0xFF;
+                String worldName = worldId < worldNames.size() ? worldNames.get(worldId) : null;
+                int x = buffer.getInt(offset + 4);
+                int y = buffer.getInt(offset + 8);
+                int z = buffer.getInt(offset + 12);
+                if (worldName != null && loadSlot(loader, slot, kind, worldName, x, y, z)) {
+                    continue;
+                }
+            }
+            release(slot);
+        }
+        writeHeaderCounters();
+    }
+
+    /**
+     * Passes one record to the loader and remembers its slot if the entry was kept
+     *
+     * @return true if the slot is still in use
+     */
+    private boolean loadSlot(Loader loader, int slot, byte kind, String worldName, int x, int y, int z) {
+        int offset = offset(slot);
+        if (kind == KIND_TOMBSTONE) {
+            loader.tombstone(worldName, x, y, z, true);
+            long key = registry.key(worldName, x, y, z);
+            if (key == 0) {
+                return false;
+            }
+            tombstoneSlots.put(key, slot);
+            return true;
+        }
+
+        UUID owner = new UUID(buffer.getLong(offset + 16), buffer.getLong(offset + 24));
+        loader.put(worldName, x, y, z, owner, buffer.getInt(offset + 32), buffer.getLong(offset + 36));
+
+        // The loader skips expired and invalid chests; their slots can be reused
+        long key = registry.key(worldName, x, y, z);
+        if (key == 0 || registry.get(key) == null) {
+            return false;
+        }
+        chestSlots.put(key, slot);
+        return true;
+    }
+
+    private void readWorldTable() {
+        worldTableEnd = readWorldTable(buffer, worldNames);
+    }
+
+    /**
+     * Reads the world table from a mapped header
+     *
+     * @param header The mapped file
+     * @param worldNames The list to add the world names to, in world id order
+     * @return The offset just past the table
+     */
+    private static int readWorldTable(ByteBuffer header, List<String> worldNames) {
+        int count = header.getInt(OFFSET_WORLD_COUNT);
+        int position = OFFSET_WORLDS;
+        for (int i = 0; i < count; i++) {
+            int length = header.getShort(position) & 0xFFFF;
+            byte[] name = new byte[length];
+            header.get(position + 2, name);
+            worldNames.add(new String(name, StandardCharsets.UTF_8));
+            position += 2 + length;
+        }
+        return position;
+    }
+
+    /**
+     * Reads every record of a store without changing it, for offline tools. Unlike
+     * {@link #load(Loader)}, expired chests are passed on and nothing is written back.
+     *
+     * @param file The chests.dat file
+     * @param loader The callback for each stored entry
+     * @param logger The logger for unreadable records
+     * @return The number of records passed to the loader
+     * @throws IOException If the file could not be read
+     */
+    public static int read(File file, Loader loader, Logger logger) throws IOException {
+        try (FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (readChannel.size() < HEADER_SIZE) {
+                throw new IOException("Not a death chest store: " + file.getName());
+            }
+            MappedByteBuffer mapped = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            if (mapped.getInt(OFFSET_MAGIC) != MAGIC || mapped.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException("Not a death chest store: " + file.getName());
+            }
+
+            List<String> worldNames = new ArrayList<>();
+            readWorldTable(mapped, worldNames);
+
+            int slots = (int) Math.min(mapped.getInt(OFFSET_HIGH_WATER), (readChannel.size() - HEADER_SIZE) / RECORD_SIZE);
+            int count = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                int offset = offset(slot);
+                byte kind = mapped.get(offset);
+                if (kind != KIND_CHEST && kind != KIND_TOMBSTONE) {
+                    continue;
+                }
+
+                int worldId = mapped.get(offset + 1) & 0xFF;
+                if (worldId >= worldNames.size()) {
+                    logger.warning("Skipping record in slot " + slot + " with unknown world id " + worldId);
+                    continue;
+                }
+                String worldName = worldNames.get(worldId);
+                int x = mapped.getInt(offset + 4);
+                int y = mapped.getInt(offset + 8);
+                int z = mapped.getInt(offset + 12);
+                if (kind == KIND_TOMBSTONE) {
+                    loader.tombstone(worldName, x, y, z, true);
+                } else {
+                    UUID owner = new UUID(mapped.getLong(offset + 16), mapped.getLong(offset + 24));
+                    loader.put(worldName, x, y, z, owner, mapped.getInt(offset + 32), mapped.getLong(offset + 36));
+                }
+                count++;
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void chestRegistered(long key, ChestData chestData) {
+        int worldId = fileWorldId(key);
+        if (worldId < 0) {
+            return;
+        }
+
+        int slot = chestSlots.get(key);
+        if (slot < 0) {
+            slot = allocate();
+            if (slot < 0) {
+                return;
+            }
+            chestSlots.put(key, slot);
+        }
+
+        UUID owner = chestData.getOwnerUUID();
+        int offset = offset(slot);
+        buffer.put(offset + 1, (byte) worldId);
+        buffer.putInt(offset + 4, ChestRegistry.blockX(key));
+        buffer.putInt(offset + 8, ChestRegistry.blockY(key));
+        buffer.putInt(offset + 12, ChestRegistry.blockZ(key));
+        buffer.putLong(offset + 16, owner.getMostSignificantBits());
+        buffer.putLong(offset + 24, owner.getLeastSignificantBits());
+        buffer.putInt(offset + 32, chestData.getExperience());
+        buffer.putLong(offset + 36, chestData.getExpiryTime());
+        // Mark the slot in use last, so a torn write leaves a free slot rather than a bad chest
+        buffer.put(offset, KIND_CHEST);
+        dirty = true;
+    }
+
+    @Override
+    public void chestRemoved(long key) {
+        int slot = chestSlots.remove(key);
+        if (slot >= 0) {
+            release(slot);
+            writeHeaderCounters();
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void tombstoneAdded(long key) {
+        int worldId = fileWorldId(key);
+        if (worldId < 0 || tombstoneSlots.get(key) >= 0) {
+            return;
+        }
+
+        int slot = allocate();
+        if (slot < 0) {
+            return;
+        }
+        tombstoneSlots.put(key, slot);
+
+        int offset = offset(slot);
+        buffer.put(offset + 1, (byte) worldId);
+        buffer.putInt(offset + 4, ChestRegistry.blockX(key));
+        buffer.putInt(offset + 8, ChestRegistry.blockY(key));
+        buffer.putInt(offset + 12, ChestRegistry.blockZ(key));
+        buffer.put(offset, KIND_TOMBSTONE);
+        dirty = true;
+    }
+
+    @Override
+    public void tombstoneRemoved(long key) {
+        int slot = tombstoneSlots.remove(key);
+        if (slot >= 0) {
+            release(slot);
+            writeHeaderCounters();
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void flush(ChestRegistry registry, TombstoneQueue tombstones) {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+
+        MappedByteBuffer mapped = buffer;
+        executor.execute(() -> mapped.force());
+    }
+
+    @Override
+    public void close() {
+        MappedByteBuffer mapped = buffer;
+        FileChannel openChannel = channel;
+        buffer = null;
+        channel = null;
+        if (openChannel == null) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                mapped.force();
+                openChannel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close " + file.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Takes a slot from the free list, or the next unused slot, growing the file if needed
+     *
+     * @return The slot index, or -1 if the file could not grow
+     */
+    private int allocate() {
+        int slot;
+        if (freeHead >= 0) {
+            slot = freeHead;
+            freeHead = buffer.getInt(offset(slot) + 4);
+        } else {
+            if (highWater == capacity) {
+                try {
+                    map(capacity * 2);
+                } catch (IOException e) {
+                    logger.severe("Failed to grow " + file.getName() + ": " + e.getMessage());
+                    return -1;
+                }
+            }
+            slot = highWater++;
+        }
+        writeHeaderCounters();
+        return slot;
+    }
+
+    /**
+     * Marks a slot free and pushes it onto the free list
+     *
+     * @param slot The slot index
+     */
+    private void release(int slot) {
+        int offset = offset(slot);
+        buffer.put(offset, KIND_FREE);
+        buffer.putInt(offset + 4, freeHead);
+        freeHead = slot;
+    }
+
+    /**
+     * Gets the file's world id for a key, adding the world to the header table if needed
+     *
+     * @param key The packed key
+     * @return The world id, or -1 if the world table is full
+     */
+    private int fileWorldId(long key) {
+        int worldIndex = ChestRegistry.worldIndex(key);
+        if (fileWorldIds[worldIndex] > 0) {
+            return fileWorldIds[worldIndex] - 1;
+        }
+
+        String worldName = registry.getWorldName(key);
+        int worldId = worldNames.indexOf(worldName);
+        if (worldId < 0) {
+            byte[] name = worldName.getBytes(StandardCharsets.UTF_8);
+            if (worldNames.size() == 255 || worldTableEnd + 2 + name.length > HEADER_SIZE) {
+                logger.severe("World table in " + file.getName() + " is full, chests in " + worldName + " are not saved");
+                return -1;
+            }
+            buffer.putShort(worldTableEnd, (short) name.length);
+            buffer.put(worldTableEnd + 2, name);
+            worldTableEnd += 2 + name.length;
+            worldId = worldNames.size();
+            worldNames.add(worldName);
+            buffer.putInt(OFFSET_WORLD_COUNT, worldNames.size());
+        }
+
+        fileWorldIds[worldIndex] = worldId + 1;
+        return worldId;
+    }
+
+    private void writeHeaderCounters() {
+        buffer.putInt(OFFSET_HIGH_WATER, highWater);
+        buffer.putInt(OFFSET_FREE_HEAD, freeHead);
+    }
+
+    /**
+     * Maps the file with room for a number of slots, extending it if needed
+     *
+     * @param slots The number of slots
+     * @throws IOException If the file could not be mapped
+     */
+    private void map(int slots) throws IOException {
+        capacity = Math.max(slots, INITIAL_SLOTS);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,189 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.DeathChestJob;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the death chest jobs that are still waiting in the pipeline on disk
+ * <p>
+ * The drops are taken from the death event before their chest exists, so a crash or
+ * kill in between would lose them. Each job is written to its own file in the
+ * pending-deaths folder when it is submitted and the file is deleted once the job is
+ * done, so a death costs one small write however many jobs are pending. Files are
+ * encoded and written on the journal's own thread, in order, so a delete never
+ * overtakes its write and the death event only copies the drops. The thread exists
+ * whether or not chest storage is enabled. Files left behind by a crash are replayed
+ * on the next start.
+ */
+public class PendingDeathJournal {
+    private final JavaPlugin plugin;
+    private final File folder;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FriendlyDeathChest-PendingDeaths");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new PendingDeathJournal
+     *
+     * @param plugin The plugin instance
+     */
+    public PendingDeathJournal(JavaPlugin plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "pending-deaths");
+    }
+
+    /**
+     * Writes a job to disk. Must be called on the main thread.
+     *
+     * @param job The job
+     */
+    public void record(DeathChestJob job) {
+        // Filling the chest changes the amounts of stacks that do not fit, so the thread gets copies
+        List<ItemStack> drops = new ArrayList<>(job.getDrops().size());
+        for (ItemStack item : job.getDrops()) {
+            if (item != null && item.getType() != Material.AIR) {
+                drops.add(item.clone());
+            }
+        }
+        Location location = job.getDeathLocation();
+        String worldName = location.getWorld().getName();
+        File file = getFile(job.getId());
+
+        execute(() -> {
+            YamlConfiguration yaml = new YamlConfiguration();
+            yaml.set("world", worldName);
+            yaml.set("x", location.getX());
+            yaml.set("y", location.getY());
+            yaml.set("z", location.getZ());
+            yaml.set("owner", job.getOwner().toString());
+            yaml.set("owner-name", job.getOwnerName());
+            yaml.set("experience", job.getExperience());
+            yaml.set("footprint", job.getFootprint());
+            for (int i = 0; i < drops.size(); i++) {
+                yaml.set("items." + i, drops.get(i));
+            }
+
+            try {
+                if (!folder.isDirectory() && !folder.mkdirs()) {
+                    throw new IOException("Could not create " + folder);
+                }
+                AtomicFiles.write(file, yaml.saveToString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to save pending death chest " + job.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Deletes a completed job from disk
+     *
+     * @param job The job
+     */
+    public void remove(DeathChestJob job) {
+        File file = getFile(job.getId());
+        execute(() -> {
+            try {
+                AtomicFiles.delete(file);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to delete pending death chest " + job.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Finishes the queued writes and deletes and stops the journal's thread. Called when
+     * the plugin is disabled, after the pending jobs are completed.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for pending death chests to finish writing.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads the jobs left on disk by the last run. Jobs whose world is not loaded are
+     * skipped and kept on disk for a later start.
+     *
+     * @return The jobs
+     */
+    public List<DeathChestJob> load() {
+        List<DeathChestJob> jobs = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null) {
+            return jobs;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                UUID id = UUID.fromString(name.substring(0, name.length() - 4));
+                YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+                String worldName = yaml.getString("world");
+                String owner = yaml.getString("owner");
+                if (owner == null) {
+                    throw new IllegalArgumentException("missing owner");
+                }
+                World world = worldName == null ? null : plugin.getServer().getWorld(worldName);
+                if (world == null) {
+                    plugin.getLogger().warning("Keeping pending death chest " + id + " until world " + worldName + " is loaded.");
+                    continue;
+                }
+
+                Location location = new Location(world, yaml.getDouble("x", 0), yaml.getDouble("y", 0), yaml.getDouble("z", 0));
+                List<ItemStack> drops = new ArrayList<>();
+                ConfigurationSection items = yaml.getConfigurationSection("items");
+                if (items != null) {
+                    for (String index : items.getKeys(false)) {
+                        ItemStack item = items.getItemStack(index);
+                        if (item != null) {
+                            drops.add(item);
+                        }
+                    }
+                }
+
+                jobs.add(new DeathChestJob(id, UUID.fromString(owner), yaml.getString("owner-name", ""),
+                    location, drops, yaml.getInt("experience"), yaml.getInt("footprint", 1)));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Skipping invalid pending death chest file " + name + ": " + e.getMessage());
+            }
+        }
+
+        return jobs;
+    }
+
+    private void execute(Runnable task) {
+        // Work arriving after close, e.g. from a job completed late, is done right away
+        if (!executor.isShutdown()) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private File getFile(UUID id) {
+        return new File(folder, id + ".yml");
+    }
+}
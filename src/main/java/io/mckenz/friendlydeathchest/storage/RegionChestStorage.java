@@ -0,0 +1,332 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongKeys;
+import io.mckenz.friendlydeathchest.utils.LongList;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Stores death chests in one file per world region, loaded only while the region is in use
+ * <p>
+ * Like the game's own region files, a region covers 32x32 chunks and is stored as
+ * regions/&lt;world&gt;/r.&lt;x&gt;.&lt;z&gt;.dat. A region's file is read when the first
+ * of its chunks loads, and written and dropped from memory when its last loaded
+ * chunk unloads, so memory and startup cost follow the loaded part of each world.
+ * Dirty regions are also written on every flush.
+ * <p>
+ * File layout: magic, record count, then per record a kind byte (1 = chest,
+ * 2 = queued removal), x, y, z, owner UUID as two longs, experience and expiry time.
+ */
+public class RegionChestStorage implements ChestStorage {
+    private static final int MAGIC = 0x46444352; // "FDCR"
+    private static final byte KIND_CHEST = 1;
+    private static final byte KIND_TOMBSTONE = 2;
+    private static final int REGION_SHIFT = 5;
+    private static final long[] NO_KEYS = new long[0];
+
+    private final File regionFolder;
+    private final ChestRegistry registry;
+    private final Executor executor;
+    private final Logger logger;
+
+    private final Map<String, LongHashMap<Region>> regions = new HashMap<>();
+    private final List<Region> dirtyRegions = new ArrayList<>();
+    private boolean loading;
+
+    // Region files queued for writing, so a region that reloads before its write lands
+    // reads the queued contents; an empty array means the file is being deleted
+    private final Map<File, byte[]> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * A region whose chests are currently tracked
+     */
+    private static final class Region {
+        final File file;
+        final LongList chests = new LongList(4);
+        final LongList tombstones = new LongList(2);
+        int loadedChunks;
+        boolean dirty;
+
+        Region(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Creates a new RegionChestStorage
+     *
+     * @param dataFolder The plugin data folder
+     * @param registry The chest registry, used to resolve keys
+     * @param executor The storage thread
+     * @param logger The logger for storage errors
+     */
+    public RegionChestStorage(File dataFolder, ChestRegistry registry, Executor executor, Logger logger) {
+        this.regionFolder = new File(dataFolder, "regions");
+        this.registry = registry;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "region";
+    }
+
+    @Override
+    public boolean loadsOnDemand() {
+        return true;
+    }
+
+    @Override
+    public void load(Loader loader) {
+        // Nothing is loaded up front; regions load with their chunks
+    }
+
+    @Override
+    public void chunkLoaded(String worldName, int chunkX, int chunkZ, Loader loader) {
+        LongHashMap<Region> worldRegions = regions.computeIfAbsent(worldName, name -> new LongHashMap<>());
+        long regionKey = LongKeys.pack(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        Region region = worldRegions.get(regionKey);
+        if (region == null) {
+            region = new Region(new File(new File(regionFolder, worldName),
+                "r." + (chunkX >> REGION_SHIFT) + "." + (chunkZ >> REGION_SHIFT) + ".dat"));
+            worldRegions.put(regionKey, region);
+            readRegion(worldName, region, loader);
+        }
+        region.loadedChunks++;
+    }
+
+    @Override
+    public long[] chunkUnloaded(String worldName, int chunkX, int chunkZ) {
+        LongHashMap<Region> worldRegions = regions.get(worldName);
+        long regionKey = LongKeys.pack(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+        Region region = worldRegions != null ? worldRegions.get(regionKey) : null;
+        if (region == null || --region.loadedChunks > 0) {
+            return NO_KEYS;
+        }
+
+        // Last chunk of the region unloaded: write it out and stop tracking it
+        worldRegions.remove(regionKey);
+        if (region.dirty) {
+            dirtyRegions.remove(region);
+            writeRegion(region);
+        }
+
+        long[] keys = new long[region.chests.size() + region.tombstones.size()];
+        System.arraycopy(region.chests.toArray(), 0, keys, 0, region.chests.size());
+        System.arraycopy(region.tombstones.toArray(), 0, keys, region.chests.size(), region.tombstones.size());
+        return keys;
+    }
+
+    private void readRegion(String worldName, Region region, Loader loader) {
+        byte[] pending = pendingWrites.get(region.file);
+        if (pending != null ? pending.length == 0 : !region.file.exists()) {
+            return;
+        }
+
+        loading = true;
+        try (DataInputStream in = new DataInputStream(openRegion(region.file, pending))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a death chest region file");
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                int x = in.readInt();
+                int y = in.readInt();
+                int z = in.readInt();
+                UUID owner = new UUID(in.readLong(), in.readLong());
+                int experience = in.readInt();
+                long expiryTime = in.readLong();
+
+                if (kind == KIND_TOMBSTONE) {
+                    loader.tombstone(worldName, x, y, z, true);
+                    long key = registry.key(worldName, x, y, z);
+                    if (key != 0) {
+                        region.tombstones.add(key);
+                    }
+                } else if (expiryTime > 0 && expiryTime < System.currentTimeMillis()) {
+                    // Expired while the region was unloaded: the block still has to be cleared
+                    loader.tombstone(worldName, x, y, z, true);
+                    long key = registry.key(worldName, x, y, z);
+                    if (key != 0) {
+                        region.tombstones.add(key);
+                    }
+                    markDirty(region);
+                } else {
+                    loader.put(worldName, x, y, z, owner, experience, expiryTime);
+                    long key = registry.key(worldName, x, y, z);
+                    if (key != 0 && registry.get(key) != null) {
+                        region.chests.add(key);
+                    } else {
+                        // Dropped on load, so the file is out of date
+                        markDirty(region);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read " + region.file.getPath() + ": " + e.getMessage());
+        } finally {
+            loading = false;
+        }
+    }
+
+    private static InputStream openRegion(File file, byte[] pending) throws IOException {
+        return pending != null ? new ByteArrayInputStream(pending) : new BufferedInputStream(new FileInputStream(file));
+    }
+
+    @Override
+    public void chestRegistered(long key, ChestData chestData) {
+        Region region = regionOf(key);
+        if (region != null && !loading) {
+            if (!region.chests.contains(key)) {
+                region.chests.add(key);
+            }
+            markDirty(region);
+        }
+    }
+
+    @Override
+    public void chestRemoved(long key) {
+        // Removals for regions that are no longer tracked are evictions, not deletions
+        Region region = regionOf(key);
+        if (region != null && !loading && region.chests.removeValue(key)) {
+            markDirty(region);
+        }
+    }
+
+    @Override
+    public void tombstoneAdded(long key) {
+        Region region = regionOf(key);
+        if (region != null && !loading && !region.tombstones.contains(key)) {
+            region.tombstones.add(key);
+            markDirty(region);
+        }
+    }
+
+    @Override
+    public void tombstoneRemoved(long key) {
+        Region region = regionOf(key);
+        if (region != null && !loading && region.tombstones.removeValue(key)) {
+            markDirty(region);
+        }
+    }
+
+    private Region regionOf(long key) {
+        LongHashMap<Region> worldRegions = regions.get(registry.getWorldName(key));
+        if (worldRegions == null) {
+            return null;
+        }
+        return worldRegions.get(LongKeys.pack(ChestRegistry.blockX(key) >> (4 + REGION_SHIFT),
+            ChestRegistry.blockZ(key) >> (4 + REGION_SHIFT)));
+    }
+
+    private void markDirty(Region region) {
+        if (!region.dirty) {
+            region.dirty = true;
+            dirtyRegions.add(region);
+        }
+    }
+
+    @Override
+    public void flush(ChestRegistry registry, TombstoneQueue tombstones) {
+        for (Region region : dirtyRegions) {
+            writeRegion(region);
+        }
+        dirtyRegions.clear();
+    }
+
+    @Override
+    public void close() {
+        flush(registry, null);
+    }
+
+    /**
+     * Encodes a region on the main thread and writes it on the storage thread
+     *
+     * @param region The region to write
+     */
+    private void writeRegion(Region region) {
+        region.dirty = false;
+        File file = region.file;
+        int count = region.chests.size() + region.tombstones.size();
+        if (count == 0) {
+            byte[] deleted = new byte[0];
+            pendingWrites.put(file, deleted);
+            executor.execute(() -> {
+                try {
+                    AtomicFiles.delete(file);
+                } catch (IOException e) {
+                    logger.warning("Failed to delete " + file.getPath() + ": " + e.getMessage());
+                } finally {
+                    pendingWrites.remove(file, deleted);
+                }
+            });
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + count * 45);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            for (int i = 0; i < region.chests.size(); i++) {
+                long key = region.chests.get(i);
+                ChestData chestData = registry.get(key);
+                writeRecord(out, KIND_CHEST, key, chestData.getOwnerUUID().getMostSignificantBits(),
+                    chestData.getOwnerUUID().getLeastSignificantBits(), chestData.getExperience(), chestData.getExpiryTime());
+            }
+            for (int i = 0; i < region.tombstones.size(); i++) {
+                writeRecord(out, KIND_TOMBSTONE, region.tombstones.get(i), 0, 0, 0, 0);
+            }
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream cannot fail
+            throw new IllegalStateException(e);
+        }
+
+        byte[] data = bytes.toByteArray();
+        pendingWrites.put(file, data);
+        executor.execute(() -> {
+            try {
+                file.getParentFile().mkdirs();
+                AtomicFiles.write(file, data);
+            } catch (IOException e) {
+                logger.severe("Failed to save " + file.getPath() + ": " + e.getMessage());
+            } finally {
+                pendingWrites.remove(file, data);
+            }
+        });
+    }
+
+    private static void writeRecord(DataOutputStream out, byte kind, long key, long ownerMost, long ownerLeast,
+                                    int experience, long expiryTime) throws IOException {
+        out.writeByte(kind);
+        out.writeInt(ChestRegistry.blockX(key));
+        out.writeInt(ChestRegistry.blockY(key));
+        out.writeInt(ChestRegistry.blockZ(key));
+        out.writeLong(ownerMost);
+        out.writeLong(ownerLeast);
+        out.writeInt(experience);
+        out.writeLong(expiryTime);
+    }
+}
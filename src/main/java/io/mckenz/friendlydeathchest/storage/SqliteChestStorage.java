@@ -0,0 +1,354 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Stores death chests in an embedded SQLite database (chests.db)
+ * <p>
+ * Each change becomes a single row insert or delete, batched into one transaction
+ * per flush, so saving never rewrites the rest of the data. Rows carry indexed owner,
+ * expiry and chunk columns, which the storage tool queries to list one owner's chests
+ * or the chests in one chunk, and to prune expired chests, without reading the whole
+ * table.
+ * <p>
+ * Uses the SQLite JDBC driver bundled with the server. After {@link #load(Loader)} the
+ * connection belongs to the storage thread, so the query methods must run on it.
+ */
+public class SqliteChestStorage implements ChestStorage {
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    private static final byte TOMBSTONE_ADD = 2;
+    private static final byte TOMBSTONE_REMOVE = 3;
+
+    private final File databaseFile;
+    private final ChestRegistry registry;
+    private final Executor executor;
+    private final Logger logger;
+
+    // Main thread state
+    private List<Change> pending = new ArrayList<>();
+
+    // Storage thread state (opened on the main thread during load)
+    private Connection connection;
+
+    /**
+     * A recorded change waiting to be written
+     */
+    private static final class Change {
+        final byte type;
+        final String worldName;
+        final int x;
+        final int y;
+        final int z;
+        final UUID owner;
+        final int experience;
+        final long expiryTime;
+
+        Change(byte type, String worldName, long key, UUID owner, int experience, long expiryTime) {
+            this.type = type;
+            this.worldName = worldName;
+            this.x = ChestRegistry.blockX(key);
+            this.y = ChestRegistry.blockY(key);
+            this.z = ChestRegistry.blockZ(key);
+            this.owner = owner;
+            this.experience = experience;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    /**
+     * Creates a new SqliteChestStorage
+     *
+     * @param dataFolder The plugin data folder
+     * @param registry The chest registry, used to resolve world names
+     * @param executor The storage thread
+     * @param logger The logger for storage errors
+     */
+    public SqliteChestStorage(File dataFolder, ChestRegistry registry, Executor executor, Logger logger) {
+        this.databaseFile = new File(dataFolder, "chests.db");
+        this.registry = registry;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    /**
+     * Checks if the SQLite JDBC driver is available
+     *
+     * @return true if the driver can be loaded
+     */
+    public static boolean isDriverAvailable() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        try {
+            open();
+
+            // Expired rows are never needed again
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM chests WHERE expiry_time > 0 AND expiry_time < ?")) {
+                delete.setLong(1, System.currentTimeMillis());
+                delete.executeUpdate();
+            }
+
+            read(loader);
+        } catch (SQLException e) {
+            throw new IOException("Failed to read " + databaseFile.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads every stored chest and queued removal without changing the database.
+     * The database must be open.
+     *
+     * @param loader The callback for each stored entry
+     * @throws SQLException If the query failed
+     */
+    public void read(Loader loader) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT world, x, y, z, owner, experience, expiry_time FROM chests")) {
+                readChests(rows, loader);
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT world, x, y, z FROM tombstones")) {
+                while (rows.next()) {
+                    loader.tombstone(rows.getString(1), rows.getInt(2), rows.getInt(3), rows.getInt(4), true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the database and creates the schema if needed
+     *
+     * @throws SQLException If the database could not be opened
+     */
+    public void open() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS chests ("
+                + "world TEXT NOT NULL, x INTEGER NOT NULL, y INTEGER NOT NULL, z INTEGER NOT NULL, "
+                + "chunk_x INTEGER NOT NULL, chunk_z INTEGER NOT NULL, owner TEXT NOT NULL, "
+                + "experience INTEGER NOT NULL, expiry_time INTEGER NOT NULL, "
+                + "PRIMARY KEY (world, x, y, z))");
+            statement.execute("CREATE INDEX IF NOT EXISTS chests_owner ON chests (owner)");
+            statement.execute("CREATE INDEX IF NOT EXISTS chests_expiry ON chests (expiry_time)");
+            statement.execute("CREATE INDEX IF NOT EXISTS chests_chunk ON chests (world, chunk_x, chunk_z)");
+            statement.execute("CREATE TABLE IF NOT EXISTS tombstones ("
+                + "world TEXT NOT NULL, x INTEGER NOT NULL, y INTEGER NOT NULL, z INTEGER NOT NULL, "
+                + "PRIMARY KEY (world, x, y, z))");
+        }
+        connection.setAutoCommit(false);
+        connection.commit();
+    }
+
+    /**
+     * Reads the chests owned by a player
+     *
+     * @param owner The owner's UUID
+     * @param loader The callback for each chest
+     * @throws SQLException If the query failed
+     */
+    public void loadOwner(UUID owner, Loader loader) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT world, x, y, z, owner, experience, expiry_time FROM chests WHERE owner = ?")) {
+            query.setString(1, owner.toString());
+            try (ResultSet rows = query.executeQuery()) {
+                readChests(rows, loader);
+            }
+        }
+    }
+
+    /**
+     * Reads the chests in a chunk
+     *
+     * @param worldName The world name
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @param loader The callback for each chest
+     * @throws SQLException If the query failed
+     */
+    public void loadChunk(String worldName, int chunkX, int chunkZ, Loader loader) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT world, x, y, z, owner, experience, expiry_time FROM chests "
+                + "WHERE world = ? AND chunk_x = ? AND chunk_z = ?")) {
+            query.setString(1, worldName);
+            query.setInt(2, chunkX);
+            query.setInt(3, chunkZ);
+            try (ResultSet rows = query.executeQuery()) {
+                readChests(rows, loader);
+            }
+        }
+    }
+
+    /**
+     * Reads the chests that expire before a time
+     *
+     * @param time The time in milliseconds
+     * @param loader The callback for each chest
+     * @throws SQLException If the query failed
+     */
+    public void loadExpiringBefore(long time, Loader loader) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT world, x, y, z, owner, experience, expiry_time FROM chests "
+                + "WHERE expiry_time > 0 AND expiry_time < ?")) {
+            query.setLong(1, time);
+            try (ResultSet rows = query.executeQuery()) {
+                readChests(rows, loader);
+            }
+        }
+    }
+
+    private void readChests(ResultSet rows, Loader loader) throws SQLException {
+        while (rows.next()) {
+            try {
+                loader.put(rows.getString(1), rows.getInt(2), rows.getInt(3), rows.getInt(4),
+                    UUID.fromString(rows.getString(5)), rows.getInt(6), rows.getLong(7));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Failed to load death chest: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void chestRegistered(long key, ChestData chestData) {
+        pending.add(new Change(PUT, registry.getWorldName(key), key,
+            chestData.getOwnerUUID(), chestData.getExperience(), chestData.getExpiryTime()));
+    }
+
+    @Override
+    public void chestRemoved(long key) {
+        pending.add(new Change(REMOVE, registry.getWorldName(key), key, null, 0, 0));
+    }
+
+    @Override
+    public void tombstoneAdded(long key) {
+        pending.add(new Change(TOMBSTONE_ADD, registry.getWorldName(key), key, null, 0, 0));
+    }
+
+    @Override
+    public void tombstoneRemoved(long key) {
+        pending.add(new Change(TOMBSTONE_REMOVE, registry.getWorldName(key), key, null, 0, 0));
+    }
+
+    @Override
+    public void flush(ChestRegistry registry, TombstoneQueue tombstones) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Change> changes = pending;
+        pending = new ArrayList<>();
+        executor.execute(() -> write(changes));
+    }
+
+    @Override
+    public void close() {
+        List<Change> changes = pending;
+        pending = new ArrayList<>();
+        executor.execute(() -> {
+            if (!changes.isEmpty()) {
+                write(changes);
+            }
+            try {
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+            } catch (SQLException e) {
+                logger.warning("Failed to close " + databaseFile.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes a batch of changes in one transaction. Runs on the storage thread.
+     *
+     * @param changes The changes, in the order they were made
+     */
+    private void write(List<Change> changes) {
+        try (PreparedStatement put = connection.prepareStatement(
+                "INSERT OR REPLACE INTO chests (world, x, y, z, chunk_x, chunk_z, owner, experience, expiry_time) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement remove = connection.prepareStatement(
+                "DELETE FROM chests WHERE world = ? AND x = ? AND y = ? AND z = ?");
+             PreparedStatement addTombstone = connection.prepareStatement(
+                "INSERT OR IGNORE INTO tombstones (world, x, y, z) VALUES (?, ?, ?, ?)");
+             PreparedStatement removeTombstone = connection.prepareStatement(
+                "DELETE FROM tombstones WHERE world = ? AND x = ? AND y = ? AND z = ?")) {
+
+            // Batches run statement by statement, so a put followed by a remove of the
+            // same chest must not be reordered; flush the batches whenever the type changes
+            PreparedStatement current = null;
+            for (Change change : changes) {
+                PreparedStatement statement = switch (change.type) {
+                    case PUT -> put;
+                    case REMOVE -> remove;
+                    case TOMBSTONE_ADD -> addTombstone;
+                    default -> removeTombstone;
+                };
+                if (current != null && current != statement) {
+                    current.executeBatch();
+                }
+                current = statement;
+
+                statement.setString(1, change.worldName);
+                statement.setInt(2, change.x);
+                statement.setInt(3, change.y);
+                statement.setInt(4, change.z);
+                if (change.type == PUT) {
+                    statement.setInt(5, change.x >> 4);
+                    statement.setInt(6, change.z >> 4);
+                    statement.setString(7, change.owner.toString());
+                    statement.setInt(8, change.experience);
+                    statement.setLong(9, change.expiryTime);
+                }
+                statement.addBatch();
+            }
+            if (current != null) {
+                current.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            logger.severe("Failed to save death chests: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                logger.severe("Failed to roll back death chest changes: " + rollbackError.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,679 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.utils.LongHashMap;
+import io.mckenz.friendlydeathchest.utils.LongIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Command line tool for inspecting, checking and converting the chest storage of a
+ * stopped server, run with {@code java -jar FriendlyDeathChest.jar <command>}
+ * <p>
+ * Entries are streamed from the source storage to their destination one at a time,
+ * so memory use does not grow with the number of chests. The exceptions are a few
+ * bytes per chest for duplicate detection in {@code validate} and the slot index of
+ * a BINARY destination. The YAML journal is replayed into memory first, since it
+ * is newer than chests.yml and bounded by journal-compact-size.
+ * <p>
+ * Reading SQLite storage needs the SQLite driver on the class path, e.g.
+ * {@code java -cp FriendlyDeathChest.jar:sqlite-jdbc.jar io.mckenz.friendlydeathchest.storage.StorageTool}.
+ * <p>
+ * REGION storage is not supported.
+ */
+public final class StorageTool {
+    private static final Logger LOGGER = Logger.getLogger("FriendlyDeathChest");
+    private static final Executor DIRECT = Runnable::run;
+    private static final int SQLITE_BATCH = 1000;
+
+    private static final ChestStorage.Loader IGNORE = new ChestStorage.Loader() {
+        @Override
+        public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+        }
+
+        @Override
+        public void remove(String worldName, int x, int y, int z) {
+        }
+
+        @Override
+        public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+        }
+    };
+
+    private static final String YAML = "YAML";
+    private static final String BINARY = "BINARY";
+    private static final String SQLITE = "SQLITE";
+
+    private final File folder;
+    private final String type;
+
+    // World table shared by sources and destinations; holds no chests
+    private final ChestRegistry keys = new ChestRegistry(null);
+
+    private StorageTool(File folder, String type) {
+        this.folder = folder;
+        this.type = type;
+    }
+
+    /**
+     * Runs the tool
+     *
+     * @param args The command line arguments
+     */
+    public static void main(String[] args) {
+        List<String> arguments = new ArrayList<>();
+        String type = null;
+        boolean dropExpired = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--type") && i + 1 < args.length) {
+                type = args[++i].toUpperCase();
+            } else if (args[i].equals("--drop-expired")) {
+                dropExpired = true;
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+
+        if (arguments.size() < 2) {
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        try {
+            File folder = new File(arguments.get(1));
+            StorageTool tool = new StorageTool(folder, type != null ? type : detectType(folder));
+            String command = arguments.get(0).toLowerCase();
+            switch (command) {
+                case "stats" -> tool.stats();
+                case "list" -> tool.list(arguments.size() > 2 ? UUID.fromString(arguments.get(2)) : null);
+                case "chunk" -> {
+                    if (arguments.size() < 5) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    tool.listChunk(arguments.get(2), Integer.parseInt(arguments.get(3)), Integer.parseInt(arguments.get(4)));
+                }
+                case "validate" -> {
+                    if (!tool.validate()) {
+                        System.exit(2);
+                    }
+                }
+                case "convert" -> {
+                    if (arguments.size() < 4) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    File target = new File(arguments.get(2));
+                    int written = tool.convert(target, arguments.get(3).toUpperCase(), dropExpired);
+                    System.out.println("Wrote " + written + " chests to " + target.getPath());
+                }
+                case "prune" -> tool.prune();
+                default -> {
+                    printUsage();
+                    System.exit(1);
+                }
+            }
+        } catch (IOException | UncheckedIOException | IllegalArgumentException | SQLException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -jar FriendlyDeathChest.jar <command> <plugin-folder> [options]");
+        System.out.println("Run only while the server is stopped.");
+        System.out.println();
+        System.out.println("Commands:");
+        System.out.println("  stats <folder>                              Count chests, expired chests, owners and worlds");
+        System.out.println("  list <folder> [owner-uuid]                  Print every chest, or those of one owner");
+        System.out.println("  chunk <folder> <world> <chunk-x> <chunk-z>  Print the chests in one chunk");
+        System.out.println("  validate <folder>                           Report malformed, duplicate and out-of-range entries");
+        System.out.println("  convert <folder> <to-folder> <type>         Copy the storage into a new folder as YAML, BINARY or SQLITE");
+        System.out.println("  prune <folder>                              Drop expired chests from the storage in place");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  --type <YAML|BINARY|SQLITE>  Storage to read, if the folder holds more than one");
+        System.out.println("  --drop-expired               With convert, leave out expired chests");
+    }
+
+    /**
+     * Works out which storage a folder holds
+     *
+     * @param folder The plugin folder
+     * @return The storage type
+     * @throws IOException If the folder holds no storage, or more than one
+     */
+    private static String detectType(File folder) throws IOException {
+        List<String> found = new ArrayList<>();
+        if (new File(folder, "chests.yml").exists() || new File(folder, "chests.journal").exists()) {
+            found.add(YAML);
+        }
+        if (new File(folder, "chests.dat").exists()) {
+            found.add(BINARY);
+        }
+        if (new File(folder, "chests.db").exists()) {
+            found.add(SQLITE);
+        }
+
+        if (found.isEmpty()) {
+            throw new IOException("No chest storage found in " + folder.getPath());
+        }
+        if (found.size() > 1) {
+            throw new IOException("Found " + String.join(", ", found) + " storage in " + folder.getPath()
+                + ", pick one with --type");
+        }
+        return found.get(0);
+    }
+
+    /**
+     * Streams every chest and queued removal of the storage, including expired chests
+     *
+     * @param loader The callback for each entry; removals are never passed on
+     */
+    private void read(ChestStorage.Loader loader) throws IOException, SQLException {
+        switch (type) {
+            case YAML -> readYaml(loader);
+            case BINARY -> MappedChestStorage.read(new File(folder, "chests.dat"), loader, LOGGER);
+            case SQLITE -> {
+                requireSqlite();
+                SqliteChestStorage storage = new SqliteChestStorage(folder, keys, DIRECT, LOGGER);
+                storage.open();
+                try {
+                    storage.read(loader);
+                } finally {
+                    storage.close();
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported storage type: " + type);
+        }
+    }
+
+    /**
+     * Streams chests.yml and tombstones.yml with the journal's newer changes applied
+     */
+    private void readYaml(ChestStorage.Loader loader) throws IOException {
+        // The journal is small and newer than chests.yml, so its final state is kept in memory
+        ChestData removed = new ChestData(new UUID(0, 0), 0, 0);
+        LongHashMap<ChestData> journalChests = new LongHashMap<>();
+        LongHashMap<Boolean> journalTombstones = new LongHashMap<>();
+        new ChestJournal(folder, keys).replay(new ChestStorage.Loader() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                journalChests.put(keys.assignKey(worldName, x, y, z), new ChestData(owner, experience, expiryTime));
+            }
+
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+                journalChests.put(keys.assignKey(worldName, x, y, z), removed);
+            }
+
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                journalTombstones.put(keys.assignKey(worldName, x, y, z), queued);
+            }
+        });
+
+        StreamingChestsReader reader = new StreamingChestsReader(LOGGER, true);
+        File chestsFile = new File(folder, "chests.yml");
+        if (chestsFile.exists()) {
+            reader.read(chestsFile, new ChestStorage.Loader() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                    if (!journalChests.containsKey(keys.key(worldName, x, y, z))) {
+                        loader.put(worldName, x, y, z, owner, experience, expiryTime);
+                    }
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                }
+            });
+        }
+
+        File tombstonesFile = new File(folder, "tombstones.yml");
+        if (tombstonesFile.exists()) {
+            reader.readTombstones(tombstonesFile, new ChestStorage.Loader() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                    if (!journalTombstones.containsKey(keys.key(worldName, x, y, z))) {
+                        loader.tombstone(worldName, x, y, z, true);
+                    }
+                }
+            });
+        }
+
+        journalChests.forEach((key, chestData) -> {
+            if (chestData != removed) {
+                loader.put(keys.getWorldName(key), ChestRegistry.blockX(key), ChestRegistry.blockY(key),
+                    ChestRegistry.blockZ(key), chestData.getOwnerUUID(), chestData.getExperience(), chestData.getExpiryTime());
+            }
+        });
+        journalTombstones.forEach((key, queued) -> {
+            if (queued) {
+                loader.tombstone(keys.getWorldName(key), ChestRegistry.blockX(key), ChestRegistry.blockY(key),
+                    ChestRegistry.blockZ(key), true);
+            }
+        });
+    }
+
+    private void stats() throws IOException, SQLException {
+        long now = System.currentTimeMillis();
+        int[] counts = new int[3]; // chests, expired, queued removals
+        Set<UUID> owners = new HashSet<>();
+        Map<String, int[]> worlds = new TreeMap<>();
+
+        read(new ChestStorage.Loader() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                counts[0]++;
+                if (expiryTime > 0 && expiryTime < now) {
+                    counts[1]++;
+                }
+                owners.add(owner);
+                worlds.computeIfAbsent(worldName, name -> new int[1])[0]++;
+            }
+
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+            }
+
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                counts[2]++;
+            }
+        });
+
+        System.out.println("Storage: " + type + " in " + folder.getPath());
+        System.out.println("Chests: " + counts[0] + " (" + counts[1] + " expired)");
+        System.out.println("Queued removals: " + counts[2]);
+        System.out.println("Owners: " + owners.size());
+        System.out.println("Worlds:");
+        for (Map.Entry<String, int[]> world : worlds.entrySet()) {
+            System.out.println("  " + world.getKey() + ": " + world.getValue()[0]);
+        }
+    }
+
+    private void list(UUID ownerFilter) throws IOException, SQLException {
+        ChestStorage.Loader printer = printer((worldName, x, z, owner) -> ownerFilter == null || ownerFilter.equals(owner),
+            ownerFilter == null);
+        if (ownerFilter == null || !type.equals(SQLITE)) {
+            read(printer);
+            return;
+        }
+
+        // The owner column is indexed, so only that owner's rows are read
+        requireSqlite();
+        SqliteChestStorage storage = new SqliteChestStorage(folder, keys, DIRECT, LOGGER);
+        storage.open();
+        try {
+            storage.loadOwner(ownerFilter, printer);
+        } finally {
+            storage.close();
+        }
+    }
+
+    private void listChunk(String worldFilter, int chunkX, int chunkZ) throws IOException, SQLException {
+        ChestStorage.Loader printer = printer((worldName, x, z, owner) -> worldName.equals(worldFilter)
+            && x >> 4 == chunkX && z >> 4 == chunkZ, false);
+        if (!type.equals(SQLITE)) {
+            read(printer);
+            return;
+        }
+
+        // The world and chunk columns are indexed, so only that chunk's rows are read
+        requireSqlite();
+        SqliteChestStorage storage = new SqliteChestStorage(folder, keys, DIRECT, LOGGER);
+        storage.open();
+        try {
+            storage.loadChunk(worldFilter, chunkX, chunkZ, printer);
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Decides which chests a listing prints
+     */
+    private interface ChestFilter {
+        boolean matches(String worldName, int x, int z, UUID owner);
+    }
+
+    private static ChestStorage.Loader printer(ChestFilter filter, boolean printTombstones) {
+        long now = System.currentTimeMillis();
+        return new ChestStorage.Loader() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                if (!filter.matches(worldName, x, z, owner)) {
+                    return;
+                }
+                String expiry = expiryTime <= 0 ? "never"
+                    : Instant.ofEpochMilli(expiryTime) + (expiryTime < now ? " (expired)" : "");
+                System.out.println(worldName + " " + x + " " + y + " " + z + " owner=" + owner
+                    + " experience=" + experience + " expires=" + expiry);
+            }
+
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+            }
+
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                if (printTombstones) {
+                    System.out.println(worldName + " " + x + " " + y + " " + z + " queued for removal");
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the whole storage and reports entries the plugin would skip
+     *
+     * @return true if no problems were found
+     */
+    private boolean validate() throws IOException, SQLException {
+        long now = System.currentTimeMillis();
+        int[] counts = new int[4]; // chests, expired, out of range, duplicates
+        LongIntHashMap seen = new LongIntHashMap(1024, 0);
+
+        // Readers report malformed entries as warnings
+        int[] malformed = new int[1];
+        Handler warningCounter = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    malformed[0]++;
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        LOGGER.addHandler(warningCounter);
+
+        try {
+            read(new ChestStorage.Loader() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                    counts[0]++;
+                    if (expiryTime > 0 && expiryTime < now) {
+                        counts[1]++;
+                    }
+                    if (!ChestRegistry.isPackable(x, y, z)) {
+                        counts[2]++;
+                        System.out.println("Out of range: " + worldName + " " + x + " " + y + " " + z);
+                        return;
+                    }
+                    long key = keys.assignKey(worldName, x, y, z);
+                    if (seen.get(key) != 0) {
+                        counts[3]++;
+                        System.out.println("Duplicate: " + worldName + " " + x + " " + y + " " + z);
+                    }
+                    seen.put(key, 1);
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                    if (!ChestRegistry.isPackable(x, y, z)) {
+                        counts[2]++;
+                        System.out.println("Out of range removal: " + worldName + " " + x + " " + y + " " + z);
+                    }
+                }
+            });
+        } finally {
+            LOGGER.removeHandler(warningCounter);
+        }
+
+        System.out.println("Checked " + counts[0] + " chests: " + counts[1] + " expired, " + malformed[0] + " malformed, "
+            + counts[2] + " out of range, " + counts[3] + " duplicates");
+        return malformed[0] == 0 && counts[2] == 0 && counts[3] == 0;
+    }
+
+    /**
+     * Copies the storage into another folder, in any supported format
+     *
+     * @param target The folder to write to
+     * @param targetType The storage type to write
+     * @param dropExpired true to leave out expired chests
+     * @return The number of chests written
+     */
+    private int convert(File target, String targetType, boolean dropExpired) throws IOException, SQLException {
+        String fileName = switch (targetType) {
+            case YAML -> "chests.yml";
+            case BINARY -> "chests.dat";
+            case SQLITE -> "chests.db";
+            default -> throw new IllegalArgumentException("Unsupported storage type: " + targetType);
+        };
+        if (new File(target, fileName).exists()) {
+            throw new IOException(new File(target, fileName).getPath() + " already exists");
+        }
+        target.mkdirs();
+
+        long now = System.currentTimeMillis();
+        int[] written = new int[1];
+        try (Destination destination = openDestination(target, targetType)) {
+            read(new ChestStorage.Loader() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                    if (dropExpired && expiryTime > 0 && expiryTime < now) {
+                        return;
+                    }
+                    if (!ChestRegistry.isPackable(x, y, z)) {
+                        LOGGER.warning("Skipping out-of-range chest at " + x + ", " + y + ", " + z + " in " + worldName);
+                        return;
+                    }
+                    destination.put(worldName, x, y, z, owner, experience, expiryTime);
+                    written[0]++;
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                    if (ChestRegistry.isPackable(x, y, z)) {
+                        destination.tombstone(worldName, x, y, z, true);
+                    }
+                }
+            });
+        }
+
+        return written[0];
+    }
+
+    /**
+     * Rewrites the storage without its expired chests, through a temporary folder. SQLite
+     * databases delete their expired rows in place instead.
+     */
+    private void prune() throws IOException, SQLException {
+        if (type.equals(SQLITE)) {
+            pruneSqlite();
+            return;
+        }
+
+        File temp = Files.createTempDirectory(folder.toPath(), "prune").toFile();
+        try {
+            int kept = convert(temp, type, true);
+
+            File[] files = temp.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.move(file.toPath(), new File(folder, file.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (type.equals(YAML)) {
+                // Its changes are part of the rewritten chests.yml now
+                AtomicFiles.delete(new File(folder, "chests.journal"));
+            }
+            System.out.println("Kept " + kept + " chests in " + folder.getPath());
+        } finally {
+            File[] leftovers = temp.listFiles();
+            if (leftovers != null) {
+                for (File file : leftovers) {
+                    file.delete();
+                }
+            }
+            temp.delete();
+        }
+    }
+
+    /**
+     * Deletes the expired chests of a SQLite database, found through its expiry index
+     */
+    private void pruneSqlite() throws IOException, SQLException {
+        requireSqlite();
+        SqliteChestStorage storage = new SqliteChestStorage(folder, keys, DIRECT, LOGGER);
+        storage.open();
+        int[] dropped = new int[1];
+        try {
+            storage.loadExpiringBefore(System.currentTimeMillis(), new ChestStorage.Loader() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                    storage.chestRemoved(keys.assignKey(worldName, x, y, z));
+                    dropped[0]++;
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                }
+            });
+        } finally {
+            // Writes the removals before closing
+            storage.close();
+        }
+        System.out.println("Dropped " + dropped[0] + " expired chests from " + folder.getPath());
+    }
+
+    /**
+     * A storage being written from scratch
+     */
+    private interface Destination extends ChestStorage.Loader, AutoCloseable {
+        @Override
+        void close() throws IOException;
+    }
+
+    private Destination openDestination(File target, String targetType) throws IOException, SQLException {
+        if (targetType.equals(YAML)) {
+            StreamingChestsWriter writer = new StreamingChestsWriter(target);
+            return new Destination() {
+                @Override
+                public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                    writer.put(worldName, x, y, z, owner, experience, expiryTime);
+                }
+
+                @Override
+                public void remove(String worldName, int x, int y, int z) {
+                }
+
+                @Override
+                public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                    if (queued) {
+                        writer.tombstone(worldName, x, y, z);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+
+        // The other storages are driven through their change listener callbacks, as the plugin does
+        ChestStorage storage;
+        if (targetType.equals(BINARY)) {
+            storage = new MappedChestStorage(target, keys, DIRECT, LOGGER);
+            // Creates the empty file; there is nothing to load
+            storage.load(IGNORE);
+        } else {
+            requireSqlite();
+            SqliteChestStorage sqlite = new SqliteChestStorage(target, keys, DIRECT, LOGGER);
+            sqlite.open();
+            storage = sqlite;
+        }
+
+        int[] pending = new int[1];
+        return new Destination() {
+            @Override
+            public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+                storage.chestRegistered(keys.assignKey(worldName, x, y, z), new ChestData(owner, experience, expiryTime));
+                flushBatch();
+            }
+
+            @Override
+            public void remove(String worldName, int x, int y, int z) {
+            }
+
+            @Override
+            public void tombstone(String worldName, int x, int y, int z, boolean queued) {
+                storage.tombstoneAdded(keys.assignKey(worldName, x, y, z));
+                flushBatch();
+            }
+
+            private void flushBatch() {
+                if (++pending[0] == SQLITE_BATCH) {
+                    pending[0] = 0;
+                    storage.flush(keys, null);
+                }
+            }
+
+            @Override
+            public void close() {
+                storage.close();
+            }
+        };
+    }
+
+    private static void requireSqlite() throws IOException {
+        if (!SqliteChestStorage.isDriverAvailable()) {
+            throw new IOException("The SQLite driver is not on the class path. Run with "
+                + "java -cp FriendlyDeathChest.jar:sqlite-jdbc.jar " + StorageTool.class.getName() + " ...");
+        }
+    }
+}
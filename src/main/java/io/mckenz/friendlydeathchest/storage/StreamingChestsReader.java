@@ -0,0 +1,313 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Line-by-line reader for the chests.yml layout
+ * <pre>
+ * chests:
+ *   '0':
+ *     world: world
+ *     x: 100
+ *     ...
+ * </pre>
+ * Only understands the block-style YAML that chests.yml has always been written in,
+ * which lets it hand each entry to the loader as soon as the entry ends, without
+ * building a document tree. Heap use stays flat however large the file is. Expired
+ * entries are skipped before any object is created for them, and malformed entries
+ * are reported with the line they start on.
+ */
+public class StreamingChestsReader {
+    private final Logger logger;
+    private final boolean includeExpired;
+
+    // Fields of the entry being read
+    private int entryLine;
+    private String world;
+    private String owner;
+    private long x;
+    private long y;
+    private long z;
+    private int experience;
+    private long expiryTime;
+    private int seenFields;
+    private String error;
+
+    private static final int FIELD_X = 1;
+    private static final int FIELD_Y = 2;
+    private static final int FIELD_Z = 4;
+
+    /**
+     * Creates a new StreamingChestsReader
+     *
+     * @param logger The logger for malformed entries
+     */
+    public StreamingChestsReader(Logger logger) {
+        this(logger, false);
+    }
+
+    /**
+     * Creates a new StreamingChestsReader
+     *
+     * @param logger The logger for malformed entries
+     * @param includeExpired true to pass expired chests to the loader as well
+     */
+    public StreamingChestsReader(Logger logger, boolean includeExpired) {
+        this.logger = logger;
+        this.includeExpired = includeExpired;
+    }
+
+    /**
+     * Reads every chest in a file
+     *
+     * @param file The chests.yml file
+     * @param loader The callback for each chest
+     * @return The number of chests passed to the loader
+     * @throws IOException If the file could not be read
+     */
+    public int read(File file, ChestStorage.Loader loader) throws IOException {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        boolean inChests = false;
+        int entryIndent = -1;
+        entryLine = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                int indent = 0;
+                while (indent < line.length() && line.charAt(indent) == ' ') {
+                    indent++;
+                }
+                if (indent == line.length() || line.charAt(indent) == '#') {
+                    continue;
+                }
+
+                int colon = findColon(line, indent);
+                if (colon < 0) {
+                    if (inChests && entryLine > 0) {
+                        error = "expected 'key: value'";
+                    } else {
+                        logger.warning("Ignoring unexpected line " + lineNumber + " in " + file.getName());
+                    }
+                    continue;
+                }
+                String key = unquote(line.substring(indent, colon).trim());
+                String value = stripComment(line.substring(colon + 1)).trim();
+
+                if (indent == 0) {
+                    loaded += finishEntry(loader, now);
+                    inChests = key.equals("chests") && value.isEmpty();
+                    entryIndent = -1;
+                    continue;
+                }
+                if (!inChests) {
+                    continue;
+                }
+
+                if (entryIndent < 0) {
+                    entryIndent = indent;
+                }
+                if (indent == entryIndent) {
+                    // A new entry starts; its fields follow on deeper lines
+                    loaded += finishEntry(loader, now);
+                    startEntry(lineNumber);
+                    if (!value.isEmpty()) {
+                        error = "entry has no fields";
+                    }
+                } else if (indent > entryIndent && entryLine > 0) {
+                    readField(key, unquote(value));
+                } else {
+                    logger.warning("Ignoring misindented line " + lineNumber + " in " + file.getName());
+                }
+            }
+        }
+
+        return loaded + finishEntry(loader, now);
+    }
+
+    /**
+     * Reads the queued removals in a tombstones.yml file, a list of world;x;y;z entries
+     *
+     * @param file The tombstones.yml file
+     * @param loader The callback for each queued removal
+     * @return The number of queued removals passed to the loader
+     * @throws IOException If the file could not be read
+     */
+    public int readTombstones(File file, ChestStorage.Loader loader) throws IOException {
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (!trimmed.startsWith("- ")) {
+                    continue;
+                }
+
+                // Format: world;x;y;z (world names cannot contain ';')
+                String[] parts = unquote(stripComment(trimmed.substring(2)).trim()).split(";");
+                try {
+                    loader.tombstone(parts[0], Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), true);
+                    loaded++;
+                } catch (RuntimeException e) {
+                    logger.warning("Skipping malformed tombstone at line " + lineNumber + ": " + trimmed);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void startEntry(int lineNumber) {
+        entryLine = lineNumber;
+        world = null;
+        owner = null;
+        experience = 0;
+        expiryTime = 0;
+        seenFields = 0;
+        error = null;
+    }
+
+    private void readField(String key, String value) {
+        try {
+            switch (key) {
+                case "world" -> world = value;
+                case "owner" -> owner = value;
+                case "x" -> {
+                    x = Long.parseLong(value);
+                    seenFields |= FIELD_X;
+                }
+                case "y" -> {
+                    y = Long.parseLong(value);
+                    seenFields |= FIELD_Y;
+                }
+                case "z" -> {
+                    z = Long.parseLong(value);
+                    seenFields |= FIELD_Z;
+                }
+                case "experience" -> experience = Integer.parseInt(value);
+                case "expiry-time" -> expiryTime = Long.parseLong(value);
+                default -> {
+                    // Unknown fields are ignored, as YamlConfiguration would
+                }
+            }
+        } catch (NumberFormatException e) {
+            error = "'" + key + "' is not a number: " + value;
+        }
+    }
+
+    /**
+     * Passes the entry being read to the loader if it is valid and has not expired
+     *
+     * @return 1 if the entry was loaded, otherwise 0
+     */
+    private int finishEntry(ChestStorage.Loader loader, long now) {
+        if (entryLine == 0) {
+            return 0;
+        }
+        int line = entryLine;
+        entryLine = 0;
+
+        // Expired entries are dropped before anything is allocated for them
+        if (!includeExpired && error == null && expiryTime > 0 && expiryTime < now) {
+            return 0;
+        }
+
+        if (error == null) {
+            if (world == null || world.isEmpty()) {
+                error = "missing world";
+            } else if (owner == null) {
+                error = "missing owner";
+            } else if (seenFields != (FIELD_X | FIELD_Y | FIELD_Z)) {
+                error = "missing coordinates";
+            } else if (x != (int) x || y != (int) y || z != (int) z) {
+                error = "coordinates out of range";
+            }
+        }
+
+        UUID ownerUUID = null;
+        if (error == null) {
+            try {
+                ownerUUID = UUID.fromString(owner);
+            } catch (IllegalArgumentException e) {
+                error = "invalid owner UUID: " + owner;
+            }
+        }
+
+        if (error != null) {
+            logger.warning("Skipping malformed death chest entry at line " + line + ": " + error);
+            return 0;
+        }
+
+        loader.put(world, (int) x, (int) y, (int) z, ownerUUID, experience, expiryTime);
+        return 1;
+    }
+
+    /**
+     * Finds the colon that separates a key from its value, skipping quoted keys
+     */
+    private static int findColon(String line, int start) {
+        char quote = 0;
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ':' && (i + 1 == line.length() || line.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a trailing comment from a value, ignoring '#' inside quotes
+     */
+    private static String stripComment(String value) {
+        char quote = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || value.charAt(i - 1) == ' ')) {
+                return value.substring(0, i);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Removes YAML quotes from a scalar
+     */
+    static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            char last = value.charAt(value.length() - 1);
+            if (first == '\'' && last == '\'') {
+                return value.substring(1, value.length() - 1).replace("''", "'");
+            }
+            if (first == '"' && last == '"') {
+                return value.substring(1, value.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+            }
+        }
+        return value;
+    }
+}
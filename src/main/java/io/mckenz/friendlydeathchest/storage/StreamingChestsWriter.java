@@ -0,0 +1,115 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes chests.yml and tombstones.yml entry by entry, in the layout
+ * {@link StreamingChestsReader} and YamlConfiguration both read
+ * <p>
+ * Used where YamlConfiguration is not available or would have to hold every chest
+ * in memory, such as the offline storage tool. Entries are only appended, so they
+ * must already be final when they are written.
+ */
+public class StreamingChestsWriter implements Closeable {
+    private final File tombstonesFile;
+    private final Writer chests;
+    private final List<String> tombstones = new ArrayList<>();
+    private int count;
+
+    /**
+     * Creates a new StreamingChestsWriter, replacing any existing files
+     *
+     * @param dataFolder The folder to write chests.yml and tombstones.yml to
+     * @throws IOException If chests.yml could not be created
+     */
+    public StreamingChestsWriter(File dataFolder) throws IOException {
+        this.tombstonesFile = new File(dataFolder, "tombstones.yml");
+        this.chests = Files.newBufferedWriter(new File(dataFolder, "chests.yml").toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a chest
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @param owner The owner's UUID
+     * @param experience The stored experience
+     * @param expiryTime The expiry time in milliseconds, 0 if it never expires
+     */
+    public void put(String worldName, int x, int y, int z, UUID owner, int experience, long expiryTime) {
+        try {
+            if (count == 0) {
+                chests.write("chests:\n");
+            }
+            chests.write("  '" + count++ + "':\n");
+            chests.write("    world: " + quote(worldName) + "\n");
+            chests.write("    x: " + x + "\n");
+            chests.write("    y: " + y + "\n");
+            chests.write("    z: " + z + "\n");
+            chests.write("    owner: " + owner + "\n");
+            chests.write("    experience: " + experience + "\n");
+            chests.write("    expiry-time: " + expiryTime + "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a chest location that is queued for removal
+     *
+     * @param worldName The world name
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     */
+    public void tombstone(String worldName, int x, int y, int z) {
+        tombstones.add(worldName + ";" + x + ";" + y + ";" + z);
+    }
+
+    /**
+     * Gets the number of chests written so far
+     *
+     * @return The number of chests
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Finishes chests.yml and writes tombstones.yml
+     *
+     * @throws IOException If a file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try (Writer out = chests) {
+            if (count == 0) {
+                out.write("chests: {}\n");
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(tombstones.isEmpty() ? "tombstones: []\n" : "tombstones:\n");
+        for (String tombstone : tombstones) {
+            builder.append("- ").append(quote(tombstone)).append('\n');
+        }
+        AtomicFiles.write(tombstonesFile, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Quotes a scalar so any world name reads back unchanged
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
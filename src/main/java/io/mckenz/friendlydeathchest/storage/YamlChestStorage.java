@@ -0,0 +1,235 @@
+package io.mckenz.friendlydeathchest.storage;
+
+import io.mckenz.friendlydeathchest.model.ChestData;
+import io.mckenz.friendlydeathchest.service.ChestRegistry;
+import io.mckenz.friendlydeathchest.service.TombstoneQueue;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * Stores death chests in chests.yml and tombstones.yml, with changes between full
+ * saves kept in a {@link ChestJournal}
+ */
+public class YamlChestStorage implements ChestStorage {
+    private final File chestsFile;
+    private final File tombstonesFile;
+    private final ChestJournal journal;
+    private final Executor executor;
+    private final Logger logger;
+    private final long compactSize;
+
+    private boolean compactPending;
+
+    /**
+     * Creates a new YamlChestStorage
+     *
+     * @param dataFolder The plugin data folder
+     * @param registry The chest registry, used to resolve world names
+     * @param executor The storage thread
+     * @param logger The logger for storage errors
+     * @param compactSize The journal size in bytes at which a full save is written
+     */
+    public YamlChestStorage(File dataFolder, ChestRegistry registry, Executor executor, Logger logger, long compactSize) {
+        this.chestsFile = new File(dataFolder, "chests.yml");
+        this.tombstonesFile = new File(dataFolder, "tombstones.yml");
+        this.journal = new ChestJournal(dataFolder, registry);
+        this.executor = executor;
+        this.logger = logger;
+        this.compactSize = compactSize;
+    }
+
+    @Override
+    public String getName() {
+        return "YAML";
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        loadChests(loader);
+        loadTombstones(loader);
+
+        int replayed;
+        try {
+            replayed = journal.replay(loader);
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to replay death chest journal, some recent changes may be lost: " + e.getMessage());
+            replayed = -1;
+        }
+
+        // Fold the journal into a fresh snapshot on the first flush, so the next start replays nothing
+        if (replayed != 0) {
+            logger.fine("Replayed " + replayed + " death chest journal records.");
+            compactPending = true;
+        }
+    }
+
+    private void loadChests(Loader loader) throws IOException {
+        if (!chestsFile.exists()) {
+            return;
+        }
+
+        // Streamed rather than parsed into a YamlConfiguration, so large files load in constant memory
+        new StreamingChestsReader(logger).read(chestsFile, loader);
+    }
+
+    private void loadTombstones(Loader loader) {
+        if (!tombstonesFile.exists()) {
+            return;
+        }
+
+        YamlConfiguration storage = YamlConfiguration.loadConfiguration(tombstonesFile);
+        for (String entry : storage.getStringList("tombstones")) {
+            try {
+                // Format: world;x;y;z (world names cannot contain ';')
+                String[] parts = entry.split(";");
+                loader.tombstone(parts[0], Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), true);
+            } catch (RuntimeException e) {
+                logger.warning("Failed to load tombstone '" + entry + "': " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void chestRegistered(long key, ChestData chestData) {
+        journal.chestRegistered(key, chestData);
+    }
+
+    @Override
+    public void chestRemoved(long key) {
+        journal.chestRemoved(key);
+    }
+
+    @Override
+    public void tombstoneAdded(long key) {
+        journal.tombstoneAdded(key);
+    }
+
+    @Override
+    public void tombstoneRemoved(long key) {
+        journal.tombstoneRemoved(key);
+    }
+
+    @Override
+    public void flush(ChestRegistry registry, TombstoneQueue tombstones) {
+        if (compactPending || journal.size() > compactSize) {
+            compactPending = false;
+            compact(registry, tombstones);
+            return;
+        }
+
+        byte[] records = journal.drain();
+        if (records.length > 0) {
+            executor.execute(() -> append(records));
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the registry in the background and empties the journal.
+     * The registry is copied on the main thread; serialization and the write happen
+     * on the storage thread.
+     */
+    private void compact(ChestRegistry registry, TombstoneQueue tombstones) {
+        byte[] records = journal.drain();
+        ChestSnapshot snapshot = ChestSnapshot.capture(registry, tombstones.keys());
+        journal.startCompaction();
+
+        executor.execute(() -> {
+            // Keep the journal complete until the snapshot that replaces it is on disk
+            append(records);
+            try {
+                int count = save(snapshot);
+                journal.truncate();
+                logger.fine("Saved " + count + " death chests to storage.");
+            } catch (IOException e) {
+                logger.severe("Failed to save death chests: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        byte[] records = journal.drain();
+        executor.execute(() -> {
+            append(records);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close death chest journal: " + e.getMessage());
+            }
+        });
+    }
+
+    private void append(byte[] records) {
+        try {
+            journal.append(records);
+        } catch (IOException e) {
+            logger.severe("Failed to write death chest journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a snapshot, replacing both files atomically
+     *
+     * @param snapshot The snapshot to write
+     * @return The number of chests written
+     * @throws IOException If a file could not be written
+     */
+    private int save(ChestSnapshot snapshot) throws IOException {
+        YamlConfiguration storage = new YamlConfiguration();
+        ConfigurationSection chestsSection = storage.createSection("chests");
+        int count = 0;
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            // Skip chests that are expired
+            if (snapshot.isExpired(i)) {
+                continue;
+            }
+
+            long key = snapshot.getKey(i);
+            ConfigurationSection chestSection = chestsSection.createSection(String.valueOf(count++));
+
+            // Save location
+            chestSection.set("world", snapshot.getWorldName(key));
+            chestSection.set("x", ChestRegistry.blockX(key));
+            chestSection.set("y", ChestRegistry.blockY(key));
+            chestSection.set("z", ChestRegistry.blockZ(key));
+
+            // Save chest data
+            chestSection.set("owner", snapshot.getOwner(i).toString());
+            chestSection.set("experience", snapshot.getExperience(i));
+            chestSection.set("expiry-time", snapshot.getExpiryTime(i));
+        }
+
+        AtomicFiles.write(chestsFile, storage.saveToString().getBytes(StandardCharsets.UTF_8));
+        saveTombstones(snapshot);
+        return count;
+    }
+
+    private void saveTombstones(ChestSnapshot snapshot) throws IOException {
+        long[] tombstones = snapshot.getTombstones();
+        if (tombstones.length == 0) {
+            AtomicFiles.delete(tombstonesFile);
+            return;
+        }
+
+        // Format: world;x;y;z (world names cannot contain ';')
+        List<String> entries = new ArrayList<>(tombstones.length);
+        for (long key : tombstones) {
+            entries.add(snapshot.getWorldName(key) + ";" + ChestRegistry.blockX(key) + ";"
+                + ChestRegistry.blockY(key) + ";" + ChestRegistry.blockZ(key));
+        }
+
+        YamlConfiguration storage = new YamlConfiguration();
+        storage.set("tombstones", entries);
+        AtomicFiles.write(tombstonesFile, storage.saveToString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,275 @@
+package io.mckenz.friendlydeathchest.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map with primitive long keys
+ * <p>
+ * Uses linear probing with backward-shift deletion, so lookups never allocate and
+ * removals leave no tombstones behind. The key {@code 0} is reserved as the empty
+ * slot marker and cannot be stored.
+ *
+ * @param <V> The value type
+ */
+public class LongHashMap<V> {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * Callback used to iterate over map entries
+     *
+     * @param <V> The value type
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Creates a new empty map
+     */
+    public LongHashMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty map sized for the given number of entries
+     *
+     * @param expectedSize The number of entries expected
+     */
+    public LongHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the value mapped to a key
+     *
+     * @param key The key
+     * @return The value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return null;
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a key is present
+     *
+     * @param key The key
+     * @return true if the key is present
+     */
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return false;
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Maps a key to a value
+     *
+     * @param key The key (must not be 0)
+     * @param value The value
+     * @return The previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key The key
+     * @return The removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            return null;
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                V previous = (V) values[slot];
+                size--;
+                shiftKeys(slot);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of entries
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty
+     *
+     * @return true if the map has no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Copies all keys into a new array
+     *
+     * @return The keys, in table order
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits every entry. The map must not be modified during iteration.
+     *
+     * @param consumer The callback to invoke for each entry
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        long[] table = keys;
+        Object[] vals = values;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) {
+                consumer.accept(table[i], (V) vals[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry in a slot and shifts the rest of its probe chain back,
+     * so that no tombstone is needed
+     *
+     * @param pos The slot being vacated
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        long current;
+        while (true) {
+            pos = ((last = pos) + 1) & mask;
+            while (true) {
+                if ((current = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    values[last] = null;
+                    return;
+                }
+                slot = slot(current);
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        return Math.max(16, Integer.highestOneBit(needed - 1) << 1);
+    }
+}
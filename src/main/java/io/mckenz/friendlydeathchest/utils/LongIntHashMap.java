@@ -0,0 +1,167 @@
+package io.mckenz.friendlydeathchest.utils;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive int values
+ * <p>
+ * Same layout as {@link LongHashMap}, without boxing the values. The key {@code 0}
+ * is reserved as the empty slot marker and cannot be stored.
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * Creates a new empty map
+     *
+     * @param expectedSize The number of entries expected
+     * @param missingValue The value returned for keys that are not present
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int needed = (int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        allocate(Math.max(16, Integer.highestOneBit(needed - 1) << 1));
+    }
+
+    /**
+     * Gets the value mapped to a key
+     *
+     * @param key The key
+     * @return The value, or the missing value if the key is not present
+     */
+    public int get(long key) {
+        if (key == 0) {
+            return missingValue;
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Maps a key to a value
+     *
+     * @param key The key (must not be 0)
+     * @param value The value
+     */
+    public void put(long key, int value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key The key
+     * @return The removed value, or the missing value if the key was not present
+     */
+    public int remove(long key) {
+        if (key == 0) {
+            return missingValue;
+        }
+
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                int previous = values[slot];
+                size--;
+                shiftKeys(slot);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Gets the number of entries
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        long current;
+        while (true) {
+            pos = ((last = pos) + 1) & mask;
+            while (true) {
+                if ((current = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    return;
+                }
+                slot = slot(current);
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,36 @@
+package io.mckenz.friendlydeathchest.utils;
+
+/**
+ * Packs coordinates into keys for {@link LongHashMap} and {@link LongList}
+ * <p>
+ * Every key has its sign bit flipped, so the coordinates 0, 0 (or block 0, 0, 0) do not
+ * map to the key 0 those collections reserve.
+ */
+public final class LongKeys {
+
+    private LongKeys() {
+    }
+
+    /**
+     * Packs a pair of coordinates, such as a chunk or region position
+     *
+     * @param x The x coordinate
+     * @param z The z coordinate
+     * @return The non-zero key
+     */
+    public static long pack(int x, int z) {
+        return (((long) x << 32) | (z & 0xFFFFFFFFL)) ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Packs a block position; x and z keep their low 26 bits and y its low 12 bits
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The non-zero key
+     */
+    public static long packBlock(int x, int y, int z) {
+        return (((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFFL)) ^ Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,122 @@
+package io.mckenz.friendlydeathchest.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs
+ * <p>
+ * Intended for small, unordered sets of keys: {@link #removeValue(long)} swaps the
+ * last element into the freed position instead of shifting.
+ */
+public class LongList {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] elements;
+    private int size;
+
+    /**
+     * Creates a new empty list
+     */
+    public LongList() {
+        this.elements = EMPTY;
+    }
+
+    /**
+     * Creates a new empty list with the given capacity
+     *
+     * @param capacity The initial capacity
+     */
+    public LongList(int capacity) {
+        this.elements = capacity > 0 ? new long[capacity] : EMPTY;
+    }
+
+    /**
+     * Appends a value
+     *
+     * @param value The value to add
+     */
+    public void add(long value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(4, size * 2));
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Gets the value at an index
+     *
+     * @param index The index
+     * @return The value
+     */
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * Checks if a value is present
+     *
+     * @param value The value
+     * @return true if the list contains the value
+     */
+    public boolean contains(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the first occurrence of a value, moving the last element into its place
+     *
+     * @param value The value to remove
+     * @return true if the value was present
+     */
+    public boolean removeValue(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                elements[i] = elements[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of values
+     *
+     * @return The size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the list is empty
+     *
+     * @return true if the list has no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the values into a new array
+     *
+     * @return The values
+     */
+    public long[] toArray() {
+        return size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+    }
+}
@@ -0,0 +1,112 @@
+package io.mckenz.friendlydeathchest.utils;
+
+import org.bukkit.Material;
+
+import java.util.Collection;
+import java.util.logging.Logger;
+
+/**
+ * Block classes looked up by material ordinal
+ * <p>
+ * Built once per config load, so each check on a probed block is a single array load
+ * instead of a chain of comparisons or a name lookup. Tables are never modified after
+ * construction and can be read from any thread.
+ */
+public class MaterialTable {
+    private static final byte REPLACEABLE = 1;
+    private static final byte SOLID_GROUND = 1 << 1;
+    private static final byte FORBIDDEN_GROUND = 1 << 2;
+    private static final byte WALL_SIGN = 1 << 3;
+    private static final byte SIGN = 1 << 4;
+
+    private final byte[] classes;
+
+    /**
+     * Creates a new MaterialTable
+     *
+     * @param replaceable Names of the materials a chest may replace
+     * @param forbiddenGround Names of solid materials a chest may not stand on
+     * @param logger Logger for unknown material names
+     */
+    public MaterialTable(Collection<String> replaceable, Collection<String> forbiddenGround, Logger logger) {
+        Material[] materials = Material.values();
+        this.classes = new byte[materials.length];
+
+        for (Material material : materials) {
+            if (material.isLegacy()) {
+                continue;
+            }
+            String name = material.name();
+            if (material.isSolid()) {
+                classes[material.ordinal()] |= SOLID_GROUND;
+            }
+            if (name.endsWith("_WALL_SIGN")) {
+                classes[material.ordinal()] |= WALL_SIGN;
+            }
+            if (name.endsWith("_SIGN")) {
+                classes[material.ordinal()] |= SIGN;
+            }
+        }
+
+        for (String name : replaceable) {
+            Material material = parse(name, logger);
+            if (material != null) {
+                classes[material.ordinal()] |= REPLACEABLE;
+            }
+        }
+        for (String name : forbiddenGround) {
+            Material material = parse(name, logger);
+            if (material != null) {
+                classes[material.ordinal()] |= FORBIDDEN_GROUND;
+            }
+        }
+    }
+
+    /**
+     * Checks if a chest may replace a material
+     *
+     * @param material The material
+     * @return true if the material is replaceable
+     */
+    public boolean isReplaceable(Material material) {
+        return (classes[material.ordinal()] & REPLACEABLE) != 0;
+    }
+
+    /**
+     * Checks if a chest may stand on a material: it must be solid and not forbidden
+     *
+     * @param material The material
+     * @return true if the material is valid ground
+     */
+    public boolean isValidGround(Material material) {
+        return (classes[material.ordinal()] & (SOLID_GROUND | FORBIDDEN_GROUND)) == SOLID_GROUND;
+    }
+
+    /**
+     * Checks if a material is a wall sign of any wood type
+     *
+     * @param material The material
+     * @return true if the material is a wall sign
+     */
+    public boolean isWallSign(Material material) {
+        return (classes[material.ordinal()] & WALL_SIGN) != 0;
+    }
+
+    /**
+     * Checks if a material is any kind of sign
+     *
+     * @param material The material
+     * @return true if the material is a sign
+     */
+    public boolean isSign(Material material) {
+        return (classes[material.ordinal()] & SIGN) != 0;
+    }
+
+    private static Material parse(String name, Logger logger) {
+        Material material = Material.matchMaterial(name);
+        if (material == null) {
+            logger.warning("Unknown block type in config: " + name);
+        }
+        return material;
+    }
+}